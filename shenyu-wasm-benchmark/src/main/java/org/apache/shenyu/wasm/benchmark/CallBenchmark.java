@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.shenyu.wasm.Instance;
+import org.apache.shenyu.wasm.exports.NativeFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of crossing the JNI boundary to call exported functions of different arities.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CallBenchmark {
+    
+    private static final int BATCH = 1024;
+    
+    private Instance instance;
+    
+    private NativeFunction arity0;
+    
+    private NativeFunction sum;
+    
+    private NativeFunction mixed;
+    
+    private int left;
+    
+    private int right;
+    
+    private int[] packedArguments;
+    
+    private int[] results;
+    
+    /**
+     * Instantiate the module and look the functions up once.
+     *
+     * @throws IOException if the module cannot be read
+     */
+    @Setup
+    public void setup() throws IOException {
+        this.instance = new Instance(WasmResources.load("tests.wasm"));
+        this.arity0 = this.instance.getFunction("arity_0");
+        this.sum = this.instance.getFunction("sum");
+        this.mixed = this.instance.getFunction("i32_i64_f32_f64_f64");
+        this.left = 1;
+        this.right = 2;
+        this.packedArguments = new int[2 * BATCH];
+        for (int i = 0; i < this.packedArguments.length; i++) {
+            this.packedArguments[i] = i;
+        }
+        this.results = new int[BATCH];
+    }
+    
+    /**
+     * Release the instance.
+     */
+    @TearDown
+    public void tearDown() {
+        this.instance.close();
+    }
+    
+    /**
+     * Call a function without arguments.
+     *
+     * @return the results
+     */
+    @Benchmark
+    public Object[] applyArity0() {
+        return this.arity0.apply();
+    }
+    
+    /**
+     * Call a function with two boxed `i32` arguments.
+     *
+     * @return the results
+     */
+    @Benchmark
+    public Object[] applySum() {
+        return this.sum.apply(this.left, this.right);
+    }
+    
+    /**
+     * Call a function with one argument of every value type.
+     *
+     * @return the results
+     */
+    @Benchmark
+    public Object[] applyI32I64F32F64() {
+        return this.mixed.apply(this.left, 2L, 3.0f, 4.0d);
+    }
+    
+    /**
+     * Call a function with two `i32` arguments through the unboxed path.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public int callI32Sum() {
+        return this.instance.callI32("sum", this.left, this.right);
+    }
+    
+    /**
+     * Call a function with two `i32` arguments {@value #BATCH} times in a single native call. The score is per call.
+     *
+     * @return the results
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int[] callBatchSum() {
+        this.instance.callBatch("sum", this.packedArguments, BATCH, this.results);
+        return this.results;
+    }
+}
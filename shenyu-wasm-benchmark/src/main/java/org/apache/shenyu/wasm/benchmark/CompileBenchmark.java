@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.shenyu.wasm.Module;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares compiling a batch of modules one after the other with compiling them in parallel, as on a reload of all
+ * the plugins.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompileBenchmark {
+    
+    private static final int MODULES = 40;
+    
+    private List<byte[]> moduleBytes;
+    
+    /**
+     * Load the module bytes once.
+     *
+     * @throws IOException if the module cannot be read
+     */
+    @Setup
+    public void setup() throws IOException {
+        this.moduleBytes = Collections.nCopies(MODULES, WasmResources.load("tests.wasm"));
+    }
+    
+    /**
+     * Compile the modules on the calling thread.
+     *
+     * @return the number of modules
+     */
+    @Benchmark
+    public int compileSerially() {
+        List<Module> modules = new ArrayList<>(MODULES);
+        for (byte[] bytes : this.moduleBytes) {
+            modules.add(new Module(bytes));
+        }
+        modules.forEach(Module::close);
+        return modules.size();
+    }
+    
+    /**
+     * Compile the modules in parallel.
+     *
+     * @return the number of modules
+     */
+    @Benchmark
+    public int compileAll() {
+        List<Module> modules = Module.compileAll(this.moduleBytes);
+        modules.forEach(Module::close);
+        return modules.size();
+    }
+}
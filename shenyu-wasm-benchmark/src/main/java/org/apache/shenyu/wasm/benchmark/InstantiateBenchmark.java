@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.shenyu.wasm.Instance;
+import org.apache.shenyu.wasm.Module;
+import org.apache.shenyu.wasm.Snapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares compiling and instantiating from bytes with instantiating an already compiled module, with starting from
+ * a snapshot, and with resetting an instance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InstantiateBenchmark {
+    
+    private byte[] wasmBytes;
+    
+    private Module module;
+    
+    private Snapshot snapshot;
+    
+    private Instance instance;
+    
+    /**
+     * Load and compile the module once.
+     *
+     * @throws IOException if the module cannot be read
+     */
+    @Setup
+    public void setup() throws IOException {
+        this.wasmBytes = WasmResources.load("tests.wasm");
+        this.module = new Module(this.wasmBytes);
+        Instance template = this.module.instantiate();
+        this.snapshot = template.snapshot();
+        template.close();
+        this.instance = this.snapshot.instantiate();
+    }
+    
+    /**
+     * Release the compiled module and its snapshot.
+     */
+    @TearDown
+    public void tearDown() {
+        this.instance.close();
+        this.snapshot.close();
+        this.module.close();
+    }
+    
+    /**
+     * Compile and instantiate from the raw bytes.
+     *
+     * @return the instance pointer
+     */
+    @Benchmark
+    public long newInstance() {
+        Instance instance = new Instance(this.wasmBytes);
+        long pointer = instance.getInstancePointer();
+        instance.close();
+        return pointer;
+    }
+    
+    /**
+     * Instantiate the precompiled module.
+     *
+     * @return the instance pointer
+     */
+    @Benchmark
+    public long moduleInstantiate() {
+        Instance instance = this.module.instantiate();
+        long pointer = instance.getInstancePointer();
+        instance.close();
+        return pointer;
+    }
+    
+    /**
+     * Instantiate from the snapshot of an instance.
+     *
+     * @return the instance pointer
+     */
+    @Benchmark
+    public long snapshotInstantiate() {
+        Instance instance = this.snapshot.instantiate();
+        long pointer = instance.getInstancePointer();
+        instance.close();
+        return pointer;
+    }
+    
+    /**
+     * Reset an instance to its snapshot, after writing to its memory as a request would.
+     *
+     * @return the instance pointer
+     */
+    @Benchmark
+    public long reset() {
+        this.instance.getMemory("memory").putInt(0, 42);
+        this.instance.reset();
+        return this.instance.getInstancePointer();
+    }
+}
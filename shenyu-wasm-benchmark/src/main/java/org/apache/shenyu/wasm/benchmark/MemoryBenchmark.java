@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.apache.shenyu.wasm.Instance;
+import org.apache.shenyu.wasm.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading and writing a small payload through {@link Memory#buffer()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryBenchmark {
+    
+    private static final int PAYLOAD_SIZE = 64;
+    
+    private Instance instance;
+    
+    private Memory memory;
+    
+    private byte[] payload;
+    
+    /**
+     * Instantiate the module and prepare the payload.
+     *
+     * @throws IOException if the module cannot be read
+     */
+    @Setup
+    public void setup() throws IOException {
+        this.instance = new Instance(WasmResources.load("tests.wasm"));
+        this.memory = this.instance.getMemory("memory");
+        this.payload = new byte[PAYLOAD_SIZE];
+    }
+    
+    /**
+     * Release the instance.
+     */
+    @TearDown
+    public void tearDown() {
+        this.instance.close();
+    }
+    
+    /**
+     * Read the payload from the guest memory.
+     *
+     * @return the payload
+     */
+    @Benchmark
+    public byte[] read() {
+        ByteBuffer buffer = this.memory.buffer();
+        buffer.position(0);
+        buffer.get(this.payload);
+        return this.payload;
+    }
+    
+    /**
+     * Write the payload into the guest memory.
+     *
+     * @return the buffer
+     */
+    @Benchmark
+    public ByteBuffer write() {
+        ByteBuffer buffer = this.memory.buffer();
+        buffer.position(0);
+        buffer.put(this.payload);
+        return buffer;
+    }
+}
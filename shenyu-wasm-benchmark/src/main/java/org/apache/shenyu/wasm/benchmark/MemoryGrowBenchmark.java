@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.shenyu.wasm.Instance;
+import org.apache.shenyu.wasm.Memory;
+import org.apache.shenyu.wasm.Module;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Memory#grow(int)}. Every invocation works on a fresh instance so that the memory never reaches its
+ * maximum size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryGrowBenchmark {
+    
+    private Module module;
+    
+    private Instance instance;
+    
+    private Memory memory;
+    
+    /**
+     * Compile the module once.
+     *
+     * @throws IOException if the module cannot be read
+     */
+    @Setup(Level.Trial)
+    public void compile() throws IOException {
+        this.module = new Module(WasmResources.load("tests.wasm"));
+    }
+    
+    /**
+     * Instantiate a fresh instance before every invocation.
+     */
+    @Setup(Level.Invocation)
+    public void instantiate() {
+        this.instance = this.module.instantiate();
+        this.memory = this.instance.getMemory("memory");
+    }
+    
+    /**
+     * Release the instance after every invocation.
+     */
+    @TearDown(Level.Invocation)
+    public void close() {
+        this.instance.close();
+    }
+    
+    /**
+     * Release the compiled module.
+     */
+    @TearDown(Level.Trial)
+    public void release() {
+        this.module.close();
+    }
+    
+    /**
+     * Grow the memory by one page.
+     *
+     * @return the previous number of pages
+     */
+    @Benchmark
+    public int growOnePage() {
+        return this.memory.grow(1);
+    }
+}
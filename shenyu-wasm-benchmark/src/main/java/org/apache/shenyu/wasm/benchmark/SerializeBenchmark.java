@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.shenyu.wasm.Module;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Module#serialize()} and {@link Module#deserialize(byte[])}, the building blocks of compiled module
+ * caching.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializeBenchmark {
+    
+    private Module module;
+    
+    private byte[] serialized;
+    
+    /**
+     * Compile and serialize the module once.
+     *
+     * @throws IOException if the module cannot be read
+     */
+    @Setup
+    public void setup() throws IOException {
+        this.module = new Module(WasmResources.load("tests.wasm"));
+        this.serialized = this.module.serialize();
+    }
+    
+    /**
+     * Release the compiled module.
+     */
+    @TearDown
+    public void tearDown() {
+        this.module.close();
+    }
+    
+    /**
+     * Serialize the compiled module.
+     *
+     * @return the serialized bytes
+     */
+    @Benchmark
+    public byte[] serialize() {
+        return this.module.serialize();
+    }
+    
+    /**
+     * Deserialize the compiled module.
+     *
+     * @return the serialized size
+     */
+    @Benchmark
+    public int deserialize() {
+        Module deserialized = Module.deserialize(this.serialized);
+        deserialized.close();
+        return this.serialized.length;
+    }
+}
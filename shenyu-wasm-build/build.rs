@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present Wasmer, Inc. and its affiliates.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+//! Exposes the version of wasmer resolved in `Cargo.lock` as
+//! `WASMER_VERSION`, which serialized modules are tagged with: artifacts of
+//! one version must never be loaded by another.
+
+use std::{env, fs, path::Path};
+
+fn main() {
+    let lock_file = Path::new(&env::var("CARGO_MANIFEST_DIR").unwrap()).join("Cargo.lock");
+    println!("cargo:rerun-if-changed={}", lock_file.display());
+
+    let lock = fs::read_to_string(&lock_file)
+        .unwrap_or_else(|e| panic!("Cannot read {}: {}", lock_file.display(), e));
+    let mut lines = lock.lines();
+    let version = loop {
+        match lines.next() {
+            Some("name = \"wasmer\"") => {
+                let version = lines.next().and_then(|line| line.strip_prefix("version = \""));
+                break version.and_then(|version| version.strip_suffix('"'));
+            }
+            Some(_) => continue,
+            None => break None,
+        }
+    }
+    .expect("wasmer is missing from Cargo.lock");
+
+    println!("cargo:rustc-env=WASMER_VERSION={}", version);
+}
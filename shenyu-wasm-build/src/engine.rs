@@ -0,0 +1,395 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present Wasmer, Inc. and its affiliates.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+//! Compilation of modules.
+//!
+//! The compiler and its optimization level are chosen per engine, see
+//! `EngineConfig`. A module either gets an engine of its own, which holds its
+//! machine code and signatures and is thus freed with it, or is compiled by
+//! an `Engine` shared with other modules.
+
+use crate::{
+    exception::{joption_or_throw, runtime_error, Error},
+    module::Module,
+    snapshot::{self, SnapshotExports},
+    types::{direct_buffer_slice, jptr, Pointer},
+};
+use jni::{
+    objects::{JByteBuffer, JClass, JObject},
+    sys::{jboolean, jbyteArray, jint},
+    JNIEnv,
+};
+use std::{
+    panic,
+    sync::{Arc, Mutex},
+};
+use wasmer::{
+    sys::EngineBuilder, wasmparser::Operator, CompilerConfig, Engine as WasmEngine,
+    FunctionMiddleware, LocalFunctionIndex, MiddlewareError, Module as WasmModule,
+    ModuleMiddleware,
+};
+use wasmer_middlewares::Metering;
+use wasmer_types::ModuleInfo;
+
+/// The export through which the metering middleware exposes the remaining
+/// fuel, which tells metered modules apart.
+pub const REMAINING_POINTS_GLOBAL: &str = "wasmer_metering_remaining_points";
+
+/// The other export of the metering middleware, telling whether the fuel
+/// ran out.
+pub const POINTS_EXHAUSTED_GLOBAL: &str = "wasmer_metering_points_exhausted";
+
+/// Mirrors `EngineConfig.Compiler` on the Java side, in the same order.
+#[derive(Clone, Copy, Debug, PartialEq, Eq)]
+pub enum Compiler {
+    Cranelift,
+    Llvm,
+    Singlepass,
+}
+
+/// Mirrors `EngineConfig.OptimizationLevel` on the Java side, in the same
+/// order.
+#[derive(Clone, Copy, Debug, PartialEq, Eq)]
+pub enum OptLevel {
+    None,
+    Speed,
+    SpeedAndSize,
+}
+
+#[derive(Clone, Copy, Debug)]
+pub struct EngineConfig {
+    pub compiler: Compiler,
+    pub opt_level: OptLevel,
+    /// Whether modules are instrumented to count their fuel, which execution
+    /// limits rely on.
+    pub metering: bool,
+    /// Whether modules export their state to the runtime, which snapshots
+    /// and resets rely on.
+    pub snapshots: bool,
+}
+
+impl Default for EngineConfig {
+    fn default() -> Self {
+        Self {
+            compiler: Compiler::Cranelift,
+            opt_level: OptLevel::Speed,
+            metering: false,
+            snapshots: false,
+        }
+    }
+}
+
+impl EngineConfig {
+    pub fn from_java(
+        compiler: jint,
+        opt_level: jint,
+        metering: jboolean,
+        snapshots: jboolean,
+    ) -> Result<Self, Error> {
+        let compiler = match compiler {
+            0 => Compiler::Cranelift,
+            1 => Compiler::Llvm,
+            2 => Compiler::Singlepass,
+            _ => return Err(runtime_error(format!("Unknown compiler #{}", compiler))),
+        };
+        let opt_level = match opt_level {
+            0 => OptLevel::None,
+            1 => OptLevel::Speed,
+            2 => OptLevel::SpeedAndSize,
+            _ => {
+                return Err(runtime_error(format!(
+                    "Unknown optimization level #{}",
+                    opt_level
+                )))
+            }
+        };
+
+        Ok(Self {
+            compiler,
+            opt_level,
+            metering: metering != 0,
+            snapshots: snapshots != 0,
+        })
+    }
+
+    fn compiler_config(&self) -> Result<Box<dyn CompilerConfig>, Error> {
+        let mut compiler: Box<dyn CompilerConfig> = match self.compiler {
+            #[cfg(feature = "cranelift")]
+            Compiler::Cranelift => {
+                use wasmer::{Cranelift, CraneliftOptLevel};
+
+                let mut compiler = Cranelift::default();
+                compiler.opt_level(match self.opt_level {
+                    OptLevel::None => CraneliftOptLevel::None,
+                    OptLevel::Speed => CraneliftOptLevel::Speed,
+                    OptLevel::SpeedAndSize => CraneliftOptLevel::SpeedAndSize,
+                });
+
+                Box::new(compiler)
+            }
+            #[cfg(feature = "llvm")]
+            Compiler::Llvm => {
+                use wasmer::{LLVMOptLevel, LLVM};
+
+                let mut compiler = LLVM::default();
+                compiler.opt_level(match self.opt_level {
+                    OptLevel::None => LLVMOptLevel::None,
+                    OptLevel::Speed => LLVMOptLevel::Aggressive,
+                    OptLevel::SpeedAndSize => LLVMOptLevel::Default,
+                });
+
+                Box::new(compiler)
+            }
+            // Singlepass compiles in linear time and does not optimize.
+            #[cfg(feature = "singlepass")]
+            Compiler::Singlepass => Box::new(wasmer::Singlepass::default()),
+            #[allow(unreachable_patterns)]
+            compiler => {
+                return Err(runtime_error(format!(
+                    "The {:?} compiler is not enabled in this build of the native library",
+                    compiler
+                )))
+            }
+        };
+
+        // Before metering, so that the metering globals are not snapshotted.
+        if self.snapshots {
+            compiler.push_middleware(Arc::new(SnapshotExports));
+        }
+        if self.metering {
+            compiler.push_middleware(Arc::new(ModuleMetering::default()));
+        }
+
+        Ok(compiler)
+    }
+}
+
+/// Every operator costs one unit of fuel.
+fn operator_cost(_operator: &Operator) -> u64 {
+    1
+}
+
+type OperatorCost = fn(&Operator) -> u64;
+
+/// The metering middleware of wasmer keeps the globals it adds to the module
+/// it instruments, and refuses to instrument a second one. This middleware
+/// gives every module a metering middleware of its own instead, which takes
+/// the module compilations of an engine to run one at a time.
+#[derive(Debug, Default)]
+struct ModuleMetering {
+    current: Mutex<Option<Arc<Metering<OperatorCost>>>>,
+}
+
+impl ModuleMiddleware for ModuleMetering {
+    fn generate_function_middleware(
+        &self,
+        local_function_index: LocalFunctionIndex,
+    ) -> Box<dyn FunctionMiddleware> {
+        self.current
+            .lock()
+            .unwrap()
+            .as_ref()
+            .expect("The module must be transformed before its functions")
+            .generate_function_middleware(local_function_index)
+    }
+
+    fn transform_module_info(&self, module_info: &mut ModuleInfo) -> Result<(), MiddlewareError> {
+        let metering = Metering::new(u64::MAX, operator_cost as OperatorCost);
+        metering.transform_module_info(module_info)?;
+        *self.current.lock().unwrap() = Some(Arc::new(metering));
+
+        Ok(())
+    }
+}
+
+/// An engine shared by the modules it compiles, so that they share its
+/// compiler and signature registry. Its machine code is only freed once the
+/// engine and all of its modules are dropped.
+pub struct Engine {
+    engine: WasmEngine,
+    /// Serializes the compilations of a metered engine, see `ModuleMetering`.
+    compile_lock: Option<Mutex<()>>,
+}
+
+impl Engine {
+    pub fn new(config: &EngineConfig) -> Result<Self, Error> {
+        Ok(Self {
+            engine: EngineBuilder::new(config.compiler_config()?).engine(),
+            compile_lock: match config.metering {
+                true => Some(Mutex::new(())),
+                false => None,
+            },
+        })
+    }
+
+    pub fn compile(&self, module_bytes: &[u8]) -> Result<Module, Error> {
+        let _guard = self.compile_lock.as_ref().map(|lock| lock.lock().unwrap());
+        let module = WasmModule::new(&self.engine, module_bytes)
+            .map_err(|e| runtime_error(format!("Failed to compile the module: {}", e)))?;
+
+        Ok(Module::new(self.engine.clone(), module))
+    }
+
+    /// Load a module serialized by `Module::serialize`. No compiler is
+    /// involved.
+    ///
+    /// # Safety
+    ///
+    /// The artifact must come from the same runtime version, see
+    /// `module::RUNTIME_VERSION`.
+    pub unsafe fn deserialize(&self, serialized_module: &[u8]) -> Result<Module, Error> {
+        deserialize(&self.engine, serialized_module)
+    }
+}
+
+/// Compile a module with an engine of its own.
+pub fn compile(config: &EngineConfig, module_bytes: &[u8]) -> Result<Module, Error> {
+    Engine::new(config)?.compile(module_bytes)
+}
+
+/// Validate a module against the features of the default engine, without
+/// compiling it.
+pub fn validate(module_bytes: &[u8]) -> Result<(), Error> {
+    let engine = EngineBuilder::new(
+        EngineConfig {
+            metering: false,
+            ..EngineConfig::default()
+        }
+        .compiler_config()?,
+    )
+    .engine();
+
+    WasmModule::validate(&engine, module_bytes).map_err(|e| runtime_error(format!("{}", e)))
+}
+
+/// Load a module serialized by `Module::serialize` into `engine`.
+///
+/// # Safety
+///
+/// The artifact must come from the same runtime version, see
+/// `module::RUNTIME_VERSION`.
+pub unsafe fn deserialize(engine: &WasmEngine, serialized_module: &[u8]) -> Result<Module, Error> {
+    let module = WasmModule::deserialize(engine, serialized_module)
+        .map_err(|e| runtime_error(format!("Failed to deserialize the module: {}", e)))?;
+
+    Ok(Module::new(engine.clone(), module))
+}
+
+/// Whether the module was compiled with metering, and thus supports
+/// execution limits.
+pub fn is_metered(module: &WasmModule) -> bool {
+    module
+        .exports()
+        .any(|export| export.name() == REMAINING_POINTS_GLOBAL)
+}
+
+/// Whether an export was added by the runtime, for metering or snapshots,
+/// rather than by the module itself, and is thus hidden from Java.
+pub fn is_internal(export_name: &str) -> bool {
+    export_name == REMAINING_POINTS_GLOBAL
+        || export_name == POINTS_EXHAUSTED_GLOBAL
+        || snapshot::is_reserved(export_name)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Engine_nativeNew(
+    env: JNIEnv,
+    _class: JClass,
+    compiler: jint,
+    opt_level: jint,
+    metering: jboolean,
+    snapshots: jboolean,
+) -> jptr {
+    let output = panic::catch_unwind(|| {
+        let config = EngineConfig::from_java(compiler, opt_level, metering, snapshots)?;
+
+        Ok(Pointer::new(Engine::new(&config)?).into())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Engine_nativeDrop(
+    _env: JNIEnv,
+    _class: JClass,
+    engine_pointer: jptr,
+) {
+    let _: Pointer<Engine> = engine_pointer.into();
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Engine_nativeCompile(
+    env: JNIEnv,
+    _engine: JObject,
+    engine_pointer: jptr,
+    module_bytes: jbyteArray,
+) -> jptr {
+    let output = panic::catch_unwind(|| {
+        let engine: &Engine = Into::<Pointer<Engine>>::into(engine_pointer).borrow();
+        let module_bytes = env.convert_byte_array(module_bytes)?;
+
+        Ok(Pointer::new(engine.compile(module_bytes.as_slice())?).into())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Engine_nativeCompileBuffer(
+    env: JNIEnv,
+    _engine: JObject,
+    engine_pointer: jptr,
+    module_buffer: JByteBuffer,
+    offset: jint,
+    length: jint,
+) -> jptr {
+    let output = panic::catch_unwind(|| {
+        let engine: &Engine = Into::<Pointer<Engine>>::into(engine_pointer).borrow();
+        let module_bytes = direct_buffer_slice(&env, module_buffer, offset, length)?;
+
+        Ok(Pointer::new(engine.compile(module_bytes)?).into())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Engine_nativeDeserialize(
+    env: JNIEnv,
+    _engine: JObject,
+    engine_pointer: jptr,
+    java_serialized_module: jbyteArray,
+) -> jptr {
+    let output = panic::catch_unwind(|| {
+        let engine: &Engine = Into::<Pointer<Engine>>::into(engine_pointer).borrow();
+        let serialized_module = env.convert_byte_array(java_serialized_module)?;
+        // Safety: see `Module::deserialize`.
+        let module = unsafe { engine.deserialize(serialized_module.as_slice())? };
+
+        Ok(Pointer::new(module).into())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
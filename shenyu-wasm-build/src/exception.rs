@@ -22,6 +22,7 @@
  * SOFTWARE.
  */
 
+use crate::jvm::jvm;
 pub use jni::errors::Error;
 use jni::{errors::ErrorKind, JNIEnv};
 use std::thread;
@@ -30,6 +31,17 @@ pub fn runtime_error(message: String) -> Error {
     Error::from_kind(ErrorKind::Msg(message))
 }
 
+/// Throw a Java exception of the given class, and return the matching error
+/// so that the caller bails out; `joption_or_throw` keeps the pending
+/// exception instead of throwing a `RuntimeException`.
+pub fn throw(env: &JNIEnv, class: &str, message: String) -> Error {
+    if env.throw_new(class, &message).is_err() {
+        return runtime_error(format!("Cannot throw a `{}`: {}", class, message));
+    }
+
+    runtime_error(message)
+}
+
 #[derive(Debug)]
 pub enum JOption<T> {
     Some(T),
@@ -51,7 +63,7 @@ pub fn joption_or_throw<T>(env: &JNIEnv, result: thread::Result<Result<T, Error>
             Ok(result) => JOption::Some(result),
             Err(error) => {
                 if !env.exception_check().unwrap() {
-                    env.throw_new("java/lang/RuntimeException", &error.to_string())
+                    env.throw_new(jvm().runtime_exception.as_class(), &error.to_string())
                         .expect("Cannot throw an `java/lang/RuntimeException` exception.");
                 }
 
@@ -59,7 +71,7 @@ pub fn joption_or_throw<T>(env: &JNIEnv, result: thread::Result<Result<T, Error>
             }
         },
         Err(ref error) => {
-            env.throw_new("java/lang/RuntimeException", format!("{:?}", error))
+            env.throw_new(jvm().runtime_exception.as_class(), format!("{:?}", error))
                 .expect("Cannot throw an `java/lang/RuntimeException` exception.");
 
             JOption::None
@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present Wasmer, Inc. and its affiliates.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+use crate::{
+    engine,
+    exception::{joption_or_throw, Error},
+    instance::Instance,
+    jvm::jvm,
+    module::Module,
+    types::{jptr, Pointer},
+    value,
+};
+use jni::{
+    objects::{JClass, JObject, JValue},
+    signature::{JavaType, Primitive},
+    sys::{jboolean, jint, jlong},
+    JNIEnv,
+};
+use std::panic;
+use wasmer::{ExternType, Module as WasmModule, Mutability};
+
+/// Fill a Java `ExportTable` with the exports of a module, once per module.
+/// Functions are numbered in the order of the module, as by
+/// `SharedModule::functions`, and internal exports are left out.
+fn read_exports(env: &JNIEnv, module: &WasmModule, table: JObject) -> Result<(), Error> {
+    let jvm = jvm();
+    let mut function_index: jint = 0;
+
+    for export in module.exports() {
+        if engine::is_internal(export.name()) {
+            continue;
+        }
+
+        let name = JObject::from(env.new_string(export.name())?);
+
+        match export.ty() {
+            ExternType::Function(function) => {
+                let params = JObject::from(value::type_ordinals(env, function.params())?);
+                let results = JObject::from(value::type_ordinals(env, function.results())?);
+
+                env.call_method_unchecked(
+                    table,
+                    jvm.export_table_add_function.id(),
+                    JavaType::Primitive(Primitive::Void),
+                    &[name.into(), function_index.into(), params.into(), results.into()],
+                )?;
+                env.delete_local_ref(params)?;
+                env.delete_local_ref(results)?;
+                function_index += 1;
+            }
+            ExternType::Memory(memory) => {
+                env.call_method_unchecked(
+                    table,
+                    jvm.export_table_add_memory.id(),
+                    JavaType::Primitive(Primitive::Void),
+                    &[
+                        name.into(),
+                        (memory.minimum.0 as jlong).into(),
+                        memory.maximum.map_or(-1, |pages| pages.0 as jlong).into(),
+                        JValue::Bool(memory.shared as jboolean),
+                    ],
+                )?;
+            }
+            ExternType::Table(table_type) => {
+                env.call_method_unchecked(
+                    table,
+                    jvm.export_table_add_table.id(),
+                    JavaType::Primitive(Primitive::Void),
+                    &[
+                        name.into(),
+                        value::type_ordinal(table_type.ty).into(),
+                        (table_type.minimum as jlong).into(),
+                        table_type.maximum.map_or(-1, |elements| elements as jlong).into(),
+                    ],
+                )?;
+            }
+            ExternType::Global(global) => {
+                env.call_method_unchecked(
+                    table,
+                    jvm.export_table_add_global.id(),
+                    JavaType::Primitive(Primitive::Void),
+                    &[
+                        name.into(),
+                        value::type_ordinal(global.ty).into(),
+                        JValue::Bool((global.mutability == Mutability::Var) as jboolean),
+                    ],
+                )?;
+            }
+        }
+
+        env.delete_local_ref(name)?;
+    }
+
+    Ok(())
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_ExportTable_nativeReadModule(
+    env: JNIEnv,
+    _class: JClass,
+    _module: JObject,
+    module_pointer: jptr,
+    table: JObject,
+) {
+    let output = panic::catch_unwind(|| {
+        let module: &Module = Into::<Pointer<Module>>::into(module_pointer).borrow();
+
+        read_exports(&env, module.module(), table)
+    });
+
+    joption_or_throw(&env, output).unwrap_or(())
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_ExportTable_nativeReadInstance(
+    env: JNIEnv,
+    _class: JClass,
+    _instance: JObject,
+    instance_pointer: jptr,
+    table: JObject,
+) {
+    let output = panic::catch_unwind(|| {
+        let instance: &Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+
+        read_exports(&env, &instance.module, table)
+    });
+
+    joption_or_throw(&env, output).unwrap_or(())
+}
@@ -0,0 +1,223 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present Wasmer, Inc. and its affiliates.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+//! C entry points for the `java.lang.foreign` downcalls of the runtime on
+//! Java 22 and later. They never touch the JNI environment: the outcome of
+//! a call is a status code, the message of a failed call is kept for
+//! `shenyu_wasm_last_error`, and results are written through pointers.
+
+use crate::{
+    instance::{self, Instance},
+    limits::Exceeded,
+    types::{jptr, Pointer},
+};
+use jni::sys::{jdouble, jfloat, jint, jlong};
+use std::{
+    cell::RefCell,
+    ffi::CString,
+    os::raw::c_char,
+    panic::{self, AssertUnwindSafe},
+    slice,
+};
+use wasmer::Value as WasmValue;
+
+pub const OK: jint = 0;
+pub const FAILED: jint = 1;
+pub const FUEL_EXHAUSTED: jint = 2;
+pub const TIMEOUT: jint = 3;
+pub const CANCELLED: jint = 4;
+pub const UNAVAILABLE: jint = 5;
+/// Or-ed with the status when the guest grew a memory during the call.
+pub const MEMORY_GROWN: jint = 0x100;
+
+thread_local! {
+    /// The message of the last failed call on this thread.
+    static LAST_ERROR: RefCell<CString> = RefCell::new(CString::default());
+}
+
+pub fn exceeded_status(exceeded: Exceeded) -> jint {
+    match exceeded {
+        Exceeded::Fuel => FUEL_EXHAUSTED,
+        Exceeded::Deadline => TIMEOUT,
+        Exceeded::Cancelled => CANCELLED,
+    }
+}
+
+fn fail(status: jint, message: String) -> jint {
+    let message = CString::new(message.replace('\0', "")).unwrap_or_default();
+    LAST_ERROR.with(|last_error| *last_error.borrow_mut() = message);
+
+    status
+}
+
+/// Call an exported function taking `length` values of one type and
+/// returning exactly one of them, as `Instance.callI32` and the like do.
+unsafe fn call<T: Copy>(
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments: *const T,
+    length: jint,
+    result: *mut T,
+    into_value: fn(T) -> WasmValue,
+    from_value: fn(&WasmValue) -> Option<T>,
+    type_name: &str,
+) -> jint {
+    let outcome = panic::catch_unwind(AssertUnwindSafe(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let function = match instance.exported_function(function_index) {
+            Ok(function) => function,
+            Err(error) => return fail(FAILED, error.to_string()),
+        };
+
+        let arguments: Vec<WasmValue> = match length {
+            0 => Vec::new(),
+            _ => slice::from_raw_parts(arguments, length as usize)
+                .iter()
+                .map(|argument| into_value(*argument))
+                .collect(),
+        };
+
+        let (outcome, grown) =
+            instance.invoke_detached(|instance| instance.call_single(function, &arguments));
+        let status = match outcome {
+            Ok(value) => match from_value(&value) {
+                Some(value) => {
+                    *result = value;
+                    OK
+                }
+                None => {
+                    let name = &instance.shared.functions[function].name;
+                    fail(FAILED, instance::unexpected_result_type(name, type_name).to_string())
+                }
+            },
+            Err((status, message)) => fail(status, message),
+        };
+
+        match grown {
+            true => status | MEMORY_GROWN,
+            false => status,
+        }
+    }));
+
+    outcome.unwrap_or_else(|_| fail(FAILED, "The call panicked".to_string()))
+}
+
+#[no_mangle]
+pub unsafe extern "C" fn shenyu_wasm_call_i32(
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments: *const jint,
+    length: jint,
+    result: *mut jint,
+) -> jint {
+    call(
+        instance_pointer,
+        function_index,
+        arguments,
+        length,
+        result,
+        WasmValue::I32,
+        |value| match value {
+            WasmValue::I32(value) => Some(*value),
+            _ => None,
+        },
+        "i32",
+    )
+}
+
+#[no_mangle]
+pub unsafe extern "C" fn shenyu_wasm_call_i64(
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments: *const jlong,
+    length: jint,
+    result: *mut jlong,
+) -> jint {
+    call(
+        instance_pointer,
+        function_index,
+        arguments,
+        length,
+        result,
+        WasmValue::I64,
+        |value| match value {
+            WasmValue::I64(value) => Some(*value),
+            _ => None,
+        },
+        "i64",
+    )
+}
+
+#[no_mangle]
+pub unsafe extern "C" fn shenyu_wasm_call_f32(
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments: *const jfloat,
+    length: jint,
+    result: *mut jfloat,
+) -> jint {
+    call(
+        instance_pointer,
+        function_index,
+        arguments,
+        length,
+        result,
+        WasmValue::F32,
+        |value| match value {
+            WasmValue::F32(value) => Some(*value),
+            _ => None,
+        },
+        "f32",
+    )
+}
+
+#[no_mangle]
+pub unsafe extern "C" fn shenyu_wasm_call_f64(
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments: *const jdouble,
+    length: jint,
+    result: *mut jdouble,
+) -> jint {
+    call(
+        instance_pointer,
+        function_index,
+        arguments,
+        length,
+        result,
+        WasmValue::F64,
+        |value| match value {
+            WasmValue::F64(value) => Some(*value),
+            _ => None,
+        },
+        "f64",
+    )
+}
+
+/// The message of the last failed call on the calling thread, valid until
+/// its next call.
+#[no_mangle]
+pub extern "C" fn shenyu_wasm_last_error() -> *const c_char {
+    LAST_ERROR.with(|last_error| last_error.borrow().as_ptr())
+}
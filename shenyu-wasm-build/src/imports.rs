@@ -0,0 +1,273 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present Wasmer, Inc. and its affiliates.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+//! Host functions: Java implementations of functions a guest module imports.
+//!
+//! Host functions always run on the thread that entered the guest through a
+//! JNI call, so the `JNIEnv` is recovered from the `JavaVM` without attaching
+//! a thread, and the calling Java `Instance` is handed over through a
+//! thread-local instead of a global reference per instance.
+
+use crate::{
+    exception::{runtime_error, Error},
+    jvm::{jvm, MethodId},
+};
+use jni::{
+    objects::{GlobalRef, JObject, JThrowable, JValue},
+    signature::{JavaType, Primitive},
+    sys::{jlong, jobject, jsize},
+    JNIEnv, JavaVM,
+};
+use std::{cell::Cell, sync::Arc};
+use wasmer::{Function, FunctionType, Imports, RuntimeError, Store, Type, Value as WasmValue};
+
+thread_local! {
+    /// The Java `Instance` whose call is running on this thread, if any.
+    static CALLER: Cell<jobject> = Cell::new(std::ptr::null_mut());
+
+    /// The first exception thrown by a host function during the running call.
+    static HOST_EXCEPTION: Cell<Option<GlobalRef>> = Cell::new(None);
+}
+
+/// Marks `caller` as the instance on whose behalf host functions run, until
+/// the guard is dropped. Guards nest, so a host function may call back into
+/// another instance.
+pub struct CallerGuard {
+    previous: jobject,
+}
+
+impl CallerGuard {
+    pub fn enter(caller: JObject) -> Self {
+        let previous = CALLER.with(|current| current.replace(caller.into_inner()));
+
+        Self { previous }
+    }
+}
+
+impl Drop for CallerGuard {
+    fn drop(&mut self) {
+        CALLER.with(|current| current.set(self.previous));
+    }
+}
+
+/// Rethrow in Java the exception raised by a host function during the last
+/// call or instantiation, if any. Returns an error in that case so that the
+/// result of the trapped call is discarded. Every path running guest code
+/// must end with it, or the exception is rethrown by an unrelated call.
+pub fn rethrow_host_exception(env: &JNIEnv) -> Result<(), Error> {
+    match HOST_EXCEPTION.with(|exception| exception.take()) {
+        Some(exception) => {
+            env.throw(JThrowable::from(exception.as_obj()))?;
+
+            Err(runtime_error("A host function threw an exception".to_string()))
+        }
+        None => Ok(()),
+    }
+}
+
+/// Drop the exception raised by a host function during the last call, if
+/// any, when another error is reported instead.
+pub fn discard_host_exception() {
+    HOST_EXCEPTION.with(|exception| exception.take());
+}
+
+/// Build the imports described by a Java `ImportObject` in `store`. A `null`
+/// object means the module has no imports.
+pub fn import_object(
+    env: &JNIEnv,
+    store: &mut Store,
+    java_imports: JObject,
+) -> Result<Imports, Error> {
+    let mut import_object = Imports::new();
+
+    if java_imports.is_null() {
+        return Ok(import_object);
+    }
+
+    let jvm = jvm();
+    let namespaces = string_array(env, java_imports, jvm.import_object_namespaces)?;
+    let names = string_array(env, java_imports, jvm.import_object_names)?;
+    let signatures = string_array(env, java_imports, jvm.import_object_signatures)?;
+    let functions = array(env, java_imports, jvm.import_object_functions)?;
+
+    let vm = Arc::new(env.get_java_vm()?);
+    let call = jvm.host_function_call;
+
+    for (nth, ((namespace, name), signature)) in namespaces
+        .into_iter()
+        .zip(names)
+        .zip(signatures)
+        .enumerate()
+    {
+        let (params, results) = parse_signature(&signature)?;
+        let function =
+            env.new_global_ref(env.get_object_array_element(functions, nth as jsize)?)?;
+        let host_function = host_function(store, vm.clone(), call, function, params, results);
+
+        import_object.define(&namespace, &name, host_function);
+    }
+
+    Ok(import_object)
+}
+
+/// Call a getter of the Java `ImportObject` returning an array.
+fn array(env: &JNIEnv, java_imports: JObject, method: MethodId) -> Result<jobject, Error> {
+    Ok(env
+        .call_method_unchecked(
+            java_imports,
+            method.id(),
+            JavaType::Array(Box::new(JavaType::Object(String::new()))),
+            &[],
+        )?
+        .l()?
+        .into_inner())
+}
+
+fn string_array(env: &JNIEnv, java_imports: JObject, method: MethodId) -> Result<Vec<String>, Error> {
+    let array = array(env, java_imports, method)?;
+
+    (0..env.get_array_length(array)?)
+        .map(|nth| Ok(env.get_string(env.get_object_array_element(array, nth)?.into())?.into()))
+        .collect()
+}
+
+/// Parse a signature written with JVM descriptor letters, e.g. `(IJ)F`.
+fn parse_signature(signature: &str) -> Result<(Vec<Type>, Vec<Type>), Error> {
+    let invalid = || runtime_error(format!("Invalid host function signature `{}`", signature));
+    let types = |letters: &str| {
+        letters
+            .chars()
+            .map(|letter| match letter {
+                'I' => Ok(Type::I32),
+                'J' => Ok(Type::I64),
+                'F' => Ok(Type::F32),
+                'D' => Ok(Type::F64),
+                _ => Err(invalid()),
+            })
+            .collect::<Result<Vec<Type>, Error>>()
+    };
+
+    if !signature.starts_with('(') {
+        return Err(invalid());
+    }
+
+    let close = signature.find(')').ok_or_else(invalid)?;
+
+    Ok((types(&signature[1..close])?, types(&signature[close + 1..])?))
+}
+
+fn host_function(
+    store: &mut Store,
+    vm: Arc<JavaVM>,
+    call: MethodId,
+    function: GlobalRef,
+    params: Vec<Type>,
+    results: Vec<Type>,
+) -> Function {
+    let signature = FunctionType::new(params, results.clone());
+
+    Function::new(
+        store,
+        signature,
+        move |arguments: &[WasmValue]| -> Result<Vec<WasmValue>, RuntimeError> {
+            call_host_function(&vm, call, &function, &results, arguments)
+                .map_err(|e| RuntimeError::new(e.to_string()))
+        },
+    )
+}
+
+fn call_host_function(
+    vm: &JavaVM,
+    call: MethodId,
+    function: &GlobalRef,
+    result_types: &[Type],
+    arguments: &[WasmValue],
+) -> Result<Vec<WasmValue>, Error> {
+    let env = vm.get_env()?;
+
+    let raw_arguments: Vec<jlong> = arguments.iter().map(to_raw).collect();
+    let java_arguments = env.new_long_array(raw_arguments.len() as jsize)?;
+    env.set_long_array_region(java_arguments, 0, &raw_arguments)?;
+    let java_results = env.new_long_array(result_types.len() as jsize)?;
+
+    let caller = JObject::from(CALLER.with(|current| current.get()));
+    let outcome = env.call_method_unchecked(
+        function.as_obj(),
+        call.id(),
+        JavaType::Primitive(Primitive::Void),
+        &[
+            JValue::Object(caller),
+            JValue::Object(JObject::from(java_arguments)),
+            JValue::Object(JObject::from(java_results)),
+        ],
+    );
+
+    if env.exception_check()? {
+        // Keep the exception aside: the guest must unwind before Java sees it,
+        // and no other JNI call is allowed while it is pending.
+        let exception = env.exception_occurred()?;
+        env.exception_clear()?;
+        let exception = env.new_global_ref(JObject::from(exception))?;
+        HOST_EXCEPTION.with(|pending| {
+            let first = pending.take().unwrap_or(exception);
+            pending.set(Some(first));
+        });
+    }
+
+    let mut raw_results = vec![0 as jlong; result_types.len()];
+    let read = outcome.and_then(|_| env.get_long_array_region(java_results, 0, &mut raw_results));
+
+    // Host functions may run many times within one native frame.
+    env.delete_local_ref(JObject::from(java_arguments))?;
+    env.delete_local_ref(JObject::from(java_results))?;
+    read?;
+
+    Ok(result_types
+        .iter()
+        .zip(raw_results)
+        .map(|(ty, raw)| from_raw(*ty, raw))
+        .collect())
+}
+
+/// Values cross the boundary as raw bits: integers sign-extended to 64 bits,
+/// floats as their IEEE 754 bit pattern.
+fn to_raw(value: &WasmValue) -> jlong {
+    match value {
+        WasmValue::I32(value) => *value as jlong,
+        WasmValue::I64(value) => *value,
+        WasmValue::F32(value) => value.to_bits() as jlong,
+        WasmValue::F64(value) => value.to_bits() as jlong,
+        _ => 0,
+    }
+}
+
+fn from_raw(ty: Type, raw: jlong) -> WasmValue {
+    match ty {
+        Type::I32 => WasmValue::I32(raw as i32),
+        Type::I64 => WasmValue::I64(raw),
+        Type::F32 => WasmValue::F32(f32::from_bits(raw as u32)),
+        Type::F64 => WasmValue::F64(f64::from_bits(raw as u64)),
+        _ => WasmValue::I64(raw),
+    }
+}
@@ -23,89 +23,503 @@
  */
 
 use crate::{
-    exception::{joption_or_throw, runtime_error, Error},
-    memory,
+    engine::{self, EngineConfig},
+    exception::{joption_or_throw, runtime_error, throw, Error},
+    foreign,
+    imports::{self, CallerGuard},
+    limits::{Exceeded, Interrupt, Limits},
     memory::Memory,
-    types::{jptr, Pointer},
-    value::{Value, DOUBLE_CLASS, FLOAT_CLASS, INT_CLASS, LONG_CLASS},
+    snapshot::{self, Snapshot, State},
+    types::{direct_buffer_slice, jptr, Pointer},
+    jvm::jvm,
+    value::{self, Value},
 };
 use jni::{
-    objects::{GlobalRef, JClass, JObject, JString, JValue},
-    sys::{jbyteArray, jobjectArray},
+    objects::{JByteBuffer, JClass, JObject, JString},
+    signature::{JavaType, Primitive},
+    sys::{
+        jboolean, jbyte, jbyteArray, jdouble, jdoubleArray, jfloat, jfloatArray, jint, jintArray, jlong,
+        jlongArray, jobjectArray,
+    },
     JNIEnv,
 };
-use std::{collections::HashMap, convert::TryFrom, panic, rc::Rc};
-use wasmer_runtime as core;
-use wasmer_runtime::{imports, instantiate, DynFunc, Export, Value as WasmValue};
+use once_cell::sync::OnceCell;
+use std::{collections::HashMap, convert::TryFrom, panic, slice, sync::Arc, time::Duration};
+use wasmer::{
+    Engine, ExternType, Function, Instance as WasmInstance,
+    Module as WasmModule, Store, Value as WasmValue,
+};
+use wasmer_middlewares::metering::{get_remaining_points, set_remaining_points, MeteringPoints};
 
-pub struct Instance {
-    pub java_instance_object: GlobalRef,
-    pub instance: Rc<core::Instance>,
-    pub memories: HashMap<String, Memory>,
+const FUEL_EXHAUSTED_CLASS: &str = "org/apache/shenyu/wasm/ShenyuWasmFuelExhaustedException";
+const TIMEOUT_CLASS: &str = "org/apache/shenyu/wasm/ShenyuWasmTimeoutException";
+const ILLEGAL_STATE_CLASS: &str = "java/lang/IllegalStateException";
+const CANCELLATION_CLASS: &str = "java/util/concurrent/CancellationException";
+
+/// An exported function of a module, which calls from Java refer to by
+/// index.
+pub struct ExportedFunction {
+    pub name: String,
+    pub arity: usize,
 }
 
-impl Instance {
-    fn new(java_instance_object: GlobalRef, module_bytes: Vec<u8>) -> Result<Self, Error> {
-        let module_bytes = module_bytes.as_slice();
-        let imports = imports! {};
-        let instance = match instantiate(module_bytes, &imports) {
-            Ok(instance) => Rc::new(instance),
-            Err(e) => {
-                return Err(runtime_error(format!(
-                    "Failed to instantiate the module: {}",
-                    e
-                )))
-            }
-        };
+/// What the instances of a module share, computed once per module so that
+/// instantiating does not depend on the number of exports.
+pub struct SharedModule {
+    /// Numbered in the order of the module, as by the Java `ExportTable`.
+    pub functions: Vec<ExportedFunction>,
+    /// Whether the module was compiled with metering, and thus supports
+    /// execution limits.
+    pub metered: bool,
+    /// Whether the module was compiled with snapshots, and thus can be
+    /// snapshotted and reset.
+    pub snapshots: bool,
+    /// The state of the module right after instantiation, which instances
+    /// not created from a snapshot are reset to. Captured on the first
+    /// reset of any of them.
+    pub pristine: OnceCell<State>,
+}
 
-        let memories: HashMap<String, Memory> = instance
+impl SharedModule {
+    pub fn new(module: &WasmModule) -> Arc<Self> {
+        let functions = module
             .exports()
-            .filter_map(|(export_name, export)| match export {
-                Export::Memory(memory) => Some((
-                    export_name.to_string(),
-                    Memory::new(Rc::new(memory.clone())),
-                )),
+            .filter(|export| !engine::is_internal(export.name()))
+            .filter_map(|export| match export.ty() {
+                ExternType::Function(ty) => Some(ExportedFunction {
+                    name: export.name().to_string(),
+                    arity: ty.params().len(),
+                }),
                 _ => None,
             })
             .collect();
 
+        Arc::new(Self {
+            functions,
+            metered: engine::is_metered(module),
+            snapshots: snapshot::is_instrumented(module),
+            pristine: OnceCell::new(),
+        })
+    }
+}
+
+pub struct Instance {
+    /// The engine and module the instance comes from, kept for snapshots.
+    pub engine: Engine,
+    pub module: WasmModule,
+    pub store: Store,
+    pub instance: WasmInstance,
+    /// Shared with the other instances of the module.
+    pub shared: Arc<SharedModule>,
+    /// The exported functions called so far, by index.
+    functions: Vec<Option<Function>>,
+    /// The exported memories Java asked for so far. Boxed, since Java
+    /// `Memory` objects point straight at them; never removed.
+    memories: HashMap<String, Box<Memory>>,
+    limits: Limits,
+    /// Only available for metered modules, which execution limits rely on.
+    interrupt: Option<Arc<Interrupt>>,
+    /// The limit the running call ran into, reported once it returns.
+    exceeded: Option<Exceeded>,
+    /// Set once a call was stopped by a limit, leaving the guest in an
+    /// undefined state.
+    poisoned: bool,
+    /// Set during a call, to reject re-entrant calls from host functions.
+    busy: bool,
+    /// The state `reset` brings the instance back to, once known.
+    pub origin: Option<Arc<Snapshot>>,
+    /// The base address of every memory a snapshot image is mapped over,
+    /// by reserved export name.
+    pub mapped_memories: HashMap<String, usize>,
+}
+
+impl Instance {
+    fn new(env: &JNIEnv, module_bytes: &[u8], java_imports: JObject) -> Result<Self, Error> {
+        let module = engine::compile(&EngineConfig::default(), module_bytes)?;
+
+        module.instantiate(env, java_imports)
+    }
+
+    /// Instantiate a module in a new store of the engine that compiled it,
+    /// which holds its code and signatures. Exported functions and memories
+    /// are only resolved once used.
+    pub fn instantiate(
+        env: &JNIEnv,
+        engine: &Engine,
+        module: &WasmModule,
+        shared: &Arc<SharedModule>,
+        java_imports: JObject,
+    ) -> Result<Self, Error> {
+        let mut store = Store::new(engine.clone());
+        let imports = imports::import_object(env, &mut store, java_imports)?;
+        let instance = WasmInstance::new(&mut store, module, &imports);
+        // The start function may have called a host function that threw,
+        // which must not be left for the next call on this thread to find.
+        imports::rethrow_host_exception(env)?;
+        let instance = instance
+            .map_err(|e| runtime_error(format!("Failed to instantiate the module: {}", e)))?;
+
+        let interrupt = match shared.metered {
+            true => Some(Interrupt::new(&store, &instance)?),
+            false => None,
+        };
+
         Ok(Self {
-            java_instance_object,
+            engine: engine.clone(),
+            module: module.clone(),
+            store,
             instance,
-            memories,
+            shared: shared.clone(),
+            functions: Vec::new(),
+            memories: HashMap::new(),
+            limits: Limits::default(),
+            interrupt,
+            exceeded: None,
+            poisoned: false,
+            busy: false,
+            origin: None,
+            mapped_memories: HashMap::new(),
         })
     }
 
-    fn call_exported_function(
-        &self,
-        export_name: String,
-        arguments: Vec<WasmValue>,
-    ) -> Result<Box<[WasmValue]>, Error> {
-        let function: DynFunc = self.instance.exports.get(&export_name).map_err(|_| {
-            runtime_error(format!(
-                "Exported function `{}` does not exist",
-                export_name
-            ))
+    pub fn exported_function(&self, function_index: jint) -> Result<usize, Error> {
+        if function_index < 0 || function_index as usize >= self.shared.functions.len() {
+            return Err(runtime_error(format!(
+                "Exported function #{} does not exist",
+                function_index
+            )));
+        }
+
+        Ok(function_index as usize)
+    }
+
+    /// Call an exported function once, within the limits of the instance.
+    fn call(&mut self, function: usize, arguments: &[WasmValue]) -> Result<Box<[WasmValue]>, Error> {
+        let callee = self.function(function)?;
+
+        // Only metered modules can be stopped. The fuel is set before the
+        // call is marked as started, so that a stop cannot be overwritten.
+        let interrupt = self.interrupt.clone();
+        if let Some(interrupt) = &interrupt {
+            set_remaining_points(&mut self.store, &self.instance, self.limits.fuel_per_call());
+            interrupt.begin(self.limits.timeout);
+        }
+
+        let result = callee.call(&mut self.store, arguments);
+        let stopped = interrupt.and_then(|interrupt| interrupt.end());
+
+        result.map_err(|trap| {
+            let exceeded = if stopped.is_some() {
+                stopped
+            } else if self.limits.fuel != 0 {
+                match get_remaining_points(&mut self.store, &self.instance) {
+                    MeteringPoints::Exhausted => Some(Exceeded::Fuel),
+                    MeteringPoints::Remaining(_) => None,
+                }
+            } else {
+                None
+            };
+
+            match exceeded {
+                Some(exceeded) => {
+                    self.exceeded = Some(exceeded);
+                    self.poisoned = true;
+                    runtime_error(format!("Stopped: {:?}", exceeded))
+                }
+                None => runtime_error(format!("{}", trap)),
+            }
+        })
+    }
+
+    /// The handle of an exported function, resolved on its first call.
+    fn function(&mut self, function: usize) -> Result<Function, Error> {
+        if self.functions.len() <= function {
+            self.functions.resize(self.shared.functions.len(), None);
+        }
+
+        if let Some(callee) = &self.functions[function] {
+            return Ok(callee.clone());
+        }
+
+        let name = &self.shared.functions[function].name;
+        let callee = self
+            .instance
+            .exports
+            .get_function(name)
+            .map_err(|e| runtime_error(format!("Exported function `{}`: {}", name, e)))?
+            .clone();
+        self.functions[function] = Some(callee.clone());
+
+        Ok(callee)
+    }
+
+    /// The exported memory `name`, wrapped on first use.
+    fn memory(&mut self, name: &str) -> Result<&Memory, Error> {
+        if !self.memories.contains_key(name) {
+            let memory = match engine::is_internal(name) {
+                false => self.instance.exports.get_memory(name).ok(),
+                true => None,
+            }
+            .ok_or_else(|| runtime_error(format!("Exported memory `{}` does not exist", name)))?;
+            self.memories.insert(name.to_string(), Box::new(Memory::new(memory.clone())));
+        }
+
+        Ok(&self.memories[name])
+    }
+
+    /// The `length` bytes at `pointer` in the memory exported as `memory`,
+    /// checked against its current size. Guest addresses are unsigned. The
+    /// instance is borrowed mutably for as long as the bytes are, since the
+    /// guest must not run meanwhile.
+    fn guest_bytes(&mut self, pointer: jint, length: jint) -> Result<&mut [jbyte], Error> {
+        let memory = self.instance.exports.get_memory("memory").map_err(|_| {
+            runtime_error("The instance does not export its memory as `memory`".to_string())
         })?;
+        let view = memory.view(&self.store);
+        let start = pointer as u32 as u64;
+        let end = start + length.max(0) as u64;
+
+        if end > view.data_size() {
+            return Err(runtime_error(format!(
+                "The region [{}, {}) is out of the bounds of the guest memory ({} bytes)",
+                start,
+                end,
+                view.data_size()
+            )));
+        }
+
+        Ok(unsafe {
+            slice::from_raw_parts_mut(
+                view.data_ptr().add(start as usize) as *mut jbyte,
+                (end - start) as usize,
+            )
+        })
+    }
+
+    /// Whether the guest grew a memory Java holds a view of during the last
+    /// call.
+    fn take_grown(&self) -> bool {
+        let mut grown = false;
+        for memory in self.memories.values() {
+            grown |= memory.take_stale_view(&self.store);
+        }
+
+        grown
+    }
+
+    /// The limit the last call ran into, if any, and the message to report.
+    fn take_exceeded(&mut self) -> Option<(Exceeded, String)> {
+        let exceeded = self.exceeded.take()?;
+        let message = match exceeded {
+            Exceeded::Fuel => format!("The call ran out of fuel ({} units)", self.limits.fuel),
+            Exceeded::Deadline => format!(
+                "The call exceeded its deadline ({} ms)",
+                self.limits.timeout.unwrap_or_default().as_millis()
+            ),
+            Exceeded::Cancelled => "The call was cancelled".to_string(),
+        };
+
+        Some((exceeded, message))
+    }
+
+    /// Tell Java to drop its cached memory views when the guest grew a
+    /// memory during the last call. Growth is rare, so the upcall is too.
+    fn sync_memory_views(&self, env: &JNIEnv, java_instance: JObject) -> Result<(), Error> {
+        if self.take_grown() {
+            env.call_method_unchecked(
+                java_instance,
+                jvm().instance_on_memory_grown.id(),
+                JavaType::Primitive(Primitive::Void),
+                &[],
+            )?;
+        }
+
+        Ok(())
+    }
+
+    /// Run a call made by `java_instance`: host functions see it as their
+    /// caller, memories grown by the guest are reported even if the call
+    /// trapped, and an exception thrown by a host function is rethrown. A
+    /// call stopped by a limit throws the matching exception, and poisons the
+    /// instance.
+    fn invoke<T>(
+        &mut self,
+        env: &JNIEnv,
+        java_instance: JObject,
+        call: impl FnOnce(&mut Self) -> Result<T, Error>,
+    ) -> Result<T, Error> {
+        if let Some(reason) = self.unavailable() {
+            return Err(throw(env, ILLEGAL_STATE_CLASS, reason.to_string()));
+        }
+
+        self.busy = true;
+        let guard = CallerGuard::enter(java_instance);
+        let result = call(self);
+        drop(guard);
+        self.busy = false;
+
+        if let Err(e) = self.sync_memory_views(env, java_instance) {
+            imports::discard_host_exception();
+            return Err(e);
+        }
+        imports::rethrow_host_exception(env)?;
+
+        match self.take_exceeded() {
+            Some((Exceeded::Fuel, message)) => Err(throw(env, FUEL_EXHAUSTED_CLASS, message)),
+            Some((Exceeded::Deadline, message)) => Err(throw(env, TIMEOUT_CLASS, message)),
+            Some((Exceeded::Cancelled, message)) => Err(throw(env, CANCELLATION_CLASS, message)),
+            None => result,
+        }
+    }
+
+    /// Run a call made through a `java.lang.foreign` downcall, which has no
+    /// JNI environment: a failure is a `foreign` status and a message
+    /// rather than an exception, and a grown memory is reported along with
+    /// the outcome instead of by an upcall. Only instances without host
+    /// functions are called this way.
+    pub fn invoke_detached<T>(
+        &mut self,
+        call: impl FnOnce(&mut Self) -> Result<T, Error>,
+    ) -> (Result<T, (jint, String)>, bool) {
+        if let Some(reason) = self.unavailable() {
+            return (Err((foreign::UNAVAILABLE, reason.to_string())), false);
+        }
+
+        self.busy = true;
+        let result = call(self);
+        self.busy = false;
+
+        let grown = self.take_grown();
+        let result = match self.take_exceeded() {
+            Some((exceeded, message)) => Err((foreign::exceeded_status(exceeded), message)),
+            None => result.map_err(|error| (foreign::FAILED, error.to_string())),
+        };
 
-        function
-            .call(arguments.as_slice())
-            .map_err(|e| runtime_error(format!("{}", e)))
+        (result, grown)
+    }
+
+    pub fn is_busy(&self) -> bool {
+        self.busy
+    }
+
+    /// Forget that a call exceeded its limits, once the state of the
+    /// instance was restored.
+    pub fn recover(&mut self) {
+        self.poisoned = false;
+        self.exceeded = None;
+    }
+
+    /// Why the instance cannot be used right now, if it cannot.
+    pub fn unavailable(&self) -> Option<&'static str> {
+        if self.poisoned {
+            Some("The instance is poisoned: a previous call exceeded its execution limits")
+        } else if self.busy {
+            Some("Re-entrant calls into the same instance are not supported")
+        } else {
+            None
+        }
+    }
+
+    /// Call an exported function that is expected to return exactly one value.
+    pub fn call_single(&mut self, function: usize, arguments: &[WasmValue]) -> Result<WasmValue, Error> {
+        let results = self.call(function, arguments)?;
+
+        match results.len() {
+            1 => Ok(results[0].clone()),
+            length => Err(runtime_error(format!(
+                "Exported function `{}` returns {} values, expected exactly one",
+                self.shared.functions[function].name, length
+            ))),
+        }
+    }
+
+    /// Call an exported function `count` times within the current native
+    /// call. Arguments are packed call after call, `arity` values each, and
+    /// every call must return exactly one value of the same type.
+    fn call_batch<T: Copy>(
+        &mut self,
+        function: usize,
+        arguments: &[T],
+        count: usize,
+        into_value: impl Fn(T) -> WasmValue,
+        from_value: impl Fn(&WasmValue) -> Option<T>,
+        type_name: &str,
+    ) -> Result<Vec<T>, Error> {
+        let arity = self.shared.functions[function].arity;
+
+        // Longer arrays are accepted, so that Java can reuse them across
+        // batches.
+        if arguments.len() < arity * count {
+            return Err(runtime_error(format!(
+                "Exported function `{}` takes {} arguments, so {} calls need at least {} packed arguments, got {}",
+                self.shared.functions[function].name,
+                arity,
+                count,
+                arity * count,
+                arguments.len()
+            )));
+        }
+
+        let mut call_arguments = Vec::with_capacity(arity);
+        let mut results = Vec::with_capacity(count);
+
+        for call in 0..count {
+            call_arguments.clear();
+            call_arguments.extend(
+                arguments[call * arity..(call + 1) * arity]
+                    .iter()
+                    .map(|argument| into_value(*argument)),
+            );
+
+            let value = self.call_single(function, &call_arguments)?;
+            results.push(
+                from_value(&value)
+                    .ok_or_else(|| unexpected_result_type(&self.shared.functions[function].name, type_name))?,
+            );
+        }
+
+        Ok(results)
     }
 }
 
+pub fn unexpected_result_type(export_name: &str, expected: &str) -> Error {
+    runtime_error(format!(
+        "Exported function `{}` does not return a `{}` value",
+        export_name, expected
+    ))
+}
+
 #[no_mangle]
 pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeInstantiate(
     env: JNIEnv,
     _class: JClass,
-    this: JObject,
     module_bytes: jbyteArray,
+    java_imports: JObject,
 ) -> jptr {
     let output = panic::catch_unwind(|| {
         let module_bytes = env.convert_byte_array(module_bytes)?;
-        let java_instance = env.new_global_ref(this)?;
 
-        let instance = Instance::new(java_instance, module_bytes)?;
+        let instance = Instance::new(&env, module_bytes.as_slice(), java_imports)?;
+
+        Ok(Pointer::new(instance).into())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeInstantiateBuffer(
+    env: JNIEnv,
+    _class: JClass,
+    module_buffer: JByteBuffer,
+    offset: jint,
+    length: jint,
+    java_imports: JObject,
+) -> jptr {
+    let output = panic::catch_unwind(|| {
+        let module_bytes = direct_buffer_slice(&env, module_buffer, offset, length)?;
+
+        let instance = Instance::new(&env, module_bytes, java_imports)?;
 
         Ok(Pointer::new(instance).into())
     });
@@ -125,14 +539,14 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeDrop(
 #[no_mangle]
 pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallExportedFunction<'a>(
     env: JNIEnv<'a>,
-    _class: JClass,
+    this: JObject,
     instance_pointer: jptr,
-    export_name: JString,
+    function_index: jint,
     arguments_pointer: jobjectArray,
 ) -> jobjectArray {
     let output = panic::catch_unwind(|| {
-        let instance: &Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
-        let export_name: String = env.get_string(export_name)?.into();
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let function = instance.exported_function(function_index)?;
 
         let arguments_length = env.get_array_length(arguments_pointer)?;
 
@@ -140,49 +554,38 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallExportedFu
             .map(|i| env.get_object_array_element(arguments_pointer, i))
             .collect::<Result<Vec<JObject>, Error>>()?;
 
-        let results = instance.call_exported_function(
-            export_name.clone(),
-            arguments
-                .iter()
-                .enumerate()
-                .map(|(nth, argument)| {
-                    Ok(
-                        Value::try_from((&env, *argument))
-                            .map_err(|_| {
-                                runtime_error(format!(
-                                    "Failed to convert the argument {}nth of `{}` into a WebAssembly value.",
-                                    nth,
-                                    export_name,
-                                ))
-                            })?
-                            .inner())
-                })
-                .collect::<Result<Vec<WasmValue>, Error>>()?,
-        )?;
+        let arguments = arguments
+            .iter()
+            .enumerate()
+            .map(|(nth, argument)| {
+                Ok(
+                    Value::try_from((&env, *argument))
+                        .map_err(|_| {
+                            runtime_error(format!(
+                                "Failed to convert the argument {}nth of `{}` into a WebAssembly value.",
+                                nth,
+                                instance.shared.functions[function].name,
+                            ))
+                        })?
+                        .inner())
+            })
+            .collect::<Result<Vec<WasmValue>, Error>>()?;
+
+        let results =
+            instance.invoke(&env, this, |instance| instance.call(function, &arguments))?;
 
         let obj_array = env.new_object_array(
             i32::try_from(results.len()).map_err(|e| runtime_error(e.to_string()))?,
-            "java/lang/Object",
+            jvm().object.as_class(),
             JObject::null(),
         )?;
 
         if results.len() > 0 {
             for (nth, result) in results.iter().enumerate() {
-                let obj = match result {
-                    WasmValue::I32(val) => env.new_object(INT_CLASS, "(I)V", &[JValue::from(*val)]),
-                    WasmValue::I64(val) => {
-                        env.new_object(LONG_CLASS, "(J)V", &[JValue::from(*val)])
-                    }
-                    WasmValue::F32(val) => {
-                        env.new_object(FLOAT_CLASS, "(F)V", &[JValue::from(*val)])
-                    }
-                    WasmValue::F64(val) => {
-                        env.new_object(DOUBLE_CLASS, "(D)V", &[JValue::from(*val)])
-                    }
-                    _ => unreachable!(),
-                }?;
+                let obj = value::to_java(&env, result)?;
 
                 env.set_object_array_element(obj_array, nth as i32, obj)?;
+                env.delete_local_ref(obj)?;
             }
 
             Ok(obj_array)
@@ -194,35 +597,171 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallExportedFu
     joption_or_throw(&env, output).unwrap_or(JObject::null().into_inner())
 }
 
+/// The memories are wrapped by Java once asked for, and point straight at
+/// the boxed entries of `Instance::memories`, which the instance owns.
 #[no_mangle]
-pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeInitializeExportedFunctions(
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeExportedMemory(
     env: JNIEnv,
-    _class: JClass,
+    _instance: JObject,
     instance_pointer: jptr,
-) {
+    name: JString,
+) -> jptr {
     let output = panic::catch_unwind(|| {
-        let instance: &Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let name: String = env.get_string(name)?.into();
+        let memory = instance.memory(&name)?;
 
-        let exports_object: JObject = env
-            .get_field(
-                instance.java_instance_object.as_obj(),
-                "exports",
-                "Lorg/apache/shenyu/wasm/Exports;",
-            )?
-            .l()?;
-
-        for (export_name, export) in instance.instance.exports() {
-            if let Export::Function { .. } = export {
-                let name = env.new_string(export_name)?;
-
-                env.call_method(
-                    exports_object,
-                    "addFunction",
-                    "(Ljava/lang/String;)V",
-                    &[JObject::from(name).into()],
-                )?;
-            }
+        Ok(memory as *const Memory as jptr)
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallI32(
+    env: JNIEnv,
+    this: JObject,
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments_pointer: jintArray,
+) -> jint {
+    let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let function = instance.exported_function(function_index)?;
+
+        let mut arguments = vec![0 as jint; env.get_array_length(arguments_pointer)? as usize];
+        env.get_int_array_region(arguments_pointer, 0, &mut arguments)?;
+
+        let arguments: Vec<WasmValue> = arguments.into_iter().map(WasmValue::I32).collect();
+        let result =
+            instance.invoke(&env, this, |instance| instance.call_single(function, &arguments))?;
+
+        match result {
+            WasmValue::I32(result) => Ok(result),
+            _ => Err(unexpected_result_type(&instance.shared.functions[function].name, "i32")),
+        }
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallI64(
+    env: JNIEnv,
+    this: JObject,
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments_pointer: jlongArray,
+) -> jlong {
+    let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let function = instance.exported_function(function_index)?;
+
+        let mut arguments = vec![0 as jlong; env.get_array_length(arguments_pointer)? as usize];
+        env.get_long_array_region(arguments_pointer, 0, &mut arguments)?;
+
+        let arguments: Vec<WasmValue> = arguments.into_iter().map(WasmValue::I64).collect();
+        let result =
+            instance.invoke(&env, this, |instance| instance.call_single(function, &arguments))?;
+
+        match result {
+            WasmValue::I64(result) => Ok(result),
+            _ => Err(unexpected_result_type(&instance.shared.functions[function].name, "i64")),
+        }
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallF32(
+    env: JNIEnv,
+    this: JObject,
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments_pointer: jfloatArray,
+) -> jfloat {
+    let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let function = instance.exported_function(function_index)?;
+
+        let mut arguments = vec![0 as jfloat; env.get_array_length(arguments_pointer)? as usize];
+        env.get_float_array_region(arguments_pointer, 0, &mut arguments)?;
+
+        let arguments: Vec<WasmValue> = arguments.into_iter().map(WasmValue::F32).collect();
+        let result =
+            instance.invoke(&env, this, |instance| instance.call_single(function, &arguments))?;
+
+        match result {
+            WasmValue::F32(result) => Ok(result),
+            _ => Err(unexpected_result_type(&instance.shared.functions[function].name, "f32")),
         }
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0.0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallF64(
+    env: JNIEnv,
+    this: JObject,
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments_pointer: jdoubleArray,
+) -> jdouble {
+    let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let function = instance.exported_function(function_index)?;
+
+        let mut arguments = vec![0 as jdouble; env.get_array_length(arguments_pointer)? as usize];
+        env.get_double_array_region(arguments_pointer, 0, &mut arguments)?;
+
+        let arguments: Vec<WasmValue> = arguments.into_iter().map(WasmValue::F64).collect();
+        let result =
+            instance.invoke(&env, this, |instance| instance.call_single(function, &arguments))?;
+
+        match result {
+            WasmValue::F64(result) => Ok(result),
+            _ => Err(unexpected_result_type(&instance.shared.functions[function].name, "f64")),
+        }
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0.0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallBatchI32(
+    env: JNIEnv,
+    this: JObject,
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments_pointer: jintArray,
+    count: jint,
+    results_pointer: jintArray,
+) {
+    let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let function = instance.exported_function(function_index)?;
+
+        let mut arguments = vec![0 as jint; env.get_array_length(arguments_pointer)? as usize];
+        env.get_int_array_region(arguments_pointer, 0, &mut arguments)?;
+
+        let results = instance.invoke(&env, this, |instance| {
+            instance.call_batch(
+                function,
+                &arguments,
+                count as usize,
+                WasmValue::I32,
+                |value| match value {
+                    WasmValue::I32(value) => Some(*value),
+                    _ => None,
+                },
+                "i32",
+            )
+        })?;
+
+        env.set_int_array_region(results_pointer, 0, &results)?;
+
         Ok(())
     });
 
@@ -230,18 +769,271 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeInitializeExpo
 }
 
 #[no_mangle]
-pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeInitializeExportedMemories(
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallBatchI64(
     env: JNIEnv,
-    _class: JClass,
+    this: JObject,
     instance_pointer: jptr,
+    function_index: jint,
+    arguments_pointer: jlongArray,
+    count: jint,
+    results_pointer: jlongArray,
 ) {
     let output = panic::catch_unwind(|| {
-        let instance: &Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let function = instance.exported_function(function_index)?;
+
+        let mut arguments = vec![0 as jlong; env.get_array_length(arguments_pointer)? as usize];
+        env.get_long_array_region(arguments_pointer, 0, &mut arguments)?;
+
+        let results = instance.invoke(&env, this, |instance| {
+            instance.call_batch(
+                function,
+                &arguments,
+                count as usize,
+                WasmValue::I64,
+                |value| match value {
+                    WasmValue::I64(value) => Some(*value),
+                    _ => None,
+                },
+                "i64",
+            )
+        })?;
+
+        env.set_long_array_region(results_pointer, 0, &results)?;
+
+        Ok(())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(())
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallBatchF32(
+    env: JNIEnv,
+    this: JObject,
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments_pointer: jfloatArray,
+    count: jint,
+    results_pointer: jfloatArray,
+) {
+    let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let function = instance.exported_function(function_index)?;
+
+        let mut arguments = vec![0 as jfloat; env.get_array_length(arguments_pointer)? as usize];
+        env.get_float_array_region(arguments_pointer, 0, &mut arguments)?;
+
+        let results = instance.invoke(&env, this, |instance| {
+            instance.call_batch(
+                function,
+                &arguments,
+                count as usize,
+                WasmValue::F32,
+                |value| match value {
+                    WasmValue::F32(value) => Some(*value),
+                    _ => None,
+                },
+                "f32",
+            )
+        })?;
 
-        memory::java::initialize_memories(&env, instance)?;
+        env.set_float_array_region(results_pointer, 0, &results)?;
 
         Ok(())
     });
 
     joption_or_throw(&env, output).unwrap_or(())
 }
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallBatchF64(
+    env: JNIEnv,
+    this: JObject,
+    instance_pointer: jptr,
+    function_index: jint,
+    arguments_pointer: jdoubleArray,
+    count: jint,
+    results_pointer: jdoubleArray,
+) {
+    let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let function = instance.exported_function(function_index)?;
+
+        let mut arguments = vec![0 as jdouble; env.get_array_length(arguments_pointer)? as usize];
+        env.get_double_array_region(arguments_pointer, 0, &mut arguments)?;
+
+        let results = instance.invoke(&env, this, |instance| {
+            instance.call_batch(
+                function,
+                &arguments,
+                count as usize,
+                WasmValue::F64,
+                |value| match value {
+                    WasmValue::F64(value) => Some(*value),
+                    _ => None,
+                },
+                "f64",
+            )
+        })?;
+
+        env.set_double_array_region(results_pointer, 0, &results)?;
+
+        Ok(())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(())
+}
+
+/// Copy `input_array` into the memory exported as `memory` at
+/// `input_pointer`, call `(input_pointer, input_length, output_pointer,
+/// output_capacity)`, then copy the bytes the call reports it wrote at
+/// `output_pointer` into `output_array`. Both copies go straight between
+/// the Java arrays and the guest memory, without an intermediate buffer.
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCallWithBytes(
+    env: JNIEnv,
+    this: JObject,
+    instance_pointer: jptr,
+    function_index: jint,
+    input_pointer: jint,
+    input_array: jbyteArray,
+    output_pointer: jint,
+    output_array: jbyteArray,
+) -> jint {
+    let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+        let function = instance.exported_function(function_index)?;
+
+        // Checked before the input is written into a memory that cannot be
+        // trusted, or that the running call is using.
+        if let Some(reason) = instance.unavailable() {
+            return Err(throw(&env, ILLEGAL_STATE_CLASS, reason.to_string()));
+        }
+
+        let input_length = env.get_array_length(input_array)?;
+        let output_capacity = match output_array.is_null() {
+            true => 0,
+            false => env.get_array_length(output_array)?,
+        };
+
+        let input_region = instance.guest_bytes(input_pointer, input_length)?;
+        env.get_byte_array_region(input_array, 0, input_region)?;
+
+        let arguments = [
+            WasmValue::I32(input_pointer),
+            WasmValue::I32(input_length),
+            WasmValue::I32(output_pointer),
+            WasmValue::I32(output_capacity),
+        ];
+        let written = match instance
+            .invoke(&env, this, |instance| instance.call_single(function, &arguments))?
+        {
+            WasmValue::I32(written) => written,
+            _ => return Err(unexpected_result_type(&instance.shared.functions[function].name, "i32")),
+        };
+
+        // The guest may have grown its memory, so the region is looked up
+        // again.
+        let length = written.max(0).min(output_capacity);
+        if length > 0 {
+            let output_region = instance.guest_bytes(output_pointer, length)?;
+            env.set_byte_array_region(output_array, 0, output_region)?;
+        }
+
+        Ok(written)
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeSetLimits(
+    env: JNIEnv,
+    _instance: JObject,
+    instance_pointer: jptr,
+    fuel: jlong,
+    timeout_nanos: jlong,
+) {
+    let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+
+        if instance.interrupt.is_none() && (fuel > 0 || timeout_nanos > 0) {
+            return Err(throw(
+                &env,
+                ILLEGAL_STATE_CLASS,
+                "Execution limits need a module compiled with metering".to_string(),
+            ));
+        }
+
+        instance.limits = Limits {
+            fuel: fuel.max(0) as u64,
+            timeout: match timeout_nanos {
+                timeout_nanos if timeout_nanos > 0 => Some(Duration::from_nanos(timeout_nanos as u64)),
+                _ => None,
+            },
+        };
+
+        Ok(())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(())
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeIsPoisoned(
+    env: JNIEnv,
+    _instance: JObject,
+    instance_pointer: jptr,
+) -> jboolean {
+    let output = panic::catch_unwind(|| {
+        let instance: &Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+
+        Ok(instance.poisoned as jboolean)
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeInterruptHandle(
+    env: JNIEnv,
+    _instance: JObject,
+    instance_pointer: jptr,
+) -> jptr {
+    let output = panic::catch_unwind(|| {
+        let instance: &Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+
+        Ok(match &instance.interrupt {
+            Some(interrupt) => Pointer::new(interrupt.clone()).into(),
+            None => 0,
+        })
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+/// Stop the running call of an instance from another thread. It goes
+/// through a handle of its own, as the instance itself is borrowed by the
+/// thread running the call. The Java instance is passed along, so that it
+/// stays reachable, and the handle alive, during the call.
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeCancel(
+    _env: JNIEnv,
+    _instance: JObject,
+    interrupt_pointer: jptr,
+) -> jboolean {
+    let interrupt: &Arc<Interrupt> =
+        Into::<Pointer<Arc<Interrupt>>>::into(interrupt_pointer).borrow();
+
+    interrupt.cancel() as jboolean
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeDropInterruptHandle(
+    _env: JNIEnv,
+    _class: JClass,
+    interrupt_pointer: jptr,
+) {
+    let _: Pointer<Arc<Interrupt>> = interrupt_pointer.into();
+}
@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present Wasmer, Inc. and its affiliates.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+//! Classes and members the native layer uses, resolved once when the
+//! library is loaded instead of by name, through `FindClass` and
+//! `GetMethodID`, on every call.
+
+use crate::exception::Error;
+use jni::{
+    objects::{GlobalRef, JClass, JMethodID},
+    sys::jmethodID,
+    JNIEnv,
+};
+use once_cell::sync::OnceCell;
+
+static JVM: OnceCell<Jvm> = OnceCell::new();
+
+/// A class kept loaded by a global reference, which also keeps the IDs of
+/// its members valid.
+pub struct Class(GlobalRef);
+
+impl Class {
+    pub fn as_class(&self) -> JClass {
+        JClass::from(self.0.as_obj())
+    }
+}
+
+#[derive(Clone, Copy)]
+pub struct MethodId(jmethodID);
+
+impl MethodId {
+    pub fn id<'a>(self) -> JMethodID<'a> {
+        JMethodID::from(self.0)
+    }
+}
+
+unsafe impl Send for MethodId {}
+unsafe impl Sync for MethodId {}
+
+/// A boxed primitive class, e.g. `java.lang.Integer`, with its constructor
+/// and its unboxing method, e.g. `intValue`.
+pub struct Boxed {
+    pub class: Class,
+    pub new: MethodId,
+    pub value: MethodId,
+}
+
+pub struct Jvm {
+    pub object: Class,
+    pub runtime_exception: Class,
+    pub integer: Boxed,
+    pub long: Boxed,
+    pub float: Boxed,
+    pub double: Boxed,
+    pub memory: Class,
+    pub memory_set_buffer: MethodId,
+    pub instance_on_memory_grown: MethodId,
+    pub export_table_add_function: MethodId,
+    pub export_table_add_memory: MethodId,
+    pub export_table_add_table: MethodId,
+    pub export_table_add_global: MethodId,
+    pub import_object_namespaces: MethodId,
+    pub import_object_names: MethodId,
+    pub import_object_signatures: MethodId,
+    pub import_object_functions: MethodId,
+    pub host_function_call: MethodId,
+}
+
+impl Jvm {
+    fn resolve(env: &JNIEnv) -> Result<Self, Error> {
+        let class = |name: &str| -> Result<Class, Error> {
+            Ok(Class(env.new_global_ref(env.find_class(name)?.into())?))
+        };
+        let method = |class: &Class, name: &str, signature: &str| -> Result<MethodId, Error> {
+            Ok(MethodId(env.get_method_id(class.as_class(), name, signature)?.into_inner()))
+        };
+        let boxed = |name: &str, primitive: &str, value: &str| -> Result<Boxed, Error> {
+            let class = class(name)?;
+
+            Ok(Boxed {
+                new: method(&class, "<init>", &format!("({})V", primitive))?,
+                value: method(&class, value, &format!("(){}", primitive))?,
+                class,
+            })
+        };
+
+        let memory = class("org/apache/shenyu/wasm/Memory")?;
+        let instance = class("org/apache/shenyu/wasm/Instance")?;
+        let export_table = class("org/apache/shenyu/wasm/ExportTable")?;
+        let import_object = class("org/apache/shenyu/wasm/ImportObject")?;
+        let host_function = class("org/apache/shenyu/wasm/imports/HostFunction")?;
+
+        Ok(Self {
+            object: class("java/lang/Object")?,
+            runtime_exception: class("java/lang/RuntimeException")?,
+            integer: boxed("java/lang/Integer", "I", "intValue")?,
+            long: boxed("java/lang/Long", "J", "longValue")?,
+            float: boxed("java/lang/Float", "F", "floatValue")?,
+            double: boxed("java/lang/Double", "D", "doubleValue")?,
+            memory_set_buffer: method(&memory, "setBuffer", "(Ljava/nio/ByteBuffer;)V")?,
+            memory,
+            instance_on_memory_grown: method(&instance, "onMemoryGrown", "()V")?,
+            export_table_add_function: method(
+                &export_table,
+                "addFunction",
+                "(Ljava/lang/String;I[I[I)V",
+            )?,
+            export_table_add_memory: method(&export_table, "addMemory", "(Ljava/lang/String;JJZ)V")?,
+            export_table_add_table: method(&export_table, "addTable", "(Ljava/lang/String;IJJ)V")?,
+            export_table_add_global: method(&export_table, "addGlobal", "(Ljava/lang/String;IZ)V")?,
+            import_object_namespaces: method(&import_object, "namespaces", "()[Ljava/lang/String;")?,
+            import_object_names: method(&import_object, "names", "()[Ljava/lang/String;")?,
+            import_object_signatures: method(&import_object, "signatures", "()[Ljava/lang/String;")?,
+            import_object_functions: method(
+                &import_object,
+                "functions",
+                "()[Lorg/apache/shenyu/wasm/imports/HostFunction;",
+            )?,
+            host_function_call: method(
+                &host_function,
+                "call",
+                "(Lorg/apache/shenyu/wasm/Instance;[J[J)V",
+            )?,
+        })
+    }
+}
+
+/// Resolve the classes and members, from `JNI_OnLoad`. On failure, the
+/// pending `NoClassDefFoundError` or `NoSuchMethodError` fails the load.
+pub fn load(env: &JNIEnv) -> Result<(), Error> {
+    let jvm = Jvm::resolve(env)?;
+    let _ = JVM.set(jvm);
+
+    Ok(())
+}
+
+/// The classes and members resolved when the library was loaded.
+pub fn jvm() -> &'static Jvm {
+    JVM.get().expect("The native library is loaded without `JNI_OnLoad`")
+}
@@ -22,9 +22,41 @@
  * SOFTWARE.
  */
 
+mod engine;
 mod exception;
+mod export_table;
+mod foreign;
+mod imports;
 mod instance;
+mod jvm;
+mod limits;
 mod memory;
 mod module;
+mod snapshot;
 mod types;
 mod value;
+
+use jni::{
+    sys::{self, jint, JNI_ERR, JNI_VERSION_1_8},
+    JavaVM,
+};
+use std::os::raw::c_void;
+
+/// Resolve the classes and members used by the native layer once, as the
+/// library is loaded.
+#[no_mangle]
+pub extern "system" fn JNI_OnLoad(vm: *mut sys::JavaVM, _reserved: *mut c_void) -> jint {
+    let vm = match unsafe { JavaVM::from_raw(vm) } {
+        Ok(vm) => vm,
+        Err(_) => return JNI_ERR,
+    };
+    let env = match vm.get_env() {
+        Ok(env) => env,
+        Err(_) => return JNI_ERR,
+    };
+
+    match jvm::load(&env) {
+        Ok(()) => JNI_VERSION_1_8,
+        Err(_) => JNI_ERR,
+    }
+}
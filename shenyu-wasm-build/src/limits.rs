@@ -0,0 +1,269 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present Wasmer, Inc. and its affiliates.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+//! Bounds on the execution of exported calls.
+//!
+//! Fuel is counted by the metering middleware of metered modules: every
+//! call starts with the configured budget, and the guest traps once it is
+//! spent. Deadlines and cancellation reuse the same mechanism: a watchdog
+//! thread zeroes the remaining fuel of a call that runs past its deadline, and
+//! cancelling a call from Java does the same, so the guest traps at the start
+//! of its next basic block.
+//!
+//! A call only stores its deadline in its own instance: the watchdog ticks
+//! while any call has a deadline, and checks every metered instance on each
+//! tick, so deadlines are enforced within a tick, and calls never contend on
+//! a global lock.
+
+use crate::{
+    engine::REMAINING_POINTS_GLOBAL,
+    exception::{runtime_error, Error},
+};
+use once_cell::sync::Lazy;
+use std::{
+    ptr,
+    sync::{
+        atomic::{AtomicU64, AtomicUsize, Ordering},
+        Arc, Mutex, Weak,
+    },
+    thread::{self, Thread},
+    time::{Duration, Instant},
+};
+use wasmer::{vm::VMExtern, AsStoreRef, Instance, Store};
+
+/// How often the watchdog checks the deadlines, while any is pending.
+const TICK: Duration = Duration::from_millis(1);
+
+/// The origin of the deadlines, which are stored as nanoseconds since then.
+static EPOCH: Lazy<Instant> = Lazy::new(Instant::now);
+
+/// The limits applied to every exported call of an instance.
+#[derive(Clone, Copy, Default)]
+pub struct Limits {
+    /// Fuel per call, `0` meaning unlimited.
+    pub fuel: u64,
+    /// Wall-clock time per call.
+    pub timeout: Option<Duration>,
+}
+
+impl Limits {
+    pub fn fuel_per_call(&self) -> u64 {
+        match self.fuel {
+            0 => u64::MAX,
+            fuel => fuel,
+        }
+    }
+}
+
+/// Why a call was stopped.
+#[derive(Clone, Copy, Debug, PartialEq)]
+pub enum Exceeded {
+    Fuel,
+    Deadline,
+    Cancelled,
+}
+
+struct State {
+    active: bool,
+    stopped: Option<Exceeded>,
+}
+
+/// Lets another thread stop the running call of one instance: the watchdog
+/// when the call runs past its deadline, or Java when the call is cancelled.
+pub struct Interrupt {
+    /// The remaining fuel of the instance, inside its store. Only written
+    /// while a call is active, i.e. while the store is alive.
+    remaining_points: *mut i64,
+    /// The deadline of the running call, in nanoseconds since `EPOCH`, or
+    /// `0` if it has none. Only written under `state`.
+    deadline: AtomicU64,
+    state: Mutex<State>,
+}
+
+unsafe impl Send for Interrupt {}
+unsafe impl Sync for Interrupt {}
+
+impl Interrupt {
+    /// Create the interrupt of an instance, watched by the watchdog for as
+    /// long as the instance lives.
+    pub fn new(store: &Store, instance: &Instance) -> Result<Arc<Self>, Error> {
+        let interrupt = Arc::new(Self {
+            remaining_points: remaining_points(store, instance)?,
+            deadline: AtomicU64::new(0),
+            state: Mutex::new(State {
+                active: false,
+                stopped: None,
+            }),
+        });
+        WATCHDOG.watch(&interrupt);
+
+        Ok(interrupt)
+    }
+
+    /// Mark the start of a call, and arm the watchdog if it has a deadline.
+    pub fn begin(&self, timeout: Option<Duration>) {
+        let mut state = self.state.lock().unwrap();
+        state.active = true;
+        state.stopped = None;
+
+        if let Some(timeout) = timeout {
+            self.deadline.store(since_epoch(Instant::now() + timeout).max(1), Ordering::Release);
+            WATCHDOG.arm();
+        }
+    }
+
+    /// Mark the end of the call, and tell why it was stopped, if it was.
+    pub fn end(&self) -> Option<Exceeded> {
+        let mut state = self.state.lock().unwrap();
+        state.active = false;
+
+        if self.deadline.swap(0, Ordering::AcqRel) != 0 {
+            WATCHDOG.disarm();
+        }
+
+        state.stopped
+    }
+
+    /// Stop the running call, if any, and tell whether there was one.
+    pub fn cancel(&self) -> bool {
+        let mut state = self.state.lock().unwrap();
+
+        self.stop(&mut state, Exceeded::Cancelled)
+    }
+
+    /// Stop the running call if it is past its deadline.
+    fn expire(&self, now: u64) {
+        let deadline = self.deadline.load(Ordering::Acquire);
+        if deadline == 0 || deadline > now {
+            return;
+        }
+
+        let mut state = self.state.lock().unwrap();
+
+        // The call may have ended meanwhile.
+        if self.deadline.load(Ordering::Acquire) == deadline {
+            self.stop(&mut state, Exceeded::Deadline);
+        }
+    }
+
+    fn stop(&self, state: &mut State, reason: Exceeded) -> bool {
+        if !state.active || state.stopped.is_some() {
+            return false;
+        }
+
+        state.stopped = Some(reason);
+        unsafe { ptr::write_volatile(self.remaining_points, 0) };
+
+        true
+    }
+}
+
+fn since_epoch(instant: Instant) -> u64 {
+    instant.saturating_duration_since(*EPOCH).as_nanos() as u64
+}
+
+/// Locate the remaining fuel global of an instance in its store.
+fn remaining_points(store: &Store, instance: &Instance) -> Result<*mut i64, Error> {
+    let global = instance
+        .exports
+        .get_extern(REMAINING_POINTS_GLOBAL)
+        .ok_or_else(|| runtime_error("The module is not metered".to_string()))?;
+
+    match global.to_vm_extern() {
+        VMExtern::Global(handle) => {
+            let definition = handle.get(store.as_store_ref().objects()).vmglobal();
+
+            Ok(unsafe { ptr::addr_of_mut!((*definition.as_ptr()).val.i64) })
+        }
+        _ => Err(runtime_error(format!(
+            "`{}` is not a global",
+            REMAINING_POINTS_GLOBAL
+        ))),
+    }
+}
+
+/// A single thread firing the deadlines of every instance. It only wakes up
+/// while at least one call has a deadline.
+struct Watchdog {
+    /// Every metered instance, dropped once the instance is.
+    interrupts: Mutex<Vec<Weak<Interrupt>>>,
+    /// The number of running calls with a deadline.
+    armed: AtomicUsize,
+    thread: Thread,
+}
+
+static WATCHDOG: Lazy<Watchdog> = Lazy::new(|| {
+    let thread = thread::Builder::new()
+        .name("shenyu-wasm-watchdog".to_string())
+        .spawn(|| WATCHDOG.run())
+        .expect("Cannot start the watchdog thread")
+        .thread()
+        .clone();
+
+    Watchdog {
+        interrupts: Mutex::new(Vec::new()),
+        armed: AtomicUsize::new(0),
+        thread,
+    }
+});
+
+impl Watchdog {
+    /// Watch the interrupt of a new instance. The interrupts of dropped
+    /// instances are forgotten whenever the list is about to grow.
+    fn watch(&self, interrupt: &Arc<Interrupt>) {
+        let mut interrupts = self.interrupts.lock().unwrap();
+        if interrupts.len() == interrupts.capacity() {
+            interrupts.retain(|interrupt| interrupt.strong_count() > 0);
+        }
+
+        interrupts.push(Arc::downgrade(interrupt));
+    }
+
+    fn arm(&self) {
+        if self.armed.fetch_add(1, Ordering::AcqRel) == 0 {
+            self.thread.unpark();
+        }
+    }
+
+    fn disarm(&self) {
+        self.armed.fetch_sub(1, Ordering::AcqRel);
+    }
+
+    fn run(&self) {
+        loop {
+            if self.armed.load(Ordering::Acquire) == 0 {
+                thread::park();
+                continue;
+            }
+
+            thread::sleep(TICK);
+            let now = since_epoch(Instant::now());
+            let interrupts = self.interrupts.lock().unwrap();
+
+            for interrupt in interrupts.iter().filter_map(Weak::upgrade) {
+                interrupt.expire(now);
+            }
+        }
+    }
+}
@@ -24,34 +24,53 @@
 
 use crate::{
     exception::{joption_or_throw, runtime_error, Error},
+    instance::Instance,
+    jvm::jvm,
     types::{jptr, Pointer},
 };
 use jni::{
     objects::{JClass, JObject},
+    signature::{JavaType, Primitive},
     sys::jint,
     JNIEnv,
 };
-use std::{cell::Cell, panic, rc::Rc, slice};
-use wasmer::Memory as WasmMemory;
-use wasmer_runtime::memory::MemoryView;
-use wasmer_runtime::units::Pages;
+use std::{cell::Cell, panic, slice};
+use wasmer::{Memory as WasmMemory, Pages, Store};
 
-#[derive(Clone)]
 pub struct Memory {
-    pub memory: Rc<WasmMemory>,
+    pub memory: WasmMemory,
+    /// Number of pages covered by the `ByteBuffer` view cached on the Java
+    /// side, or `None` when Java holds no view.
+    view_pages: Cell<Option<u32>>,
 }
 
 impl Memory {
-    pub fn new(memory: Rc<WasmMemory>) -> Self {
-        Self { memory }
+    pub fn new(memory: WasmMemory) -> Self {
+        Self {
+            memory,
+            view_pages: Cell::new(None),
+        }
     }
 
-    pub fn grow(&self, number_of_pages: u32) -> Result<u32, Error> {
+    pub fn grow(&self, store: &mut Store, number_of_pages: u32) -> Result<u32, Error> {
         self.memory
-            .grow(Pages(number_of_pages))
+            .grow(store, Pages(number_of_pages))
             .map(|previous_pages| previous_pages.0)
             .map_err(|e| runtime_error(format!("Failed to grow the memory: {}", e)))
     }
+
+    /// Whether the memory has grown since Java built its cached view, e.g.
+    /// because the guest executed `memory.grow`. The view is then forgotten,
+    /// and Java is expected to drop it too.
+    pub fn take_stale_view(&self, store: &Store) -> bool {
+        match self.view_pages.get() {
+            Some(pages) if pages != self.memory.view(store).size().0 => {
+                self.view_pages.set(None);
+                true
+            }
+            _ => false,
+        }
+    }
 }
 
 #[no_mangle]
@@ -59,14 +78,14 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Memory_nativeMemoryView(
     env: JNIEnv,
     _class: JClass,
     memory_object: JObject,
+    instance_pointer: jptr,
     memory_pointer: jptr,
 ) {
     let output = panic::catch_unwind(|| {
+        let instance: &Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
         let memory: &Memory = Into::<Pointer<Memory>>::into(memory_pointer).borrow();
-        let view: MemoryView<u8> = memory.memory.view();
-        let data = unsafe {
-            slice::from_raw_parts_mut(view[..].as_ptr() as *mut Cell<u8> as *mut u8, view.len())
-        };
+        let view = memory.memory.view(&instance.store);
+        let data = unsafe { slice::from_raw_parts_mut(view.data_ptr(), view.data_size() as usize) };
 
         // Create a new `JByteBuffer`, aka `java.nio.ByteBuffer`,
         // borrowing the data from the WebAssembly memory.
@@ -74,13 +93,15 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Memory_nativeMemoryView(
 
         // Try to rewrite the `org.apache.shenyu.wasm.Memory.buffer` attribute by
         // calling the `org.apache.shenyu.wasm.Memory.setBuffer` method.
-        env.call_method(
+        env.call_method_unchecked(
             memory_object,
-            "setBuffer",
-            "(Ljava/nio/ByteBuffer;)V",
+            jvm().memory_set_buffer.id(),
+            JavaType::Primitive(Primitive::Void),
             &[JObject::from(byte_buffer).into()],
         )?;
 
+        memory.view_pages.set(Some(view.size().0));
+
         Ok(())
     });
 
@@ -91,81 +112,21 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Memory_nativeMemoryView(
 pub extern "system" fn Java_org_apache_shenyu_wasm_Memory_nativeMemoryGrow(
     env: JNIEnv,
     _class: JClass,
-    memory_object: JObject,
+    _memory_object: JObject,
+    instance_pointer: jptr,
     memory_pointer: jptr,
     number_of_pages: jint,
 ) -> jint {
     let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
         let memory: &Memory = Into::<Pointer<Memory>>::into(memory_pointer).borrow();
-        let old_pages = memory.grow(number_of_pages as u32)?;
+        let old_pages = memory.grow(&mut instance.store, number_of_pages as u32)?;
 
-        let view: MemoryView<u8> = memory.memory.view();
-        let data = unsafe {
-            std::slice::from_raw_parts_mut(
-                view[..].as_ptr() as *mut Cell<u8> as *mut u8,
-                view.len(),
-            )
-        };
-        // Create a new `JByteBuffer`, aka `java.nio.ByteBuffer`,
-        // borrowing the data from the WebAssembly memory.
-        let byte_buffer = env.new_direct_byte_buffer(data)?;
-
-        // Try to rewrite the `org.apache.shenyu.wasm.Memory.buffer` attribute by
-        // calling the `org.apache.shenyu.wasm.Memory.setBuffer` method.
-        env.call_method(
-            memory_object,
-            "setBuffer",
-            "(Ljava/nio/ByteBuffer;)V",
-            &[JObject::from(byte_buffer).into()],
-        )?;
+        // Java drops its cached view itself and rebuilds it lazily.
+        memory.view_pages.set(None);
 
         Ok(old_pages as i32)
     });
 
     joption_or_throw(&env, output).unwrap_or(0)
 }
-
-pub mod java {
-    use crate::{
-        exception::Error,
-        instance::Instance,
-        types::{jptr, Pointer},
-    };
-    use jni::{objects::JObject, JNIEnv};
-
-    pub fn initialize_memories(env: &JNIEnv, instance: &Instance) -> Result<(), Error> {
-        let exports_object: JObject = env
-            .get_field(
-                instance.java_instance_object.as_obj(),
-                "exports",
-                "Lorg/apache/shenyu/wasm/Exports;",
-            )?
-            .l()?;
-
-        // Get the `org.apache.shenyu.wasm.Memory` class.
-        let memory_class = env.find_class("org/apache/shenyu/wasm/Memory")?;
-
-        for (memory_name, memory) in &instance.memories {
-            // Instantiate the `Memory` class.
-            let memory_object = env.new_object(memory_class, "()V", &[])?;
-
-            // Try to set the memory pointer to the field `org.apache.shenyu.wasm.Memory.memoryPointer`.
-            let memory_pointer: jptr = Pointer::new(memory.clone()).into();
-            env.set_field(memory_object, "memoryPointer", "J", memory_pointer.into())?;
-
-            // Add the newly created `org.apache.shenyu.wasm.Memory` in the
-            // `org.apache.shenyu.wasm.Exports` collection.
-            env.call_method(
-                exports_object,
-                "addMemory",
-                "(Ljava/lang/String;Lorg/apache/shenyu/wasm/Memory;)V",
-                &[
-                    JObject::from(env.new_string(memory_name)?).into(),
-                    memory_object.into(),
-                ],
-            )?;
-        }
-
-        Ok(())
-    }
-}
@@ -23,72 +23,71 @@
  */
 
 use crate::{
+    engine::{self, EngineConfig},
     exception::{joption_or_throw, runtime_error, Error},
-    instance::Instance,
-    memory::Memory,
-    types::{jptr, Pointer},
+    instance::{Instance, SharedModule},
+    types::{direct_buffer_slice, jptr, Pointer},
 };
 use jni::{
-    objects::{GlobalRef, JClass, JObject},
-    sys::{jboolean, jbyteArray},
+    objects::{JByteBuffer, JClass, JObject},
+    sys::{jboolean, jbyteArray, jint, jstring},
     JNIEnv,
 };
-use std::{collections::HashMap, panic, rc::Rc};
-use wasmer_runtime::{self as runtime, validate, Export};
-use wasmer_runtime::{cache::Artifact, imports, load_cache_with};
+use std::{panic, sync::Arc};
+use wasmer::{Engine, Module as WasmModule};
+
+/// Identifies the native runtime that produced a serialized module. Artifacts
+/// are only compatible with the exact same runtime, engine and target, so this
+/// must change whenever any of them does: the wasmer version is the one
+/// resolved at build time, see `build.rs`.
+const RUNTIME_VERSION: &str = concat!(
+    "shenyu-wasm/",
+    env!("CARGO_PKG_VERSION"),
+    " wasmer/",
+    env!("WASMER_VERSION"),
+    " ",
+    std::env::consts::ARCH,
+    "-",
+    std::env::consts::OS
+);
 
 pub struct Module {
-    #[allow(unused)]
-    java_module_object: GlobalRef,
-    module: runtime::Module,
+    /// The engine owning the compiled code of the module.
+    engine: Engine,
+    module: WasmModule,
+    /// Computed once, for all the instances of the module.
+    shared: Arc<SharedModule>,
 }
 
 impl Module {
-    fn new(java_module_object: GlobalRef, module_bytes: Vec<u8>) -> Result<Self, Error> {
-        let module_bytes = module_bytes.as_slice();
-        let module = runtime::compile(module_bytes)
-            .map_err(|e| runtime_error(format!("Failed to compile the module: {}", e)))?;
-
-        Ok(Self {
-            java_module_object,
+    pub fn new(engine: Engine, module: WasmModule) -> Self {
+        let shared = SharedModule::new(&module);
+        Self {
+            engine,
             module,
-        })
+            shared,
+        }
+    }
+
+    pub fn module(&self) -> &WasmModule {
+        &self.module
+    }
+
+    pub fn instantiate(&self, env: &JNIEnv, java_imports: JObject) -> Result<Instance, Error> {
+        Instance::instantiate(env, &self.engine, &self.module, &self.shared, java_imports)
     }
 
     fn serialize(&self) -> Result<Vec<u8>, Error> {
-        match self.module.cache() {
-            Ok(artifact) => match artifact.serialize() {
-                Ok(serialized_artifact) => Ok(serialized_artifact),
-                Err(_) => {
-                    return Err(runtime_error(format!(
-                        "Failed to serialize the module artifact."
-                    )))
-                }
-            },
-            Err(_) => return Err(runtime_error(format!("Failed to get the module artifact."))),
-        }
+        self.module
+            .serialize()
+            .map(|serialized_module| serialized_module.to_vec())
+            .map_err(|e| runtime_error(format!("Failed to serialize the module: {}", e)))
     }
 
-    fn deserialize(
-        java_module_object: GlobalRef,
-        serialized_module: Vec<u8>,
-    ) -> Result<Self, Error> {
-        let module = match unsafe { Artifact::deserialize(serialized_module.as_slice()) } {
-            Ok(artifact) => match load_cache_with(artifact) {
-                Ok(module) => module,
-                Err(_) => {
-                    return Err(runtime_error(format!(
-                        "Failed to compile the serialized module."
-                    )))
-                }
-            },
-            Err(_) => return Err(runtime_error(format!("Failed to deserialize the module."))),
-        };
-
-        Ok(Self {
-            java_module_object,
-            module,
-        })
+    fn deserialize(serialized_module: &[u8]) -> Result<Self, Error> {
+        // Safety: artifacts are only accepted from the same runtime version,
+        // see `RUNTIME_VERSION`.
+        unsafe { engine::deserialize(&Engine::headless(), serialized_module) }
     }
 }
 
@@ -96,14 +95,121 @@ impl Module {
 pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeModuleInstantiate(
     env: JNIEnv,
     _class: JClass,
-    this: JObject,
     module_bytes: jbyteArray,
+    compiler: jint,
+    opt_level: jint,
+    metering: jboolean,
+    snapshots: jboolean,
 ) -> jptr {
     let output = panic::catch_unwind(|| {
         let module_bytes = env.convert_byte_array(module_bytes)?;
-        let java_module = env.new_global_ref(this)?;
+        let config = EngineConfig::from_java(compiler, opt_level, metering, snapshots)?;
+
+        let module = engine::compile(&config, module_bytes.as_slice())?;
+
+        Ok(Pointer::new(module).into())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeModuleInstantiateBuffer(
+    env: JNIEnv,
+    _class: JClass,
+    module_buffer: JByteBuffer,
+    offset: jint,
+    length: jint,
+    compiler: jint,
+    opt_level: jint,
+    metering: jboolean,
+    snapshots: jboolean,
+) -> jptr {
+    let output = panic::catch_unwind(|| {
+        let module_bytes = direct_buffer_slice(&env, module_buffer, offset, length)?;
+        let config = EngineConfig::from_java(compiler, opt_level, metering, snapshots)?;
+
+        let module = engine::compile(&config, module_bytes)?;
+
+        Ok(Pointer::new(module).into())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+/// The magic number and version every WebAssembly binary starts with.
+const BINARY_HEADER: [u8; 8] = [0x00, 0x61, 0x73, 0x6d, 0x01, 0x00, 0x00, 0x00];
+
+/// A module binary received in chunks, kept off the Java heap until it is
+/// complete. Wasmer only compiles complete binaries, so compilation starts
+/// once the stream ends, but the header is checked as soon as it arrives:
+/// anything else, e.g. an error page, is rejected without being read.
+pub struct ModuleStream {
+    bytes: Vec<u8>,
+}
+
+impl ModuleStream {
+    fn append(&mut self, chunk: &[u8]) -> Result<(), Error> {
+        let checked = self.bytes.len() >= BINARY_HEADER.len();
+        self.bytes.extend_from_slice(chunk);
+
+        if !checked
+            && self.bytes.len() >= BINARY_HEADER.len()
+            && self.bytes[..BINARY_HEADER.len()] != BINARY_HEADER
+        {
+            return Err(runtime_error(
+                "The stream is not a WebAssembly binary (version 1)".to_string(),
+            ));
+        }
+
+        Ok(())
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeStreamNew(
+    _env: JNIEnv,
+    _class: JClass,
+    size_hint: jint,
+) -> jptr {
+    Pointer::new(ModuleStream {
+        bytes: Vec::with_capacity(size_hint.max(0) as usize),
+    })
+    .into()
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeStreamAppend(
+    env: JNIEnv,
+    _class: JClass,
+    stream_pointer: jptr,
+    chunk: JByteBuffer,
+    length: jint,
+) {
+    let output = panic::catch_unwind(|| {
+        let stream: &mut ModuleStream = Into::<Pointer<ModuleStream>>::into(stream_pointer).borrow();
+
+        stream.append(direct_buffer_slice(&env, chunk, 0, length)?)
+    });
+
+    joption_or_throw(&env, output).unwrap_or(())
+}
 
-        let module = Module::new(java_module, module_bytes)?;
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeStreamCompile(
+    env: JNIEnv,
+    _class: JClass,
+    stream_pointer: jptr,
+    compiler: jint,
+    opt_level: jint,
+    metering: jboolean,
+    snapshots: jboolean,
+) -> jptr {
+    let output = panic::catch_unwind(|| {
+        let stream: &ModuleStream = Into::<Pointer<ModuleStream>>::into(stream_pointer).borrow();
+        let config = EngineConfig::from_java(compiler, opt_level, metering, snapshots)?;
+
+        let module = engine::compile(&config, &stream.bytes)?;
 
         Ok(Pointer::new(module).into())
     });
@@ -111,6 +217,15 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeModuleInstantiat
     joption_or_throw(&env, output).unwrap_or(0)
 }
 
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeStreamDrop(
+    _env: JNIEnv,
+    _class: JClass,
+    stream_pointer: jptr,
+) {
+    let _: Pointer<ModuleStream> = stream_pointer.into();
+}
+
 #[no_mangle]
 pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeDrop(
     _env: JNIEnv,
@@ -123,41 +238,31 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeDrop(
 #[no_mangle]
 pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeInstantiate(
     env: JNIEnv,
-    _class: JClass,
+    _module: JObject,
     module_pointer: jptr,
-    instance_object: JObject,
+    java_imports: JObject,
 ) -> jptr {
     let output = panic::catch_unwind(|| {
-        let java_instance_object = env.new_global_ref(instance_object)?;
-
         let module: &Module = Into::<Pointer<Module>>::into(module_pointer).borrow();
-        let import_object = imports! {};
-        let instance = module.module.instantiate(&import_object).map_err(|e| {
-            runtime_error(format!("Failed to instantiate a WebAssembly module: {}", e))
-        })?;
-
-        let memories: HashMap<String, Memory> = instance
-            .exports()
-            .filter_map(|(export_name, export)| match export {
-                Export::Memory(memory) => Some((
-                    export_name.to_string(),
-                    Memory::new(Rc::new(memory.clone())),
-                )),
-                _ => None,
-            })
-            .collect();
-
-        Ok(Pointer::new(Instance {
-            java_instance_object,
-            instance: Rc::new(instance),
-            memories,
-        })
-        .into())
+        let instance = module.instantiate(&env, java_imports)?;
+
+        Ok(Pointer::new(instance).into())
     });
 
     joption_or_throw(&env, output).unwrap_or(0)
 }
 
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeSupportsSnapshots(
+    _env: JNIEnv,
+    _module: JObject,
+    module_pointer: jptr,
+) -> jboolean {
+    let module: &Module = Into::<Pointer<Module>>::into(module_pointer).borrow();
+
+    module.shared.snapshots as jboolean
+}
+
 #[no_mangle]
 pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeValidate(
     env: JNIEnv,
@@ -166,7 +271,7 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeValidate(
 ) -> jboolean {
     let output = panic::catch_unwind(|| {
         let module_bytes = env.convert_byte_array(module_bytes)?;
-        match validate(module_bytes.as_slice()) {
+        match engine::validate(module_bytes.as_slice()).is_ok() {
             true => Ok(1),
             false => Ok(0),
         }
@@ -176,9 +281,28 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeValidate(
 }
 
 #[no_mangle]
-pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeSerialize(
+pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeValidateBuffer(
     env: JNIEnv,
     _class: JClass,
+    module_buffer: JByteBuffer,
+    offset: jint,
+    length: jint,
+) -> jboolean {
+    let output = panic::catch_unwind(|| {
+        let module_bytes = direct_buffer_slice(&env, module_buffer, offset, length)?;
+        match engine::validate(module_bytes).is_ok() {
+            true => Ok(1),
+            false => Ok(0),
+        }
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeSerialize(
+    env: JNIEnv,
+    _module: JObject,
     module_pointer: jptr,
 ) -> jbyteArray {
     let output = panic::catch_unwind(|| {
@@ -195,15 +319,40 @@ pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeSerialize(
 pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeDeserialize(
     env: JNIEnv,
     _class: JClass,
-    java_module: JObject,
     java_serialized_module: jbyteArray,
 ) -> jptr {
     let output = panic::catch_unwind(|| {
-        let java_module_object = env.new_global_ref(java_module)?;
         let serialized_module = env.convert_byte_array(java_serialized_module)?;
-        let module = Module::deserialize(java_module_object, serialized_module)?;
+        let module = Module::deserialize(serialized_module.as_slice())?;
         Ok(Pointer::new(module).into())
     });
 
     joption_or_throw(&env, output).unwrap_or(0)
 }
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeDeserializeBuffer(
+    env: JNIEnv,
+    _class: JClass,
+    serialized_buffer: JByteBuffer,
+    offset: jint,
+    length: jint,
+) -> jptr {
+    let output = panic::catch_unwind(|| {
+        let serialized_module = direct_buffer_slice(&env, serialized_buffer, offset, length)?;
+        let module = Module::deserialize(serialized_module)?;
+        Ok(Pointer::new(module).into())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Module_nativeRuntimeVersion(
+    env: JNIEnv,
+    _class: JClass,
+) -> jstring {
+    let output = panic::catch_unwind(|| Ok(env.new_string(RUNTIME_VERSION)?.into_inner()));
+
+    joption_or_throw(&env, output).unwrap_or(JObject::null().into_inner())
+}
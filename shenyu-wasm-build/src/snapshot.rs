@@ -0,0 +1,507 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019-present Wasmer, Inc. and its affiliates.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+//! Snapshots of the state of an instance, from which new instances start.
+//!
+//! A snapshot holds the linear memories and the mutable globals of an
+//! instance. Modules export them under reserved names, see
+//! `SnapshotExports`, so that globals the module keeps to itself, e.g. the
+//! shadow stack pointer, are captured too.
+//!
+//! On Linux, every memory image lives in a `memfd`, which is mapped
+//! copy-on-write over the memory of the restored instance: restoring costs a
+//! `mmap` whatever the size of the memory, and the pages are only copied once
+//! the guest writes to them. Resetting an instance to the snapshot again only
+//! drops the pages written since. Elsewhere, the image is copied.
+//!
+//! Restored instances are still instantiated as usual first, since wasmer
+//! has no way to skip the data segments and the start function: the image
+//! only saves whatever ran after instantiation.
+
+use crate::{
+    exception::{joption_or_throw, runtime_error, throw, Error},
+    instance::{Instance, SharedModule},
+    types::{jptr, Pointer},
+};
+use jni::{
+    objects::{JClass, JObject},
+    JNIEnv,
+};
+use std::{panic, sync::Arc};
+use wasmer::{
+    Engine, Extern, FunctionMiddleware, LocalFunctionIndex, MiddlewareError, Module as WasmModule,
+    ModuleMiddleware, Mutability, Pages, Value as WasmValue,
+};
+use wasmer_types::{ExportIndex, GlobalIndex, MemoryIndex, ModuleInfo};
+
+const GLOBAL_PREFIX: &str = "__shenyu_snapshot_global_";
+const MEMORY_PREFIX: &str = "__shenyu_snapshot_memory_";
+const NOT_INSTRUMENTED: &str = "Snapshots and resets need a module compiled with snapshots";
+
+/// Whether an export was added by `SnapshotExports`, and must not be visible
+/// from Java.
+pub fn is_reserved(export_name: &str) -> bool {
+    export_name.starts_with(GLOBAL_PREFIX) || export_name.starts_with(MEMORY_PREFIX)
+}
+
+/// Whether a module was compiled with `SnapshotExports`, or has no state to
+/// export anyway.
+pub fn is_instrumented(module: &WasmModule) -> bool {
+    let info = module.info();
+    let (globals, memories) = state_of(info);
+
+    info.exports.keys().any(|name| is_reserved(name)) || (globals.is_empty() && memories.is_empty())
+}
+
+/// The mutable globals and the memories a module defines, rather than
+/// imports.
+fn state_of(module_info: &ModuleInfo) -> (Vec<GlobalIndex>, Vec<MemoryIndex>) {
+    let globals = module_info
+        .globals
+        .iter()
+        .filter(|(index, global_type)| {
+            global_type.mutability == Mutability::Var
+                && module_info.local_global_index(*index).is_some()
+        })
+        .map(|(index, _)| index)
+        .collect();
+    let memories = module_info
+        .memories
+        .keys()
+        .filter(|index| module_info.local_memory_index(*index).is_some())
+        .collect();
+
+    (globals, memories)
+}
+
+/// Exports the memories and the mutable globals a module defines, under
+/// reserved names. It keeps no state, so that one engine can instrument any
+/// number of modules concurrently.
+#[derive(Debug, Default)]
+pub struct SnapshotExports;
+
+#[derive(Debug)]
+struct Unchanged;
+
+impl FunctionMiddleware for Unchanged {}
+
+impl ModuleMiddleware for SnapshotExports {
+    fn generate_function_middleware(
+        &self,
+        _local_function_index: LocalFunctionIndex,
+    ) -> Box<dyn FunctionMiddleware> {
+        Box::new(Unchanged)
+    }
+
+    fn transform_module_info(&self, module_info: &mut ModuleInfo) -> Result<(), MiddlewareError> {
+        let (globals, memories) = state_of(module_info);
+
+        for index in globals {
+            module_info.exports.insert(
+                format!("{}{}", GLOBAL_PREFIX, index.as_u32()),
+                ExportIndex::Global(index),
+            );
+        }
+        for index in memories {
+            module_info.exports.insert(
+                format!("{}{}", MEMORY_PREFIX, index.as_u32()),
+                ExportIndex::Memory(index),
+            );
+        }
+
+        Ok(())
+    }
+}
+
+pub struct Snapshot {
+    engine: Engine,
+    module: WasmModule,
+    shared: Arc<SharedModule>,
+    state: State,
+}
+
+/// The memories and mutable globals of an instance.
+pub struct State {
+    memories: Vec<MemoryImage>,
+    globals: Vec<(String, WasmValue)>,
+}
+
+struct MemoryImage {
+    export_name: String,
+    pages: u32,
+    image: image::Image,
+}
+
+impl Snapshot {
+    pub fn capture(instance: &mut Instance) -> Result<Self, Error> {
+        Ok(Self {
+            engine: instance.engine.clone(),
+            module: instance.module.clone(),
+            shared: instance.shared.clone(),
+            state: State::capture(instance)?,
+        })
+    }
+
+    fn instantiate(self: &Arc<Self>, env: &JNIEnv, java_imports: JObject) -> Result<Instance, Error> {
+        let mut instance = Instance::instantiate(
+            env,
+            &self.engine,
+            &self.module,
+            &self.shared,
+            java_imports,
+        )?;
+        self.state.restore(&mut instance)?;
+        instance.origin = Some(self.clone());
+
+        Ok(instance)
+    }
+}
+
+impl State {
+    pub fn capture(instance: &mut Instance) -> Result<Self, Error> {
+        let mut memories = Vec::new();
+        let mut globals = Vec::new();
+
+        for (export_name, export) in instance.instance.exports.iter() {
+            match export {
+                Extern::Memory(memory) if export_name.starts_with(MEMORY_PREFIX) => {
+                    let view = memory.view(&instance.store);
+                    let bytes = view
+                        .copy_to_vec()
+                        .map_err(|e| runtime_error(format!("Cannot read the memory: {}", e)))?;
+
+                    memories.push(MemoryImage {
+                        export_name: export_name.clone(),
+                        pages: view.size().0,
+                        image: image::Image::new(&bytes)?,
+                    });
+                }
+                Extern::Global(global) if export_name.starts_with(GLOBAL_PREFIX) => {
+                    globals.push((export_name.clone(), global.get(&mut instance.store)));
+                }
+                _ => {}
+            }
+        }
+
+        Ok(Self { memories, globals })
+    }
+
+    /// Bring an instance of the same module back to the captured state. Its
+    /// memories must not be larger than when captured, since they cannot
+    /// shrink.
+    pub fn restore(&self, instance: &mut Instance) -> Result<(), Error> {
+        for memory_image in &self.memories {
+            let memory = instance
+                .instance
+                .exports
+                .get_memory(&memory_image.export_name)
+                .map_err(|e| runtime_error(format!("{}", e)))?
+                .clone();
+            let pages = memory.view(&instance.store).size().0;
+
+            if pages > memory_image.pages {
+                return Err(runtime_error(format!(
+                    "The memory grew to {} pages since the snapshot of {} pages",
+                    pages, memory_image.pages
+                )));
+            }
+            if pages < memory_image.pages {
+                memory
+                    .grow(&mut instance.store, Pages(memory_image.pages - pages))
+                    .map_err(|e| runtime_error(format!("Failed to grow the memory: {}", e)))?;
+            }
+
+            let base = memory.view(&instance.store).data_ptr();
+            let mapped = instance.mapped_memories.get(&memory_image.export_name)
+                == Some(&(base as usize));
+            // Safety: the memory spans at least the image, and nothing reads
+            // or writes it while the instance is borrowed mutably.
+            unsafe { memory_image.image.restore(base, mapped)? };
+            instance
+                .mapped_memories
+                .insert(memory_image.export_name.clone(), base as usize);
+        }
+
+        for (export_name, value) in &self.globals {
+            instance
+                .instance
+                .exports
+                .get_global(export_name)
+                .map_err(|e| runtime_error(format!("{}", e)))?
+                .set(&mut instance.store, value.clone())
+                .map_err(|e| runtime_error(format!("Failed to restore a global: {}", e)))?;
+        }
+
+        Ok(())
+    }
+}
+
+/// Bring an instance back to its origin: the snapshot it was created from,
+/// or else the state of its module right after instantiation. That state is
+/// captured once per module, from an instance created with the imports of
+/// the first instance reset, whose start function thus runs once more. The
+/// instance is usable again even if it was poisoned.
+fn reset(env: &JNIEnv, instance: &mut Instance, java_imports: JObject) -> Result<(), Error> {
+    let origin = instance.origin.clone();
+    let shared = instance.shared.clone();
+    let state = match &origin {
+        Some(snapshot) => &snapshot.state,
+        None => shared.pristine.get_or_try_init(|| {
+            let mut pristine = Instance::instantiate(
+                env,
+                &instance.engine,
+                &instance.module,
+                &shared,
+                java_imports,
+            )?;
+            State::capture(&mut pristine)
+        })?,
+    };
+
+    state.restore(instance)?;
+    instance.recover();
+
+    Ok(())
+}
+
+#[cfg(target_os = "linux")]
+mod image {
+    use crate::exception::{runtime_error, Error};
+    use std::io;
+
+    /// Size of the chunks compared with zero, so that zeroed ranges of the
+    /// memory stay holes in the `memfd`.
+    const CHUNK: usize = 4096;
+
+    /// A memory image in a `memfd`, mapped copy-on-write on restore.
+    pub struct Image {
+        fd: libc::c_int,
+        len: usize,
+    }
+
+    impl Image {
+        pub fn new(bytes: &[u8]) -> Result<Self, Error> {
+            let fd = unsafe {
+                libc::memfd_create(
+                    b"shenyu-wasm-snapshot\0".as_ptr() as *const libc::c_char,
+                    libc::MFD_CLOEXEC,
+                )
+            };
+            if fd < 0 {
+                return Err(os_error("memfd_create"));
+            }
+            // Closes the file if any of the following fails.
+            let image = Self {
+                fd,
+                len: bytes.len(),
+            };
+
+            if unsafe { libc::ftruncate(fd, bytes.len() as libc::off_t) } != 0 {
+                return Err(os_error("ftruncate"));
+            }
+
+            for (index, chunk) in bytes.chunks(CHUNK).enumerate() {
+                if chunk.iter().all(|byte| *byte == 0) {
+                    continue;
+                }
+
+                let mut written = 0;
+                while written < chunk.len() {
+                    let count = unsafe {
+                        libc::pwrite(
+                            fd,
+                            chunk[written..].as_ptr() as *const libc::c_void,
+                            chunk.len() - written,
+                            (index * CHUNK + written) as libc::off_t,
+                        )
+                    };
+                    if count < 0 {
+                        return Err(os_error("pwrite"));
+                    }
+                    written += count as usize;
+                }
+            }
+
+            Ok(image)
+        }
+
+        /// Map the image over the memory starting at `base`, replacing its
+        /// pages. When the image is `mapped` there already, only the pages
+        /// written since are dropped, and read from the image again on their
+        /// next access.
+        ///
+        /// # Safety
+        ///
+        /// `base` must be the page-aligned start of a read-write mapping of at
+        /// least the image size, which nothing else accesses meanwhile.
+        pub unsafe fn restore(&self, base: *mut u8, mapped: bool) -> Result<(), Error> {
+            if self.len == 0 {
+                return Ok(());
+            }
+
+            if mapped {
+                if libc::madvise(base as *mut libc::c_void, self.len, libc::MADV_DONTNEED) != 0 {
+                    return Err(os_error("madvise"));
+                }
+
+                return Ok(());
+            }
+
+            let mapped = libc::mmap(
+                base as *mut libc::c_void,
+                self.len,
+                libc::PROT_READ | libc::PROT_WRITE,
+                libc::MAP_PRIVATE | libc::MAP_FIXED,
+                self.fd,
+                0,
+            );
+            if mapped == libc::MAP_FAILED {
+                return Err(os_error("mmap"));
+            }
+            debug_assert_eq!(mapped, base as *mut libc::c_void);
+
+            Ok(())
+        }
+    }
+
+    impl Drop for Image {
+        fn drop(&mut self) {
+            unsafe { libc::close(self.fd) };
+        }
+    }
+
+    fn os_error(call: &str) -> Error {
+        runtime_error(format!(
+            "Cannot snapshot the memory, `{}` failed: {}",
+            call,
+            io::Error::last_os_error()
+        ))
+    }
+}
+
+#[cfg(not(target_os = "linux"))]
+mod image {
+    use crate::exception::Error;
+    use std::ptr;
+
+    /// A memory image copied over the memory on restore.
+    pub struct Image {
+        bytes: Vec<u8>,
+    }
+
+    impl Image {
+        pub fn new(bytes: &[u8]) -> Result<Self, Error> {
+            Ok(Self {
+                bytes: bytes.to_vec(),
+            })
+        }
+
+        /// Copy the image over the memory starting at `base`.
+        ///
+        /// # Safety
+        ///
+        /// `base` must be the start of a writable memory of at least the image
+        /// size, which nothing else accesses meanwhile.
+        pub unsafe fn restore(&self, base: *mut u8, _mapped: bool) -> Result<(), Error> {
+            ptr::copy_nonoverlapping(self.bytes.as_ptr(), base, self.bytes.len());
+
+            Ok(())
+        }
+    }
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeSnapshot(
+    env: JNIEnv,
+    _instance: JObject,
+    instance_pointer: jptr,
+) -> jptr {
+    let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+
+        if let Some(reason) = instance.unavailable() {
+            return Err(throw(&env, "java/lang/IllegalStateException", reason.to_string()));
+        }
+        if !instance.shared.snapshots {
+            return Err(throw(&env, "java/lang/IllegalStateException", NOT_INSTRUMENTED.to_string()));
+        }
+
+        Ok(Pointer::new(Arc::new(Snapshot::capture(instance)?)).into())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Snapshot_nativeInstantiate(
+    env: JNIEnv,
+    _snapshot: JObject,
+    snapshot_pointer: jptr,
+    java_imports: JObject,
+) -> jptr {
+    let output = panic::catch_unwind(|| {
+        let snapshot: &Arc<Snapshot> =
+            Into::<Pointer<Arc<Snapshot>>>::into(snapshot_pointer).borrow();
+
+        Ok(Pointer::new(snapshot.instantiate(&env, java_imports)?).into())
+    });
+
+    joption_or_throw(&env, output).unwrap_or(0)
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Snapshot_nativeDrop(
+    _env: JNIEnv,
+    _class: JClass,
+    snapshot_pointer: jptr,
+) {
+    let _: Pointer<Arc<Snapshot>> = snapshot_pointer.into();
+}
+
+#[no_mangle]
+pub extern "system" fn Java_org_apache_shenyu_wasm_Instance_nativeReset(
+    env: JNIEnv,
+    _instance: JObject,
+    instance_pointer: jptr,
+    java_imports: JObject,
+) {
+    let output = panic::catch_unwind(|| {
+        let instance: &mut Instance = Into::<Pointer<Instance>>::into(instance_pointer).borrow();
+
+        if instance.is_busy() {
+            return Err(throw(
+                &env,
+                "java/lang/IllegalStateException",
+                "An instance cannot be reset by its own host functions".to_string(),
+            ));
+        }
+        if !instance.shared.snapshots {
+            return Err(throw(&env, "java/lang/IllegalStateException", NOT_INSTRUMENTED.to_string()));
+        }
+
+        reset(&env, instance, java_imports)
+    });
+
+    joption_or_throw(&env, output).unwrap_or(())
+}
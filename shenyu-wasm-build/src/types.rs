@@ -22,7 +22,12 @@
  * SOFTWARE.
  */
 
-use jni::sys::jlong;
+use crate::exception::{runtime_error, Error};
+use jni::{
+    objects::JByteBuffer,
+    sys::{jint, jlong},
+    JNIEnv,
+};
 use std::ops::Deref;
 
 #[allow(non_camel_case_types)]
@@ -66,3 +71,26 @@ impl<Kind> Deref for Pointer<Kind> {
         &self.value
     }
 }
+
+/// Borrow `length` bytes starting at `offset` of a direct `java.nio.ByteBuffer`
+/// without copying them. The Java side must keep the buffer reachable for as
+/// long as the slice is used, i.e. for the duration of the native call.
+pub fn direct_buffer_slice<'a>(
+    env: &JNIEnv<'a>,
+    buffer: JByteBuffer<'a>,
+    offset: jint,
+    length: jint,
+) -> Result<&'a [u8], Error> {
+    let data: &'a [u8] = env.get_direct_buffer_address(buffer)?;
+
+    if offset < 0 || length < 0 || (offset as usize) + (length as usize) > data.len() {
+        return Err(runtime_error(format!(
+            "Range [{}, {}) is out of the buffer bounds (capacity {})",
+            offset,
+            offset as i64 + length as i64,
+            data.len()
+        )));
+    }
+
+    Ok(&data[offset as usize..(offset + length) as usize])
+}
@@ -22,10 +22,19 @@
  * SOFTWARE.
  */
 
-use crate::exception::{runtime_error, Error};
-use jni::{errors::ErrorKind, objects::JObject, JNIEnv};
+use crate::{
+    exception::{runtime_error, Error},
+    jvm::{jvm, Boxed},
+};
+use jni::{
+    errors::ErrorKind,
+    objects::{JObject, JValue},
+    signature::{JavaType, Primitive},
+    sys::{jint, jintArray},
+    JNIEnv,
+};
 use std::convert::TryFrom;
-use wasmer_runtime::Value as WasmValue;
+use wasmer::{Type, Value as WasmValue};
 
 /// Value wrapping the real WebAssembly value.
 pub struct Value(WasmValue);
@@ -36,11 +45,6 @@ impl Value {
     }
 }
 
-pub const INT_CLASS: &str = "java/lang/Integer";
-pub const LONG_CLASS: &str = "java/lang/Long";
-pub const FLOAT_CLASS: &str = "java/lang/Float";
-pub const DOUBLE_CLASS: &str = "java/lang/Double";
-
 impl TryFrom<(&JNIEnv<'_>, JObject<'_>)> for Value {
     type Error = Error;
 
@@ -49,15 +53,21 @@ impl TryFrom<(&JNIEnv<'_>, JObject<'_>)> for Value {
             return Err(ErrorKind::NullPtr("`try_from` receives a null object").into());
         }
 
+        let jvm = jvm();
+        let is = |boxed: &Boxed| env.is_instance_of(jobject, boxed.class.as_class()).unwrap_or(false);
+        let unbox = |boxed: &Boxed, primitive: Primitive| {
+            env.call_method_unchecked(jobject, boxed.value.id(), JavaType::Primitive(primitive), &[])
+        };
+
         Ok(Value(
-            if env.is_instance_of(jobject, INT_CLASS).unwrap_or(false) {
-                WasmValue::I32(env.call_method(jobject, "intValue", "()I", &[])?.i()?)
-            } else if env.is_instance_of(jobject, LONG_CLASS).unwrap_or(false) {
-                WasmValue::I64(env.call_method(jobject, "longValue", "()J", &[])?.j()?)
-            } else if env.is_instance_of(jobject, FLOAT_CLASS).unwrap_or(false) {
-                WasmValue::F32(env.call_method(jobject, "floatValue", "()F", &[])?.f()?)
-            } else if env.is_instance_of(jobject, DOUBLE_CLASS).unwrap_or(false) {
-                WasmValue::F64(env.call_method(jobject, "doubleValue", "()D", &[])?.d()?)
+            if is(&jvm.integer) {
+                WasmValue::I32(unbox(&jvm.integer, Primitive::Int)?.i()?)
+            } else if is(&jvm.long) {
+                WasmValue::I64(unbox(&jvm.long, Primitive::Long)?.j()?)
+            } else if is(&jvm.float) {
+                WasmValue::F32(unbox(&jvm.float, Primitive::Float)?.f()?)
+            } else if is(&jvm.double) {
+                WasmValue::F64(unbox(&jvm.double, Primitive::Double)?.d()?)
             } else {
                 return Err(runtime_error(format!(
                     "Could not convert argument {:?} to a WebAssembly value.",
@@ -67,3 +77,44 @@ impl TryFrom<(&JNIEnv<'_>, JObject<'_>)> for Value {
         ))
     }
 }
+
+/// Box a WebAssembly value as the matching `java.lang.Number`.
+pub fn to_java<'a>(env: &JNIEnv<'a>, value: &WasmValue) -> Result<JObject<'a>, Error> {
+    let jvm = jvm();
+    let (boxed, argument) = match value {
+        WasmValue::I32(value) => (&jvm.integer, JValue::from(*value)),
+        WasmValue::I64(value) => (&jvm.long, JValue::from(*value)),
+        WasmValue::F32(value) => (&jvm.float, JValue::from(*value)),
+        WasmValue::F64(value) => (&jvm.double, JValue::from(*value)),
+        _ => {
+            return Err(runtime_error(format!(
+                "Could not convert {:?} to a Java value.",
+                value
+            )))
+        }
+    };
+
+    env.new_object_unchecked(boxed.class.as_class(), boxed.new.id(), &[argument])
+}
+
+/// The ordinal of a value type in the Java `ValueType` enum.
+pub fn type_ordinal(ty: Type) -> jint {
+    match ty {
+        Type::I32 => 0,
+        Type::I64 => 1,
+        Type::F32 => 2,
+        Type::F64 => 3,
+        Type::V128 => 4,
+        Type::ExternRef => 5,
+        Type::FuncRef => 6,
+    }
+}
+
+/// Encode value types as an array of `ValueType` ordinals.
+pub fn type_ordinals(env: &JNIEnv, types: &[Type]) -> Result<jintArray, Error> {
+    let ordinals: Vec<jint> = types.iter().map(|ty| type_ordinal(*ty)).collect();
+    let array = env.new_int_array(ordinals.len() as jint)?;
+    env.set_int_array_region(array, 0, &ordinals)?;
+
+    Ok(array)
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * `Engine` compiles modules that share its compiler and signature registry, so that loading many small modules
+ * costs less than compiling each of them with an engine of its own, as {@link Module#Module(byte[])} does.
+ *
+ * <p>The machine code of a module stays with the engine that compiled it: it is only freed once the engine and all
+ * of its modules are closed. Modules that are reloaded over and over, rather than loaded once, are better compiled
+ * on their own, or by an engine that is closed along with them.
+ *
+ * <p>A metering engine, see {@link EngineConfig#isMetering()}, compiles one module at a time, each with the
+ * parallelism of its compiler.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * try (Engine engine = new Engine()) {
+ *     Module first = engine.compile(firstBytes);
+ *     Module second = engine.compile(secondBytes);
+ * }
+ * }</pre>
+ */
+public final class Engine implements AutoCloseable {
+    
+    /**
+     * The engine pointer, released on close or once this object is garbage collected.
+     */
+    private final NativeResources.Handle handle;
+    
+    /**
+     * Create an engine with the default configuration.
+     */
+    public Engine() {
+        this(new EngineConfig());
+    }
+    
+    /**
+     * Create an engine.
+     *
+     * @param config the engine configuration.
+     */
+    public Engine(final EngineConfig config) {
+        // Native bindings.
+        Native.init();
+        long enginePointer = nativeNew(config.getCompiler().ordinal(), config.getOptimizationLevel().ordinal(), config.isMetering(),
+                config.isSnapshots());
+        this.handle = NativeResources.engine(this, enginePointer, Engine::nativeDrop);
+    }
+    
+    /**
+     * Compile a module with this engine.
+     *
+     * @param moduleBytes WebAssembly bytes.
+     * @return the module
+     */
+    public Module compile(final byte[] moduleBytes) {
+        return new Module(this.nativeCompile(this.pointer(), moduleBytes));
+    }
+    
+    /**
+     * Compile a module from the remaining bytes of a buffer with this engine. A direct buffer, e.g. a
+     * {@link java.nio.MappedByteBuffer}, is compiled in place without being copied to the Java heap.
+     *
+     * @param moduleBytes WebAssembly bytes.
+     * @return the module
+     */
+    public Module compile(final ByteBuffer moduleBytes) {
+        if (!moduleBytes.isDirect()) {
+            return this.compile(NativeBuffers.remainingBytes(moduleBytes));
+        }
+        return new Module(this.nativeCompileBuffer(this.pointer(), moduleBytes, moduleBytes.position(), moduleBytes.remaining()));
+    }
+    
+    /**
+     * Load a module serialized by {@link Module#serialize()} into this engine.
+     *
+     * @param serializedBytes serialized bytes
+     * @return the module
+     */
+    public Module deserialize(final byte[] serializedBytes) {
+        return new Module(this.nativeDeserialize(this.pointer(), serializedBytes));
+    }
+    
+    /**
+     * Release this engine. Its modules stay usable, and keep the native engine alive until they are closed too.
+     */
+    @Override
+    public void close() {
+        this.handle.close();
+    }
+    
+    private long pointer() {
+        long enginePointer = this.handle.pointer();
+        if (enginePointer == 0L) {
+            throw new IllegalStateException("The engine is closed");
+        }
+        return enginePointer;
+    }
+    
+    private static native long nativeNew(int compiler, int optimizationLevel, boolean metering, boolean snapshots);
+    
+    private static native void nativeDrop(long enginePointer);
+    
+    private native long nativeCompile(long enginePointer, byte[] moduleBytes);
+    
+    private native long nativeCompileBuffer(long enginePointer, ByteBuffer moduleBytes, int offset, int length);
+    
+    private native long nativeDeserialize(long enginePointer, byte[] serializedBytes);
+}
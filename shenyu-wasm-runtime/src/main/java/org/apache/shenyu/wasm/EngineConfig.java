@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+/**
+ * Configuration of the engine compiling a {@link Module}, trading compile time against the speed of the compiled
+ * code.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * EngineConfig config = new EngineConfig();
+ * config.setCompiler(EngineConfig.Compiler.SINGLEPASS);
+ * Module module = new Module(wasmBytes, config);
+ * }</pre>
+ */
+public class EngineConfig {
+    
+    /**
+     * The compiler translating WebAssembly to machine code.
+     */
+    private Compiler compiler = Compiler.CRANELIFT;
+    
+    /**
+     * How hard the compiler optimizes. Ignored by {@link Compiler#SINGLEPASS}.
+     */
+    private OptimizationLevel optimizationLevel = OptimizationLevel.SPEED;
+    
+    /**
+     * Whether the compiled code counts its fuel, which {@link ExecutionLimits} and cancellation rely on. Off by
+     * default: metering costs throughput on every call, and a metered {@link Engine} compiles one module at a time.
+     */
+    private boolean metering;
+    
+    /**
+     * Whether instances can be snapshotted and reset, see {@link Instance#snapshot()} and {@link Instance#reset()}. Off
+     * by default: it exports every memory and mutable global of the compiled modules to the runtime.
+     */
+    private boolean snapshots;
+    
+    /**
+     * get compiler.
+     *
+     * @return the compiler
+     */
+    public Compiler getCompiler() {
+        return compiler;
+    }
+    
+    /**
+     * set compiler.
+     *
+     * @param compiler the compiler
+     */
+    public void setCompiler(final Compiler compiler) {
+        this.compiler = compiler;
+    }
+    
+    /**
+     * get optimizationLevel.
+     *
+     * @return the optimization level
+     */
+    public OptimizationLevel getOptimizationLevel() {
+        return optimizationLevel;
+    }
+    
+    /**
+     * set optimizationLevel.
+     *
+     * @param optimizationLevel the optimization level
+     */
+    public void setOptimizationLevel(final OptimizationLevel optimizationLevel) {
+        this.optimizationLevel = optimizationLevel;
+    }
+    
+    /**
+     * get metering.
+     *
+     * @return whether the compiled code counts its fuel
+     */
+    public boolean isMetering() {
+        return metering;
+    }
+    
+    /**
+     * set metering.
+     *
+     * @param metering whether the compiled code counts its fuel
+     */
+    public void setMetering(final boolean metering) {
+        this.metering = metering;
+    }
+    
+    /**
+     * get snapshots.
+     *
+     * @return whether instances can be snapshotted and reset
+     */
+    public boolean isSnapshots() {
+        return snapshots;
+    }
+    
+    /**
+     * set snapshots.
+     *
+     * @param snapshots whether instances can be snapshotted and reset
+     */
+    public void setSnapshots(final boolean snapshots) {
+        this.snapshots = snapshots;
+    }
+    
+    /**
+     * The compilers of the native library. Only Cranelift is built by default; the others need the matching cargo
+     * feature of `shenyu-wasm-build`, and compiling with a compiler that was not built throws a
+     * {@link RuntimeException}.
+     */
+    public enum Compiler {
+        
+        /**
+         * Compiles fast, to reasonably fast code. The default.
+         */
+        CRANELIFT,
+        
+        /**
+         * Compiles slowly, to the fastest code. Fits long-lived modules on the hot path.
+         */
+        LLVM,
+        
+        /**
+         * Compiles in linear time, to slower code. Fits short-lived modules, where startup matters most.
+         */
+        SINGLEPASS
+    }
+    
+    /**
+     * The optimization levels, in the order of `engine.rs`.
+     */
+    public enum OptimizationLevel {
+        
+        /**
+         * No optimization.
+         */
+        NONE,
+        
+        /**
+         * Optimize for speed.
+         */
+        SPEED,
+        
+        /**
+         * Optimize for speed and code size.
+         */
+        SPEED_AND_SIZE
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+/**
+ * Bounds on a single call into an {@link Instance}. A call running out of fuel throws
+ * {@link ShenyuWasmFuelExhaustedException}, a call running past its timeout throws
+ * {@link ShenyuWasmTimeoutException}, and in both cases the instance is poisoned. Limits only apply to the instances
+ * of modules compiled with {@link EngineConfig#setMetering(boolean)}.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * EngineConfig config = new EngineConfig();
+ * config.setMetering(true);
+ * Instance instance = new Module(wasmBytes, config).instantiate();
+ *
+ * ExecutionLimits limits = new ExecutionLimits();
+ * limits.setFuel(1_000_000L);
+ * limits.setTimeoutMillis(20L);
+ * instance.setExecutionLimits(limits);
+ * }</pre>
+ */
+public class ExecutionLimits {
+    
+    /**
+     * Fuel granted to each call, where every executed WebAssembly instruction costs 1. A non-positive value means
+     * unlimited.
+     */
+    private long fuel;
+    
+    /**
+     * Wall-clock time granted to each call. A non-positive value means unlimited.
+     */
+    private long timeoutMillis;
+    
+    /**
+     * get fuel.
+     *
+     * @return the fuel granted to each call
+     */
+    public long getFuel() {
+        return fuel;
+    }
+    
+    /**
+     * set fuel.
+     *
+     * @param fuel the fuel granted to each call
+     */
+    public void setFuel(final long fuel) {
+        this.fuel = fuel;
+    }
+    
+    /**
+     * get timeoutMillis.
+     *
+     * @return the wall-clock time granted to each call in milliseconds
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+    
+    /**
+     * set timeoutMillis. Timeouts are checked every millisecond while a call with a timeout is running, so a call
+     * is stopped at most about a millisecond late.
+     *
+     * @param timeoutMillis the wall-clock time granted to each call in milliseconds
+     */
+    public void setTimeoutMillis(final long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.shenyu.wasm.exports.ExportDescriptor;
+
+/**
+ * `ExportTable` lists the exports of a module: their descriptors, and the native index of every function. It is
+ * read once per {@link Module} with a single native call, and shared by all its instances, which only wrap an export
+ * once it is asked for. It is never modified once read.
+ */
+@SuppressWarnings("unused")
+final class ExportTable {
+    
+    /**
+     * The table of a module without exports, for instances without a native counterpart.
+     */
+    static final ExportTable EMPTY = new ExportTable();
+    
+    private final Map<String, Integer> functionIndexes = new HashMap<>();
+    
+    private final Map<String, ExportDescriptor> descriptors = new LinkedHashMap<>();
+    
+    private ExportTable() {
+    }
+    
+    /**
+     * Read the exports of a compiled module.
+     *
+     * @param module        the module, kept reachable meanwhile.
+     * @param modulePointer the module pointer.
+     * @return the export table
+     */
+    static ExportTable ofModule(final Module module, final long modulePointer) {
+        ExportTable table = new ExportTable();
+        nativeReadModule(module, modulePointer, table);
+        return table;
+    }
+    
+    /**
+     * Read the exports of the module an instance was created from, e.g. one compiled by an {@link Instance}
+     * constructor.
+     *
+     * @param instance        the instance, kept reachable meanwhile.
+     * @param instancePointer the instance pointer.
+     * @return the export table
+     */
+    static ExportTable ofInstance(final Instance instance, final long instancePointer) {
+        ExportTable table = new ExportTable();
+        nativeReadInstance(instance, instancePointer, table);
+        return table;
+    }
+    
+    /**
+     * Return the descriptor of the export with the name `name`, or `null`.
+     */
+    ExportDescriptor getDescriptor(final String name) {
+        return this.descriptors.get(name);
+    }
+    
+    /**
+     * Return the descriptors of all the exports, in the order of the module.
+     */
+    Collection<ExportDescriptor> getDescriptors() {
+        return Collections.unmodifiableCollection(this.descriptors.values());
+    }
+    
+    /**
+     * Return the native index of the exported function with the name `name`.
+     */
+    int getFunctionIndex(final String name) {
+        Integer functionIndex = this.functionIndexes.get(name);
+        if (functionIndex == null) {
+            throw new RuntimeException("Exported function `" + name + "` does not exist");
+        }
+        return functionIndex;
+    }
+    
+    /**
+     * Called by Rust to add an exported function.
+     */
+    private void addFunction(final String name, final int functionIndex, final int[] params, final int[] results) {
+        this.functionIndexes.put(name, functionIndex);
+        this.descriptors.put(name, ExportDescriptor.function(name, valueTypes(params), valueTypes(results)));
+    }
+    
+    /**
+     * Called by Rust to add an exported memory.
+     */
+    private void addMemory(final String name, final long minimum, final long maximum, final boolean shared) {
+        this.descriptors.put(name, ExportDescriptor.memory(name, minimum, maximum, shared));
+    }
+    
+    /**
+     * Called by Rust to add an exported table.
+     */
+    private void addTable(final String name, final int elementType, final long minimum, final long maximum) {
+        this.descriptors.put(name, ExportDescriptor.table(name, ValueType.of(elementType), minimum, maximum));
+    }
+    
+    /**
+     * Called by Rust to add an exported global.
+     */
+    private void addGlobal(final String name, final int valueType, final boolean mutable) {
+        this.descriptors.put(name, ExportDescriptor.global(name, ValueType.of(valueType), mutable));
+    }
+    
+    private static List<ValueType> valueTypes(final int[] ordinals) {
+        ValueType[] valueTypes = new ValueType[ordinals.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            valueTypes[i] = ValueType.of(ordinals[i]);
+        }
+        return Arrays.asList(valueTypes);
+    }
+    
+    private static native void nativeReadModule(Module module, long modulePointer, ExportTable table);
+    
+    private static native void nativeReadInstance(Instance instance, long instancePointer, ExportTable table);
+}
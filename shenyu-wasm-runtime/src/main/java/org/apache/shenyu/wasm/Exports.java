@@ -24,11 +24,17 @@
 
 package org.apache.shenyu.wasm;
 
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
 
 import org.apache.shenyu.wasm.exports.Export;
+import org.apache.shenyu.wasm.exports.ExportDescriptor;
+import org.apache.shenyu.wasm.exports.F32Function;
+import org.apache.shenyu.wasm.exports.F64Function;
+import org.apache.shenyu.wasm.exports.I32Function;
+import org.apache.shenyu.wasm.exports.I64Function;
 import org.apache.shenyu.wasm.exports.NativeFunction;
 
 /**
@@ -44,41 +50,65 @@ import org.apache.shenyu.wasm.exports.NativeFunction;
  * // Get, manually downcast, and run an exported function.
  * Export sum = instance.exports.get("sum");
  * Object[] result = ((Function) sum).apply(1, 2);
+ *
+ * // Get an exported function whose signature is checked once, and call it without boxing.
+ * int sum = instance.exports.getI32Function("sum").apply(1, 2);
  * }</pre>
+ *
+ * <p>The signature of every exported function is known when it is linked. Functions taking and returning values of
+ * a single numeric type are then called through the typed native calls, converting their arguments in Java rather
+ * than by reflection in native code.
+ *
+ * <p>The names and descriptors of the exports come from the {@link ExportTable} of the module, shared by all its
+ * instances. Functions and memories are only wrapped once they are asked for, so that instantiating a module costs
+ * the same whatever the number of its exports.
  */
-@SuppressWarnings("unused")
 public class Exports {
     
+    /**
+     * The exports wrapped so far.
+     */
     private final Map<String, Export> inner;
     
-    private Instance instance;
+    private final ExportTable table;
+    
+    private final Instance instance;
     
     /**
-     * Lambda expression for currying. This takes a function name and returns the function to call WebAssembly
-     * function.
+     * Lambda expression for currying. This takes a native function index and returns the function to call
+     * WebAssembly function.
      */
-    private final Function<String, NativeFunction> functionWrapperGenerator
-            = functionName -> arguments -> this.instance.nativeCallExportedFunction(
-            this.instance.getInstancePointer(), functionName, arguments);
+    private final IntFunction<NativeFunction> functionWrapperGenerator;
     
     /**
      * The constructor instantiates new exported functions.
      *
      * @param instance Instance object which holds the exports object.
+     * @param table    the exports of the module of the instance.
      */
-    protected Exports(final Instance instance) {
-        this.inner = new HashMap<>();
+    Exports(final Instance instance, final ExportTable table) {
+        this.inner = new ConcurrentHashMap<>();
+        this.table = table;
         this.instance = instance;
+        this.functionWrapperGenerator = functionIndex -> arguments -> instance.callExported(functionIndex, arguments);
     }
     
     /**
-     * Return the export with the name `name`.
+     * Return the export with the name `name`, wrapping it on first use.
      *
      * @param name name of the export to return.
-     * @return the export
+     * @return the export, or `null` if there is no such function or memory
      */
     public Export get(final String name) {
-        return this.inner.get(name);
+        Export export = this.inner.get(name);
+        if (export == null) {
+            ExportDescriptor descriptor = this.table.getDescriptor(name);
+            if (descriptor == null) {
+                return null;
+            }
+            export = this.inner.computeIfAbsent(name, key -> this.wrap(descriptor));
+        }
+        return export;
     }
     
     /**
@@ -89,7 +119,7 @@ public class Exports {
      * @throws ClassCastException if class cast failed
      */
     public NativeFunction getFunction(final String name) throws ClassCastException {
-        return (NativeFunction) this.inner.get(name);
+        return (NativeFunction) this.get(name);
     }
     
     /**
@@ -100,27 +130,221 @@ public class Exports {
      * @throws ClassCastException if class cast failed
      */
     public Memory getMemory(final String name) throws ClassCastException {
-        return (Memory) this.inner.get(name);
+        return (Memory) this.get(name);
+    }
+    
+    /**
+     * Return the export with the name `name` as an exported function taking and returning `i32` values.
+     *
+     * @param name Name of the exported function.
+     * @return the exported function
+     * @throws RuntimeException if there is no such function, or if its signature is not `(i32*) -> i32`
+     */
+    public I32Function getI32Function(final String name) {
+        int functionIndex = this.scalarFunctionIndex(name, ValueType.I32);
+        return arguments -> this.instance.invokeI32(functionIndex, arguments);
+    }
+    
+    /**
+     * Return the export with the name `name` as an exported function taking and returning `i64` values.
+     *
+     * @param name Name of the exported function.
+     * @return the exported function
+     * @throws RuntimeException if there is no such function, or if its signature is not `(i64*) -> i64`
+     */
+    public I64Function getI64Function(final String name) {
+        int functionIndex = this.scalarFunctionIndex(name, ValueType.I64);
+        return arguments -> this.instance.invokeI64(functionIndex, arguments);
+    }
+    
+    /**
+     * Return the export with the name `name` as an exported function taking and returning `f32` values.
+     *
+     * @param name Name of the exported function.
+     * @return the exported function
+     * @throws RuntimeException if there is no such function, or if its signature is not `(f32*) -> f32`
+     */
+    public F32Function getF32Function(final String name) {
+        int functionIndex = this.scalarFunctionIndex(name, ValueType.F32);
+        return arguments -> this.instance.invokeF32(functionIndex, arguments);
+    }
+    
+    /**
+     * Return the export with the name `name` as an exported function taking and returning `f64` values.
+     *
+     * @param name Name of the exported function.
+     * @return the exported function
+     * @throws RuntimeException if there is no such function, or if its signature is not `(f64*) -> f64`
+     */
+    public F64Function getF64Function(final String name) {
+        int functionIndex = this.scalarFunctionIndex(name, ValueType.F64);
+        return arguments -> this.instance.invokeF64(functionIndex, arguments);
+    }
+    
+    /**
+     * Return the descriptor of the export with the name `name`.
+     *
+     * @param name name of the export.
+     * @return the descriptor, or `null` if there is no such export
+     */
+    public ExportDescriptor getDescriptor(final String name) {
+        return this.table.getDescriptor(name);
+    }
+    
+    /**
+     * Return the descriptors of all the exports.
+     *
+     * @return the descriptors
+     */
+    public Collection<ExportDescriptor> getDescriptors() {
+        return this.table.getDescriptors();
+    }
+    
+    private int scalarFunctionIndex(final String name, final ValueType valueType) {
+        int functionIndex = this.getFunctionIndex(name);
+        ExportDescriptor descriptor = this.table.getDescriptor(name);
+        if (!descriptor.isScalarFunction(valueType)) {
+            String type = valueType.name().toLowerCase();
+            throw new RuntimeException("Exported function `" + descriptor + "` is not of type (" + type + "*) -> " + type);
+        }
+        return functionIndex;
+    }
+    
+    /**
+     * Return the exports of the module, shared with the other instances and the snapshots of the instance.
+     */
+    ExportTable getTable() {
+        return this.table;
+    }
+    
+    /**
+     * Return the native index of the exported function with the name `name`.
+     *
+     * @param name Name of the exported function.
+     * @return the native function index
+     */
+    int getFunctionIndex(final String name) {
+        return this.table.getFunctionIndex(name);
+    }
+    
+    /**
+     * Forget an export, unless it was wrapped again meanwhile.
+     */
+    void evict(final String name, final Export export) {
+        this.inner.remove(name, export);
+    }
+    
+    /**
+     * Drop the cached views of every exported memory.
+     */
+    void invalidateMemoryViews() {
+        for (Export export : this.inner.values()) {
+            if (export instanceof Memory) {
+                ((Memory) export).invalidateView();
+            }
+        }
     }
     
     /**
-     * Called by Rust to add a new exported function.
+     * Wrap an exported function or memory. Tables and globals are only described.
      */
-    private void addFunction(final String name) {
-        this.inner.put(name, this.generateFunctionWrapper(name));
+    private Export wrap(final ExportDescriptor descriptor) {
+        switch (descriptor.getKind()) {
+            case FUNCTION:
+                return this.generateFunctionWrapper(descriptor, this.table.getFunctionIndex(descriptor.getName()));
+            case MEMORY:
+                return this.wrapMemory(descriptor.getName());
+            default:
+                return null;
+        }
     }
     
     /**
-     * Called by Rust to add a new exported memory.
+     * Wrap an exported memory, which the instance resolves on first use.
      */
-    private void addMemory(final String name, final Memory memory) {
-        this.inner.put(name, memory);
+    private Memory wrapMemory(final String name) {
+        boolean entered = this.instance.enter();
+        try {
+            return new Memory(this.instance, name, this.instance.nativeExportedMemory(this.instance.pointer(), name));
+        } finally {
+            this.instance.exit(entered);
+        }
     }
     
     /**
      * Generate the exported function wrapper.
      */
-    private NativeFunction generateFunctionWrapper(final String functionName) {
-        return this.functionWrapperGenerator.apply(functionName);
+    private NativeFunction generateFunctionWrapper(final ExportDescriptor descriptor, final int functionIndex) {
+        if (descriptor.isScalarFunction(ValueType.I32)) {
+            return arguments -> new Object[]{this.instance.invokeI32(functionIndex, intArguments(descriptor, arguments))};
+        }
+        if (descriptor.isScalarFunction(ValueType.I64)) {
+            return arguments -> new Object[]{this.instance.invokeI64(functionIndex, longArguments(descriptor, arguments))};
+        }
+        if (descriptor.isScalarFunction(ValueType.F32)) {
+            return arguments -> new Object[]{this.instance.invokeF32(functionIndex, floatArguments(descriptor, arguments))};
+        }
+        if (descriptor.isScalarFunction(ValueType.F64)) {
+            return arguments -> new Object[]{this.instance.invokeF64(functionIndex, doubleArguments(descriptor, arguments))};
+        }
+        return this.functionWrapperGenerator.apply(functionIndex);
+    }
+    
+    private static int[] intArguments(final ExportDescriptor descriptor, final Object[] arguments) {
+        int[] values = new int[checkArity(descriptor, arguments)];
+        for (int i = 0; i < values.length; i++) {
+            if (!(arguments[i] instanceof Integer)) {
+                throw conversionFailure(descriptor, i);
+            }
+            values[i] = (Integer) arguments[i];
+        }
+        return values;
+    }
+    
+    private static long[] longArguments(final ExportDescriptor descriptor, final Object[] arguments) {
+        long[] values = new long[checkArity(descriptor, arguments)];
+        for (int i = 0; i < values.length; i++) {
+            if (!(arguments[i] instanceof Long)) {
+                throw conversionFailure(descriptor, i);
+            }
+            values[i] = (Long) arguments[i];
+        }
+        return values;
+    }
+    
+    private static float[] floatArguments(final ExportDescriptor descriptor, final Object[] arguments) {
+        float[] values = new float[checkArity(descriptor, arguments)];
+        for (int i = 0; i < values.length; i++) {
+            if (!(arguments[i] instanceof Float)) {
+                throw conversionFailure(descriptor, i);
+            }
+            values[i] = (Float) arguments[i];
+        }
+        return values;
+    }
+    
+    private static double[] doubleArguments(final ExportDescriptor descriptor, final Object[] arguments) {
+        double[] values = new double[checkArity(descriptor, arguments)];
+        for (int i = 0; i < values.length; i++) {
+            if (!(arguments[i] instanceof Double)) {
+                throw conversionFailure(descriptor, i);
+            }
+            values[i] = (Double) arguments[i];
+        }
+        return values;
+    }
+    
+    private static int checkArity(final ExportDescriptor descriptor, final Object[] arguments) {
+        int arity = descriptor.getParams().size();
+        int length = arguments == null ? 0 : arguments.length;
+        if (length != arity) {
+            throw new RuntimeException("Exported function `" + descriptor.getName() + "` takes " + arity + " arguments, got " + length);
+        }
+        return arity;
+    }
+    
+    private static RuntimeException conversionFailure(final ExportDescriptor descriptor, final int nth) {
+        return new RuntimeException("Failed to convert the argument " + nth + "nth of `" + descriptor.getName()
+                + "` into a WebAssembly value.");
     }
 }
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Passes variable-length payloads to a guest through the guest's own allocator.
+ *
+ * <p>The guest must export its linear memory as `memory`, and either `allocate(size) -> pointer` with
+ * `deallocate(pointer, size)`, or `malloc(size) -> pointer` with `free(pointer)`. A payload is written straight into
+ * the allocated region, and the target export is called with `(pointer, length)`.
+ *
+ * <p>In pooled mode, a single guest region is kept across calls and only reallocated when a payload does not fit,
+ * so repeated calls do not churn the guest allocator. The region is allocated again after {@link Instance#reset()},
+ * which forgets it. Like its instance, an allocator must not be used by several threads at once.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * GuestAllocator allocator = GuestAllocator.pooled(instance, 4096);
+ * int status = allocator.call("on_request", requestBody);
+ * }</pre>
+ */
+public final class GuestAllocator implements AutoCloseable {
+    
+    private final Instance instance;
+    
+    private final Memory memory;
+    
+    private final String allocateExport;
+    
+    private final String deallocateExport;
+    
+    /**
+     * Whether the deallocation export takes the size, as `deallocate` does, or only the pointer, as `free` does.
+     */
+    private final boolean sizedDeallocate;
+    
+    private final boolean pooled;
+    
+    private int arenaPointer;
+    
+    private int arenaCapacity;
+    
+    /**
+     * The number of resets of the instance when the region was allocated.
+     */
+    private int arenaResets;
+    
+    private GuestAllocator(final Instance instance, final boolean pooled, final int initialCapacity) {
+        this.instance = instance;
+        this.pooled = pooled;
+        this.memory = instance.getMemory("memory");
+        if (this.memory == null) {
+            throw new IllegalArgumentException("The instance does not export its memory as `memory`");
+        }
+        if (instance.getFunction("allocate") != null && instance.getFunction("deallocate") != null) {
+            this.allocateExport = "allocate";
+            this.deallocateExport = "deallocate";
+            this.sizedDeallocate = true;
+        } else if (instance.getFunction("malloc") != null && instance.getFunction("free") != null) {
+            this.allocateExport = "malloc";
+            this.deallocateExport = "free";
+            this.sizedDeallocate = false;
+        } else {
+            throw new IllegalArgumentException("The instance exports neither `allocate`/`deallocate` nor `malloc`/`free`");
+        }
+        if (pooled && initialCapacity > 0) {
+            this.reserve(initialCapacity);
+        }
+    }
+    
+    /**
+     * Create an allocator that allocates and frees a guest region for every payload.
+     *
+     * @param instance the guest instance.
+     * @return the allocator.
+     * @throws IllegalArgumentException if the instance does not follow an allocator convention
+     */
+    public static GuestAllocator of(final Instance instance) {
+        return new GuestAllocator(instance, false, 0);
+    }
+    
+    /**
+     * Create an allocator that reuses one guest region across payloads, growing it when needed.
+     *
+     * @param instance        the guest instance.
+     * @param initialCapacity the size of the region to allocate upfront, in bytes.
+     * @return the allocator.
+     * @throws IllegalArgumentException if the instance does not follow an allocator convention
+     */
+    public static GuestAllocator pooled(final Instance instance, final int initialCapacity) {
+        return new GuestAllocator(instance, true, initialCapacity);
+    }
+    
+    /**
+     * Allocate a guest region.
+     *
+     * @param size the size of the region, in bytes.
+     * @return the address of the region.
+     * @throws IllegalStateException if the guest could not allocate a region of a positive size
+     */
+    public int allocate(final int size) {
+        int pointer = this.instance.callI32(this.allocateExport, size);
+        if (pointer == 0 && size > 0) {
+            throw new IllegalStateException("The guest could not allocate " + size + " bytes");
+        }
+        return pointer;
+    }
+    
+    /**
+     * Free a guest region.
+     *
+     * @param pointer the address of the region.
+     * @param size    the size of the region, in bytes.
+     */
+    public void deallocate(final int pointer, final int size) {
+        if (this.sizedDeallocate) {
+            this.instance.getFunction(this.deallocateExport).apply(pointer, size);
+        } else {
+            this.instance.getFunction(this.deallocateExport).apply(pointer);
+        }
+    }
+    
+    /**
+     * Call an export taking `(pointer, length)` and returning an `i32`, with the payload copied into guest memory.
+     *
+     * @param export  the name of the export.
+     * @param payload the payload.
+     * @return the result of the export.
+     */
+    public int call(final String export, final byte[] payload) {
+        int length = payload.length;
+        int pointer = this.acquire(length);
+        RuntimeException failure = null;
+        try {
+            this.memory.write(pointer, payload, 0, length);
+            return this.instance.callI32(export, pointer, length);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            this.release(pointer, length, failure);
+        }
+    }
+    
+    /**
+     * Call an export taking `(pointer, length)` and returning an `i32`, with the remaining bytes of a buffer copied
+     * into guest memory. The position of the buffer is left unchanged.
+     *
+     * @param export  the name of the export.
+     * @param payload the payload.
+     * @return the result of the export.
+     */
+    public int call(final String export, final ByteBuffer payload) {
+        int length = payload.remaining();
+        int pointer = this.acquire(length);
+        RuntimeException failure = null;
+        try {
+            this.memory.write(pointer, payload.duplicate());
+            return this.instance.callI32(export, pointer, length);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            this.release(pointer, length, failure);
+        }
+    }
+    
+    /**
+     * Call an export taking `(inPointer, inLength, outPointer, outCapacity)` and returning the number of bytes it
+     * wrote, in one guest region holding both payloads. See {@link Instance#callWithBytes}.
+     *
+     * @param export the name of the export.
+     * @param in     the input payload.
+     * @param out    the array receiving the output. Its length is the output capacity.
+     * @return the result of the export.
+     */
+    public int call(final String export, final byte[] in, final byte[] out) {
+        int length = in.length + out.length;
+        int pointer = this.acquire(length);
+        RuntimeException failure = null;
+        try {
+            return this.instance.callWithBytes(export, pointer, in, pointer + in.length, out);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            this.release(pointer, length, failure);
+        }
+    }
+    
+    /**
+     * Call an export taking `(pointer, length)` and returning an `i32`, with the string encoded as UTF-8 into guest
+     * memory.
+     *
+     * @param export  the name of the export.
+     * @param payload the payload.
+     * @return the result of the export.
+     */
+    public int call(final String export, final String payload) {
+        return this.call(export, payload.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Free the pooled region, if any.
+     */
+    @Override
+    public void close() {
+        if (this.arenaResets != this.instance.resets()) {
+            this.arenaPointer = 0;
+            this.arenaCapacity = 0;
+        }
+        if (this.arenaCapacity > 0) {
+            this.deallocate(this.arenaPointer, this.arenaCapacity);
+            this.arenaPointer = 0;
+            this.arenaCapacity = 0;
+        }
+    }
+    
+    private int acquire(final int length) {
+        if (!this.pooled) {
+            return this.allocate(length);
+        }
+        if (this.arenaResets != this.instance.resets()) {
+            this.reserve(Math.max(length, this.arenaCapacity));
+        } else if (length > this.arenaCapacity) {
+            this.reserve(Math.max(length, this.arenaCapacity * 2));
+        }
+        return this.arenaPointer;
+    }
+    
+    /**
+     * Free the region of a call, unless pooled. If the call failed, e.g. poisoning the instance, a failure to free
+     * it is added to the failure of the call rather than replacing it.
+     */
+    private void release(final int pointer, final int length, final RuntimeException failure) {
+        if (this.pooled) {
+            return;
+        }
+        if (failure == null) {
+            this.deallocate(pointer, length);
+            return;
+        }
+        try {
+            this.deallocate(pointer, length);
+        } catch (RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+    
+    private void reserve(final int capacity) {
+        this.close();
+        this.arenaPointer = this.allocate(capacity);
+        this.arenaCapacity = capacity;
+        this.arenaResets = this.instance.resets();
+    }
+}
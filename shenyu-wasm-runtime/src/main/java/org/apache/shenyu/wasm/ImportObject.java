@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.shenyu.wasm.imports.HostFunction;
+
+/**
+ * `ImportObject` holds the host functions a WebAssembly module imports, by module and field name.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * ImportObject imports = new ImportObject()
+ *     .register("env", "log", new ValueType[] {ValueType.I32, ValueType.I32}, new ValueType[0],
+ *         (caller, arguments, results) -> log(caller.getMemory("memory"), (int) arguments[0], (int) arguments[1]));
+ *
+ * Instance instance = new Instance(wasmBytes, imports);
+ * }</pre>
+ */
+public final class ImportObject {
+    
+    private final List<String> namespaces = new ArrayList<>();
+    
+    private final List<String> names = new ArrayList<>();
+    
+    private final List<String> signatures = new ArrayList<>();
+    
+    private final List<HostFunction> functions = new ArrayList<>();
+    
+    /**
+     * Register a host function.
+     *
+     * @param namespace the module name the guest imports from
+     * @param name      the field name the guest imports
+     * @param params    the parameter types
+     * @param results   the result types
+     * @param function  the implementation
+     * @return this import object
+     * @throws IllegalArgumentException if the import is already registered, or a type cannot cross to Java
+     */
+    public ImportObject register(final String namespace, final String name, final ValueType[] params, final ValueType[] results, final HostFunction function) {
+        if (namespace == null || name == null || function == null) {
+            throw new IllegalArgumentException("The namespace, name and function of an import must not be null");
+        }
+        for (int i = 0; i < this.namespaces.size(); i++) {
+            if (this.namespaces.get(i).equals(namespace) && this.names.get(i).equals(name)) {
+                throw new IllegalArgumentException("Import `" + namespace + "." + name + "` is already registered");
+            }
+        }
+        String signature = signature(params, results);
+        this.namespaces.add(namespace);
+        this.names.add(name);
+        this.signatures.add(signature);
+        this.functions.add(function);
+        return this;
+    }
+    
+    /**
+     * Return the number of registered host functions.
+     *
+     * @return the number of host functions
+     */
+    public int size() {
+        return this.functions.size();
+    }
+    
+    private static String signature(final ValueType[] params, final ValueType[] results) {
+        StringBuilder signature = new StringBuilder("(");
+        for (ValueType param : params) {
+            signature.append(param.getDescriptor());
+        }
+        signature.append(')');
+        for (ValueType result : results) {
+            signature.append(result.getDescriptor());
+        }
+        return signature.toString();
+    }
+    
+    /**
+     * Called by Rust.
+     */
+    private String[] namespaces() {
+        return this.namespaces.toArray(new String[0]);
+    }
+    
+    /**
+     * Called by Rust.
+     */
+    private String[] names() {
+        return this.names.toArray(new String[0]);
+    }
+    
+    /**
+     * Called by Rust.
+     */
+    private String[] signatures() {
+        return this.signatures.toArray(new String[0]);
+    }
+    
+    /**
+     * Called by Rust.
+     */
+    private HostFunction[] functions() {
+        return this.functions.toArray(new HostFunction[0]);
+    }
+}
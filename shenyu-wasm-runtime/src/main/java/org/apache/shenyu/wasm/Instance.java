@@ -24,6 +24,11 @@
 
 package org.apache.shenyu.wasm;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.shenyu.wasm.exports.Export;
 import org.apache.shenyu.wasm.exports.NativeFunction;
 
 /**
@@ -32,9 +37,15 @@ import org.apache.shenyu.wasm.exports.NativeFunction;
  * <p>Example:
  * <pre>{@code
  * Instance instance = new Instance(wasmBytes);
+ *
+ * // A module calling back into Java.
+ * Instance withImports = new Instance(wasmBytes, imports);
  * }</pre>
+ *
+ * <p>An instance is not thread-safe. Any thread may use it, but one at a time: calling into an instance, or growing
+ * one of its memories, while another thread is calling into it throws an {@link IllegalStateException}.
  */
-public class Instance {
+public class Instance implements AutoCloseable {
     
     /**
      * All WebAssembly exports.
@@ -42,9 +53,36 @@ public class Instance {
     private final Exports exports;
     
     /**
-     * The instance pointer.
+     * The instance pointer, released on close or once this object is garbage collected.
+     */
+    private final NativeResources.Handle handle;
+    
+    /**
+     * The host functions the instance was created with, or `null`, reused by its snapshots.
+     */
+    private final ImportObject imports;
+    
+    /**
+     * The handle through which other threads stop the running call, created before the first asynchronous call. It is
+     * released once this object is collected, not on close, so that a late cancellation never sees it freed.
+     */
+    private volatile NativeResources.Handle interruptHandle;
+    
+    /**
+     * The thread running a call into the instance, if any. The native instance is not thread-safe, so a call from
+     * another thread meanwhile fails instead of running alongside it.
+     */
+    private final AtomicReference<Thread> caller = new AtomicReference<>();
+    
+    /**
+     * Whether {@link #close()} was called, so that the running call, if any, frees the instance once it returns.
+     */
+    private volatile boolean closing;
+    
+    /**
+     * The number of resets so far, which tells guest memory allocated before the last one apart.
      */
-    private long instancePointer;
+    private int resets;
     
     /**
      * The constructor instantiates a new WebAssembly instance based on WebAssembly bytes.
@@ -52,61 +90,138 @@ public class Instance {
      * @param moduleBytes WebAssembly bytes.
      */
     public Instance(final byte[] moduleBytes) {
+        this(moduleBytes, null);
+    }
+    
+    /**
+     * The constructor instantiates a new WebAssembly instance based on WebAssembly bytes, resolving the module's
+     * imports against host functions.
+     *
+     * @param moduleBytes WebAssembly bytes.
+     * @param imports     the host functions the module imports, or `null` if it has no imports.
+     */
+    public Instance(final byte[] moduleBytes, final ImportObject imports) {
         // Native bindings.
         Native.init();
-        this.exports = new Exports(this);
+        this.imports = imports;
         
-        long instancePointer = this.nativeInstantiate(this, moduleBytes);
-        this.instancePointer = instancePointer;
+        long instancePointer = nativeInstantiate(moduleBytes, imports);
+        this.handle = NativeResources.instance(this, instancePointer, Instance::nativeDrop);
+        this.exports = new Exports(this, ExportTable.ofInstance(this, instancePointer));
+    }
+    
+    /**
+     * The constructor instantiates a new WebAssembly instance based on the remaining bytes of a buffer. A direct
+     * buffer, e.g. a {@link java.nio.MappedByteBuffer}, is compiled in place without being copied to the Java heap.
+     *
+     * @param moduleBytes WebAssembly bytes.
+     */
+    public Instance(final ByteBuffer moduleBytes) {
+        this(moduleBytes, null);
+    }
+    
+    /**
+     * The constructor instantiates a new WebAssembly instance based on the remaining bytes of a buffer, resolving the
+     * module's imports against host functions.
+     *
+     * @param moduleBytes WebAssembly bytes.
+     * @param imports     the host functions the module imports, or `null` if it has no imports.
+     */
+    public Instance(final ByteBuffer moduleBytes, final ImportObject imports) {
+        // Native bindings.
+        Native.init();
+        this.imports = imports;
         
-        nativeInitializeExportedFunctions(instancePointer);
-        nativeInitializeExportedMemories(instancePointer);
+        long instancePointer;
+        if (moduleBytes.isDirect()) {
+            instancePointer = nativeInstantiateBuffer(moduleBytes, moduleBytes.position(), moduleBytes.remaining(), imports);
+        } else {
+            instancePointer = nativeInstantiate(NativeBuffers.remainingBytes(moduleBytes), imports);
+        }
+        this.handle = NativeResources.instance(this, instancePointer, Instance::nativeDrop);
+        this.exports = new Exports(this, ExportTable.ofInstance(this, instancePointer));
+    }
+    
+    /**
+     * The constructor wraps an instance created by {@link Module#instantiate(ImportObject)} or
+     * {@link Snapshot#instantiate()}, sharing the export table of its module.
+     *
+     * @param instancePointer the instance pointer.
+     * @param imports         the host functions the instance was created with, or `null`.
+     * @param exportTable     the exports of the module.
+     */
+    Instance(final long instancePointer, final ImportObject imports, final ExportTable exportTable) {
+        this.imports = imports;
+        this.handle = NativeResources.instance(this, instancePointer, Instance::nativeDrop);
+        this.exports = new Exports(this, exportTable);
     }
     
     /**
      * The constructor instantiates a new WebAssembly instance.
      */
     protected Instance() {
-        this.exports = new Exports(this);
+        this.exports = new Exports(this, ExportTable.EMPTY);
+        this.imports = null;
+        this.handle = NativeResources.instance(this, 0L, Instance::nativeDrop);
     }
     
     /**
-     * Delete an instance object pointer.
+     * Delete an instance object pointer. The exported memories are freed with the instance, and their cached views
+     * must not be used anymore.
+     *
+     * <p>If a call into the instance is running, e.g. a cancelled asynchronous call that could not be stopped, or a
+     * call from one of its host functions, the instance is freed once that call returns, and no other call can start
+     * meanwhile.
      */
+    @Override
     public void close() {
-        if (this.instancePointer != 0L) {
-            this.nativeDrop(this.instancePointer);
-            this.instancePointer = 0L;
+        this.closing = true;
+        if (this.caller.compareAndSet(null, Thread.currentThread())) {
+            this.release();
         }
     }
     
     /**
-     * Delete an instance object pointer, which is called by the garbage collector before an object is removed from the
-     * memory.
+     * Free the instance, once the current thread holds it.
      */
-    @SuppressWarnings("removal")
-    @Override
-    protected void finalize() throws Throwable {
-        this.close();
-        super.finalize();
+    private void release() {
+        try {
+            this.exports.invalidateMemoryViews();
+            this.handle.close();
+        } finally {
+            this.caller.set(null);
+        }
     }
     
     /**
      * get instancePointer.
      *
-     * @return the instance pointer
+     * @return the instance pointer, or `0` once closed
      */
     public long getInstancePointer() {
+        return this.handle.pointer();
+    }
+    
+    /**
+     * Return the instance pointer of an instance that is still open.
+     */
+    long pointer() {
+        long instancePointer = this.handle.pointer();
+        if (instancePointer == 0L) {
+            throw new IllegalStateException("The instance is closed");
+        }
         return instancePointer;
     }
     
     /**
-     * set instancePointer.
+     * set instancePointer. The instance takes ownership of the pointer, and drops it on close. The pointer it held
+     * before is not dropped: whoever else holds it stays responsible for it.
      *
      * @param instancePointer the instance pointer
      */
     public void setInstancePointer(final long instancePointer) {
-        this.instancePointer = instancePointer;
+        this.exports.invalidateMemoryViews();
+        this.handle.adopt(instancePointer);
     }
     
     /**
@@ -120,6 +235,15 @@ public class Instance {
         return this.exports.getFunction(name);
     }
     
+    /**
+     * Return the exports, e.g. to look up their descriptors or typed functions.
+     *
+     * @return the exports
+     */
+    public Exports getExports() {
+        return this.exports;
+    }
+    
     /**
      * Return the export with the name `name` as an exported memory.
      *
@@ -131,37 +255,527 @@ public class Instance {
         return this.exports.getMemory(name);
     }
     
-    private native long nativeInstantiate(Instance self, byte[] moduleBytes);
+    /**
+     * Call an exported function whose parameters and result are all `i32`, without boxing.
+     *
+     * @param name      Name of the exported function.
+     * @param arguments The `i32` arguments.
+     * @return the `i32` result
+     */
+    public int callI32(final String name, final int... arguments) {
+        return this.invokeI32(this.exports.getFunctionIndex(name), arguments);
+    }
     
     /**
-     * Clean native resources.
+     * Call the exported function at `functionIndex`, as by `callI32`.
+     */
+    int invokeI32(final int functionIndex, final int[] arguments) {
+        boolean entered = this.enter();
+        try {
+            return NativeCalls.callI32(this, functionIndex, arguments);
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Call the exported function at `functionIndex` through JNI.
+     */
+    int jniCallI32(final int functionIndex, final int[] arguments) {
+        return this.nativeCallI32(this.pointer(), functionIndex, arguments);
+    }
+    
+    /**
+     * Call an exported function whose parameters and result are all `i64`, without boxing.
      *
-     * @param instancePointer pointer.
+     * @param name      Name of the exported function.
+     * @param arguments The `i64` arguments.
+     * @return the `i64` result
      */
-    private native void nativeDrop(long instancePointer);
+    public long callI64(final String name, final long... arguments) {
+        return this.invokeI64(this.exports.getFunctionIndex(name), arguments);
+    }
     
     /**
-     * Export native call as java functions.
+     * Call the exported function at `functionIndex`, as by `callI64`.
+     */
+    long invokeI64(final int functionIndex, final long[] arguments) {
+        boolean entered = this.enter();
+        try {
+            return NativeCalls.callI64(this, functionIndex, arguments);
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Call the exported function at `functionIndex` through JNI.
+     */
+    long jniCallI64(final int functionIndex, final long[] arguments) {
+        return this.nativeCallI64(this.pointer(), functionIndex, arguments);
+    }
+    
+    /**
+     * Call an exported function whose parameters and result are all `f32`, without boxing.
      *
-     * @param instancePointer pointer.
-     * @param exportName      name.
-     * @param arguments       args.
-     * @return java functions.
+     * @param name      Name of the exported function.
+     * @param arguments The `f32` arguments.
+     * @return the `f32` result
+     */
+    public float callF32(final String name, final float... arguments) {
+        return this.invokeF32(this.exports.getFunctionIndex(name), arguments);
+    }
+    
+    /**
+     * Call the exported function at `functionIndex`, as by `callF32`.
+     */
+    float invokeF32(final int functionIndex, final float[] arguments) {
+        boolean entered = this.enter();
+        try {
+            return NativeCalls.callF32(this, functionIndex, arguments);
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Call the exported function at `functionIndex` through JNI.
+     */
+    float jniCallF32(final int functionIndex, final float[] arguments) {
+        return this.nativeCallF32(this.pointer(), functionIndex, arguments);
+    }
+    
+    /**
+     * Call an exported function whose parameters and result are all `f64`, without boxing.
+     *
+     * @param name      Name of the exported function.
+     * @param arguments The `f64` arguments.
+     * @return the `f64` result
+     */
+    public double callF64(final String name, final double... arguments) {
+        return this.invokeF64(this.exports.getFunctionIndex(name), arguments);
+    }
+    
+    /**
+     * Call the exported function at `functionIndex`, as by `callF64`.
+     */
+    double invokeF64(final int functionIndex, final double[] arguments) {
+        boolean entered = this.enter();
+        try {
+            return NativeCalls.callF64(this, functionIndex, arguments);
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Call the exported function at `functionIndex` through JNI.
+     */
+    double jniCallF64(final int functionIndex, final double[] arguments) {
+        return this.nativeCallF64(this.pointer(), functionIndex, arguments);
+    }
+    
+    /**
+     * Call an exported function whose parameters and result are all `i32` `count` times within a single native call.
+     * The arguments of call `i` are read from `packedArguments[i * arity]` onwards, where `arity` is the number of
+     * parameters of the function, and its result is written to `results[i]`. Both arrays may be longer than the
+     * batch, e.g. to reuse them across batches of different sizes: values past `count * arity` arguments and `count`
+     * results are left alone. If a call fails, the contents of `results` are unspecified.
+     *
+     * @param name            Name of the exported function.
+     * @param packedArguments The `i32` arguments of every call, one call after the other.
+     * @param count           The number of calls.
+     * @param results         Receives the `i32` result of every call.
+     * @throws IllegalArgumentException if `count` is negative or `results` holds fewer than `count` values
+     * @throws RuntimeException if `packedArguments` holds fewer than `count * arity` values, or a call fails
+     */
+    public void callBatch(final String name, final int[] packedArguments, final int count, final int[] results) {
+        checkBatch(count, results.length);
+        boolean entered = this.enter();
+        try {
+            this.nativeCallBatchI32(this.pointer(), this.exports.getFunctionIndex(name), packedArguments, count, results);
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Call an exported function whose parameters and result are all `i64` `count` times within a single native call.
+     * The arguments of call `i` are read from `packedArguments[i * arity]` onwards, where `arity` is the number of
+     * parameters of the function, and its result is written to `results[i]`. Both arrays may be longer than the
+     * batch, e.g. to reuse them across batches of different sizes: values past `count * arity` arguments and `count`
+     * results are left alone. If a call fails, the contents of `results` are unspecified.
+     *
+     * @param name            Name of the exported function.
+     * @param packedArguments The `i64` arguments of every call, one call after the other.
+     * @param count           The number of calls.
+     * @param results         Receives the `i64` result of every call.
+     * @throws IllegalArgumentException if `count` is negative or `results` holds fewer than `count` values
+     * @throws RuntimeException if `packedArguments` holds fewer than `count * arity` values, or a call fails
+     */
+    public void callBatch(final String name, final long[] packedArguments, final int count, final long[] results) {
+        checkBatch(count, results.length);
+        boolean entered = this.enter();
+        try {
+            this.nativeCallBatchI64(this.pointer(), this.exports.getFunctionIndex(name), packedArguments, count, results);
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Call an exported function whose parameters and result are all `f32` `count` times within a single native call.
+     * The arguments of call `i` are read from `packedArguments[i * arity]` onwards, where `arity` is the number of
+     * parameters of the function, and its result is written to `results[i]`. Both arrays may be longer than the
+     * batch, e.g. to reuse them across batches of different sizes: values past `count * arity` arguments and `count`
+     * results are left alone. If a call fails, the contents of `results` are unspecified.
+     *
+     * @param name            Name of the exported function.
+     * @param packedArguments The `f32` arguments of every call, one call after the other.
+     * @param count           The number of calls.
+     * @param results         Receives the `f32` result of every call.
+     * @throws IllegalArgumentException if `count` is negative or `results` holds fewer than `count` values
+     * @throws RuntimeException if `packedArguments` holds fewer than `count * arity` values, or a call fails
+     */
+    public void callBatch(final String name, final float[] packedArguments, final int count, final float[] results) {
+        checkBatch(count, results.length);
+        boolean entered = this.enter();
+        try {
+            this.nativeCallBatchF32(this.pointer(), this.exports.getFunctionIndex(name), packedArguments, count, results);
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Call an exported function whose parameters and result are all `f64` `count` times within a single native call.
+     * The arguments of call `i` are read from `packedArguments[i * arity]` onwards, where `arity` is the number of
+     * parameters of the function, and its result is written to `results[i]`. Both arrays may be longer than the
+     * batch, e.g. to reuse them across batches of different sizes: values past `count * arity` arguments and `count`
+     * results are left alone. If a call fails, the contents of `results` are unspecified.
+     *
+     * @param name            Name of the exported function.
+     * @param packedArguments The `f64` arguments of every call, one call after the other.
+     * @param count           The number of calls.
+     * @param results         Receives the `f64` result of every call.
+     * @throws IllegalArgumentException if `count` is negative or `results` holds fewer than `count` values
+     * @throws RuntimeException if `packedArguments` holds fewer than `count * arity` values, or a call fails
+     */
+    public void callBatch(final String name, final double[] packedArguments, final int count, final double[] results) {
+        checkBatch(count, results.length);
+        boolean entered = this.enter();
+        try {
+            this.nativeCallBatchF64(this.pointer(), this.exports.getFunctionIndex(name), packedArguments, count, results);
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Call an export taking `(inPointer, inLength, outPointer, outCapacity)` and returning the number of bytes it
+     * wrote at `outPointer`, with the payloads copied within the same native call: `in` into the memory exported as
+     * `memory` before the call, and the bytes written into `out` after it, straight between the arrays and the guest
+     * memory. Nothing is copied back if the result is negative, e.g. an error status.
+     *
+     * <p>See {@link GuestAllocator#call(String, byte[], byte[])} to have the guest allocate the regions.
+     *
+     * @param name       Name of the exported function.
+     * @param inPointer  the guest address to copy `in` to.
+     * @param in         the input payload.
+     * @param outPointer the guest address the export writes its output at.
+     * @param out        the array receiving the output, or `null` for none. Its length is the output capacity.
+     * @return the result of the export
+     */
+    public int callWithBytes(final String name, final int inPointer, final byte[] in, final int outPointer, final byte[] out) {
+        boolean entered = this.enter();
+        try {
+            return this.nativeCallWithBytes(this.pointer(), this.exports.getFunctionIndex(name), inPointer, in, outPointer, out);
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Call an exported function on the default {@link WasmExecutor}, so that the calling thread, e.g. an event loop
+     * or a virtual thread, is not blocked in native code.
+     *
+     * @param name      Name of the exported function.
+     * @param arguments The arguments, as for {@link NativeFunction#apply(Object...)}.
+     * @return the results, once the call returns. Cancelling it stops the guest of a metered module only, see
+     *         {@link WasmExecutor}.
+     */
+    public CompletableFuture<Object[]> callAsync(final String name, final Object... arguments) {
+        return this.callAsync(WasmExecutor.getDefault(), name, arguments);
+    }
+    
+    /**
+     * Call an exported function on the given executor.
+     *
+     * @param executor  the executor running the call.
+     * @param name      Name of the exported function.
+     * @param arguments The arguments, as for {@link NativeFunction#apply(Object...)}.
+     * @return the results, once the call returns. Cancelling it stops the guest of a metered module only, see
+     *         {@link WasmExecutor}.
+     */
+    public CompletableFuture<Object[]> callAsync(final WasmExecutor executor, final String name, final Object... arguments) {
+        return executor.submit(this, instance -> instance.getFunction(name).apply(arguments));
+    }
+    
+    /**
+     * Call an exported function through the boxed path of {@link NativeFunction#apply(Object...)}.
+     */
+    Object[] callExported(final int functionIndex, final Object[] arguments) {
+        boolean entered = this.enter();
+        try {
+            return this.nativeCallExportedFunction(this.pointer(), functionIndex, arguments);
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * The number of resets so far.
+     */
+    int resets() {
+        return this.resets;
+    }
+    
+    /**
+     * Mark the current thread as the one calling into the instance.
+     *
+     * @return `true` if the thread entered the instance, `false` if it was already in, e.g. from a host function
+     * @throws IllegalStateException if another thread is calling into the instance, or the instance is closed
+     */
+    boolean enter() {
+        Thread current = Thread.currentThread();
+        if (this.caller.compareAndSet(null, current)) {
+            if (this.closing) {
+                this.release();
+                throw new IllegalStateException("The instance is closed");
+            }
+            return true;
+        }
+        if (this.caller.get() == current) {
+            return false;
+        }
+        throw new IllegalStateException("The instance is in use by another thread");
+    }
+    
+    /**
+     * Leave the instance, if {@link #enter()} entered it, and free it if it was closed meanwhile.
+     */
+    void exit(final boolean entered) {
+        if (!entered) {
+            return;
+        }
+        this.caller.set(null);
+        if (this.closing && this.caller.compareAndSet(null, Thread.currentThread())) {
+            this.release();
+        }
+    }
+    
+    /**
+     * Create the interrupt handle if needed, while no call is running.
+     */
+    void prepareInterrupt() {
+        if (this.interruptHandle == null) {
+            synchronized (this) {
+                if (this.interruptHandle == null) {
+                    this.interruptHandle = NativeResources.auxiliary(this, this.nativeInterruptHandle(this.pointer()), Instance::nativeDropInterruptHandle);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Stop the call running on another thread, which throws a {@link java.util.concurrent.CancellationException}
+     * and poisons this instance. Only the calls of metered modules can be stopped, see {@link EngineConfig}.
+     *
+     * @return `true` if a call was running and is being stopped
+     */
+    boolean interrupt() {
+        NativeResources.Handle handle = this.interruptHandle;
+        if (handle == null || handle.pointer() == 0L) {
+            return false;
+        }
+        return this.nativeCancel(handle.pointer());
+    }
+    
+    /**
+     * Capture the memories and the mutable globals of this instance, e.g. once an initialization export has run, so
+     * that new instances start from this state rather than from scratch.
+     *
+     * @return the snapshot
+     * @throws IllegalStateException if the module was compiled without {@link EngineConfig#isSnapshots()}, or if the
+     *     instance is poisoned, or called from one of its host functions
+     */
+    public Snapshot snapshot() {
+        boolean entered = this.enter();
+        try {
+            return new Snapshot(this.nativeSnapshot(this.pointer()), this.imports, this.exports.getTable());
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Bring this instance back to its initial state, i.e. the state of the snapshot it was instantiated from, or else
+     * its state right after instantiation, so that it can be reused without leaking state from one use to the next.
+     *
+     * <p>Memories and mutable globals are restored. On Linux, only the memory pages written since the last reset are
+     * dropped, and the others are not touched. A poisoned instance is usable again after a reset.
+     *
+     * <p>The state right after instantiation is captured once per module, on the first reset of any of its instances
+     * not created from a snapshot: the module is instantiated once more with the host functions of this instance, and
+     * its start function runs again, with a `null` caller.
+     *
+     * <p>Guest memory allocated before the reset is not allocated anymore: a {@link GuestAllocator} allocates its
+     * pooled region again on its next call.
+     *
+     * @throws IllegalStateException if the module was compiled without {@link EngineConfig#isSnapshots()}, or if called
+     *     from one of the host functions of this instance
+     * @throws RuntimeException if a memory of the instance grew, since memories cannot shrink
+     */
+    public void reset() {
+        boolean entered = this.enter();
+        try {
+            this.nativeReset(this.pointer(), this.imports);
+            this.resets++;
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Bound every later call into this instance. A call exceeding the limits throws
+     * {@link ShenyuWasmFuelExhaustedException} or {@link ShenyuWasmTimeoutException}, and poisons the instance: its
+     * state cannot be trusted anymore, and any further call throws an {@link IllegalStateException}.
+     *
+     * @param limits the limits of each call, or `null` to lift them.
+     * @throws IllegalStateException if the module was compiled without {@link EngineConfig#isMetering()}
+     */
+    public void setExecutionLimits(final ExecutionLimits limits) {
+        long fuel = 0L;
+        long timeoutNanos = 0L;
+        if (limits != null) {
+            fuel = limits.getFuel();
+            timeoutNanos = TimeUnit.MILLISECONDS.toNanos(limits.getTimeoutMillis());
+        }
+        boolean entered = this.enter();
+        try {
+            this.nativeSetLimits(this.pointer(), fuel, timeoutNanos);
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    /**
+     * Whether a call exceeded the execution limits of this instance, which must then be discarded.
+     *
+     * @return `true` if the instance is poisoned
+     */
+    public boolean isPoisoned() {
+        boolean entered = this.enter();
+        try {
+            return this.nativeIsPoisoned(this.pointer());
+        } finally {
+            this.exit(entered);
+        }
+    }
+    
+    private static void checkBatch(final int count, final int resultsLength) {
+        if (count < 0 || count > resultsLength) {
+            throw new IllegalArgumentException("Cannot write the results of " + count + " calls into an array of length " + resultsLength);
+        }
+    }
+    
+    /**
+     * Whether the guest may call back into Java, which only calls made through JNI support.
+     */
+    boolean hasHostFunctions() {
+        return this.imports != null && this.imports.size() > 0;
+    }
+    
+    /**
+     * Forget a closed export, so that asking for it again wraps it anew.
+     */
+    void evictExport(final String name, final Export export) {
+        this.exports.evict(name, export);
+    }
+    
+    /**
+     * Called after a call during which the guest grew one of its memories, by Rust or by {@link NativeCalls}.
+     */
+    void onMemoryGrown() {
+        this.exports.invalidateMemoryViews();
+    }
+    
+    private static native long nativeInstantiate(byte[] moduleBytes, ImportObject imports);
+    
+    private static native long nativeInstantiateBuffer(ByteBuffer moduleBytes, int offset, int length, ImportObject imports);
+    
+    private native long nativeSnapshot(long instancePointer);
+    
+    private native long nativeInterruptHandle(long instancePointer);
+    
+    private static native void nativeDropInterruptHandle(long interruptPointer);
+    
+    /**
+     * Stop the running call. Not static, so that this object stays reachable, and the handle alive, meanwhile.
+     *
+     * @param interruptPointer the interrupt handle.
+     * @return whether a call was running
      */
-    protected native Object[] nativeCallExportedFunction(long instancePointer, String exportName, Object[] arguments);
+    private native boolean nativeCancel(long interruptPointer);
+    
+    private native void nativeReset(long instancePointer, ImportObject imports);
+    
+    private native void nativeSetLimits(long instancePointer, long fuel, long timeoutNanos);
+    
+    private native boolean nativeIsPoisoned(long instancePointer);
     
     /**
-     * nativeInitializeExportedFunctions.
+     * Clean native resources.
      *
      * @param instancePointer pointer.
      */
-    protected static native void nativeInitializeExportedFunctions(long instancePointer);
+    private static native void nativeDrop(long instancePointer);
     
     /**
-     * nativeInitializeExportedMemories.
+     * Return the pointer of the memory exported as `name`, owned by the instance.
+     *
+     * @param instancePointer Instance pointer.
+     * @param name            the export name.
+     * @return the memory pointer
+     */
+    native long nativeExportedMemory(long instancePointer, String name);
+    
+    /**
+     * Export native call as java functions.
      *
      * @param instancePointer pointer.
+     * @param functionIndex   native index of the exported function.
+     * @param arguments       args.
+     * @return java functions.
      */
-    protected static native void nativeInitializeExportedMemories(long instancePointer);
+    protected native Object[] nativeCallExportedFunction(long instancePointer, int functionIndex, Object[] arguments);
+    
+    private native int nativeCallI32(long instancePointer, int functionIndex, int[] arguments);
+    
+    private native long nativeCallI64(long instancePointer, int functionIndex, long[] arguments);
+    
+    private native float nativeCallF32(long instancePointer, int functionIndex, float[] arguments);
+    
+    private native double nativeCallF64(long instancePointer, int functionIndex, double[] arguments);
+    
+    private native void nativeCallBatchI32(long instancePointer, int functionIndex, int[] packedArguments, int count, int[] results);
+    
+    private native void nativeCallBatchI64(long instancePointer, int functionIndex, long[] packedArguments, int count, long[] results);
+    
+    private native void nativeCallBatchF32(long instancePointer, int functionIndex, float[] packedArguments, int count, float[] results);
+    
+    private native void nativeCallBatchF64(long instancePointer, int functionIndex, double[] packedArguments, int count, double[] results);
+    
+    private native int nativeCallWithBytes(long instancePointer, int functionIndex, int inPointer, byte[] in, int outPointer, byte[] out);
     
 }
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * `InstancePool` lends instances of a single {@link Module} to many threads.
+ *
+ * <p>An {@link Instance} must not be used by two threads at the same time, and instantiating one per request is
+ * expensive. The pool keeps warmed instances in a non-blocking deque: a borrow pops the most recently used instance
+ * and a release pushes it back. A borrow first takes a permit from a {@link Semaphore}, one per instance that may
+ * be lent, which does not block while permits are left: only when every instance is lent does a borrower block,
+ * at most {@link InstancePoolConfig#getMaxWaitMillis()}.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * InstancePool pool = new InstancePool(module, config);
+ * Instance instance = pool.borrow();
+ * try {
+ *     instance.callI32("sum", 1, 2);
+ * } finally {
+ *     pool.release(instance);
+ * }
+ * }</pre>
+ */
+public final class InstancePool implements AutoCloseable {
+    
+    private final Module module;
+    
+    private final InstancePoolConfig config;
+    
+    /**
+     * Idle instances, most recently released first.
+     */
+    private final ConcurrentLinkedDeque<PooledInstance> idle = new ConcurrentLinkedDeque<>();
+    
+    /**
+     * Every instance owned by the pool, idle or lent.
+     */
+    private final Map<Instance, PooledInstance> instances = new ConcurrentHashMap<>();
+    
+    /**
+     * One permit per instance that may be lent.
+     */
+    private final Semaphore permits;
+    
+    private final AtomicLong lastEvictionNanos = new AtomicLong(System.nanoTime());
+    
+    private volatile boolean closed;
+    
+    /**
+     * Create a pool and eagerly instantiate {@link InstancePoolConfig#getMinSize()} instances.
+     *
+     * @param module the module to instantiate.
+     * @param config the pool configuration.
+     * @throws IllegalArgumentException if the sizes are invalid, or {@link InstancePoolConfig#isResetOnRelease()} is
+     *     set for a module that does not support snapshots, see {@link Module#supportsSnapshots()}
+     */
+    public InstancePool(final Module module, final InstancePoolConfig config) {
+        if (config.getMaxSize() <= 0 || config.getMinSize() < 0 || config.getMinSize() > config.getMaxSize()) {
+            throw new IllegalArgumentException("Invalid pool size: min " + config.getMinSize() + ", max " + config.getMaxSize());
+        }
+        if (config.isResetOnRelease() && !module.supportsSnapshots()) {
+            throw new IllegalArgumentException("Resetting instances on release needs a module compiled with snapshots");
+        }
+        this.module = module;
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxSize());
+        for (int i = 0; i < config.getMinSize(); i++) {
+            this.idle.offerFirst(this.create());
+        }
+    }
+    
+    /**
+     * Lend an instance, waiting at most {@link InstancePoolConfig#getMaxWaitMillis()} when all instances are lent.
+     * The instance must be given back with {@link #release(Instance)} or {@link #invalidate(Instance)}.
+     *
+     * @return an instance used by no other thread
+     * @throws ShenyuWasmPoolExhaustedException if no instance becomes available in time
+     */
+    public Instance borrow() {
+        this.ensureOpen();
+        this.acquirePermit();
+        try {
+            PooledInstance pooled = this.idle.pollFirst();
+            if (pooled == null) {
+                pooled = this.create();
+            }
+            pooled.uses++;
+            pooled.lent.set(true);
+            return pooled.instance;
+        } catch (RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+    
+    /**
+     * Give a borrowed instance back to the pool, reset first if {@link InstancePoolConfig#isResetOnRelease()}. It is
+     * recycled instead when it has been lent {@link InstancePoolConfig#getMaxUses()} times, when it is poisoned by a
+     * call exceeding {@link InstancePoolConfig#getExecutionLimits()} and not reset, when it cannot be reset, or when
+     * the pool is closed.
+     *
+     * @param instance the borrowed instance.
+     */
+    public void release(final Instance instance) {
+        PooledInstance pooled = this.returned(instance);
+        if (this.closed || this.config.getMaxUses() > 0 && pooled.uses >= this.config.getMaxUses() || !this.reusable(pooled.instance)) {
+            this.destroy(pooled);
+        } else {
+            pooled.idleSinceNanos = System.nanoTime();
+            this.idle.offerFirst(pooled);
+            // A concurrent close may have drained the idle instances before the offer: whichever of the two takes
+            // the instance back out closes it.
+            if (this.closed && this.idle.removeFirstOccurrence(pooled)) {
+                this.destroy(pooled);
+            }
+        }
+        this.permits.release();
+        this.evictIfDue();
+    }
+    
+    /**
+     * Give a borrowed instance back and discard it, e.g. after it trapped and its state cannot be trusted. A fresh
+     * instance is created on a later borrow when needed.
+     *
+     * @param instance the borrowed instance.
+     */
+    public void invalidate(final Instance instance) {
+        PooledInstance pooled = this.returned(instance);
+        this.destroy(pooled);
+        this.permits.release();
+    }
+    
+    /**
+     * Close the instances that stayed idle longer than {@link InstancePoolConfig#getIdleTimeoutMillis()}, keeping
+     * at least {@link InstancePoolConfig#getMinSize()} instances. This also runs lazily on release.
+     */
+    public void evictIdle() {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(this.config.getIdleTimeoutMillis());
+        if (timeoutNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        Iterator<PooledInstance> oldestFirst = this.idle.descendingIterator();
+        while (oldestFirst.hasNext() && this.instances.size() > this.config.getMinSize()) {
+            PooledInstance pooled = oldestFirst.next();
+            if (now - pooled.idleSinceNanos < timeoutNanos) {
+                break;
+            }
+            // A concurrent borrow may have taken it already.
+            if (this.idle.removeLastOccurrence(pooled)) {
+                this.destroy(pooled);
+            }
+        }
+    }
+    
+    /**
+     * get the number of idle instances.
+     *
+     * @return the idle count
+     */
+    public int getIdleCount() {
+        return this.idle.size();
+    }
+    
+    /**
+     * get the number of lent instances.
+     *
+     * @return the borrowed count
+     */
+    public int getBorrowedCount() {
+        return this.config.getMaxSize() - this.permits.availablePermits();
+    }
+    
+    /**
+     * get the number of instances owned by the pool.
+     *
+     * @return the total count
+     */
+    public int getTotalCount() {
+        return this.instances.size();
+    }
+    
+    /**
+     * Close the pool and its idle instances. Lent instances are closed when they are released.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        PooledInstance pooled;
+        while ((pooled = this.idle.pollFirst()) != null) {
+            this.destroy(pooled);
+        }
+    }
+    
+    private void ensureOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("The instance pool is closed");
+        }
+    }
+    
+    private void acquirePermit() {
+        if (this.permits.tryAcquire()) {
+            return;
+        }
+        try {
+            if (!this.permits.tryAcquire(this.config.getMaxWaitMillis(), TimeUnit.MILLISECONDS)) {
+                throw new ShenyuWasmPoolExhaustedException("No instance available within " + this.config.getMaxWaitMillis() + "ms, "
+                        + this.config.getMaxSize() + " instances are lent");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ShenyuWasmPoolExhaustedException("Interrupted while waiting for an instance", e);
+        }
+    }
+    
+    private PooledInstance returned(final Instance instance) {
+        PooledInstance pooled = this.instances.get(instance);
+        if (pooled == null) {
+            throw new IllegalArgumentException("The instance does not belong to this pool");
+        }
+        // Giving an instance back twice would let two threads borrow it at once.
+        if (!pooled.lent.compareAndSet(true, false)) {
+            throw new IllegalStateException("The instance is not lent");
+        }
+        return pooled;
+    }
+    
+    /**
+     * Reset the instance when configured to, and tell whether it can be lent again.
+     */
+    private boolean reusable(final Instance instance) {
+        if (!this.config.isResetOnRelease()) {
+            return !instance.isPoisoned();
+        }
+        try {
+            instance.reset();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+    
+    private PooledInstance create() {
+        PooledInstance pooled = new PooledInstance(this.module.instantiate(this.config.getImports()));
+        if (this.config.getExecutionLimits() != null) {
+            pooled.instance.setExecutionLimits(this.config.getExecutionLimits());
+        }
+        this.instances.put(pooled.instance, pooled);
+        return pooled;
+    }
+    
+    private void destroy(final PooledInstance pooled) {
+        this.instances.remove(pooled.instance);
+        pooled.instance.close();
+    }
+    
+    private void evictIfDue() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(this.config.getIdleTimeoutMillis());
+        long last = this.lastEvictionNanos.get();
+        long now = System.nanoTime();
+        // Only one releasing thread per interval pays for the scan.
+        if (intervalNanos > 0 && now - last >= intervalNanos && this.lastEvictionNanos.compareAndSet(last, now)) {
+            this.evictIdle();
+        }
+    }
+    
+    private static final class PooledInstance {
+        
+        private final Instance instance;
+        
+        private final AtomicBoolean lent = new AtomicBoolean();
+        
+        private int uses;
+        
+        private long idleSinceNanos;
+        
+        PooledInstance(final Instance instance) {
+            this.instance = instance;
+            this.idleSinceNanos = System.nanoTime();
+        }
+    }
+}
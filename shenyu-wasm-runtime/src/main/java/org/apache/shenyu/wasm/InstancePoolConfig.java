@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+/**
+ * Configuration of an {@link InstancePool}.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * InstancePoolConfig config = new InstancePoolConfig();
+ * config.setMinSize(4);
+ * config.setMaxSize(64);
+ * config.setMaxWaitMillis(50);
+ * InstancePool pool = new InstancePool(module, config);
+ * }</pre>
+ */
+public class InstancePoolConfig {
+    
+    /**
+     * Number of instances created eagerly, and kept even when idle.
+     */
+    private int minSize;
+    
+    /**
+     * Maximum number of instances lent at the same time.
+     */
+    private int maxSize = Runtime.getRuntime().availableProcessors();
+    
+    /**
+     * How long {@link InstancePool#borrow()} waits for an instance when all of them are lent. 0 means fail fast.
+     */
+    private long maxWaitMillis = 1000L;
+    
+    /**
+     * How long an instance may stay idle before it is evicted. A non-positive value disables eviction.
+     */
+    private long idleTimeoutMillis = 60000L;
+    
+    /**
+     * How many times an instance may be lent before it is recycled. A non-positive value means unlimited.
+     */
+    private int maxUses;
+    
+    /**
+     * Limits applied to every call into the pooled instances, or `null` for none.
+     */
+    private ExecutionLimits executionLimits;
+    
+    /**
+     * The host functions the pooled instances are created with, or `null` if the module has no imports.
+     */
+    private ImportObject imports;
+    
+    /**
+     * Whether released instances are reset, see {@link Instance#reset()}, so that no state leaks from one borrower to
+     * the next. The module must be compiled with {@link EngineConfig#isSnapshots()}.
+     */
+    private boolean resetOnRelease;
+    
+    /**
+     * get minSize.
+     *
+     * @return the minimum number of instances
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+    
+    /**
+     * set minSize.
+     *
+     * @param minSize the minimum number of instances
+     */
+    public void setMinSize(final int minSize) {
+        this.minSize = minSize;
+    }
+    
+    /**
+     * get maxSize.
+     *
+     * @return the maximum number of lent instances
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * set maxSize.
+     *
+     * @param maxSize the maximum number of lent instances
+     */
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+    
+    /**
+     * get maxWaitMillis.
+     *
+     * @return the borrow wait timeout in milliseconds
+     */
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+    
+    /**
+     * set maxWaitMillis.
+     *
+     * @param maxWaitMillis the borrow wait timeout in milliseconds
+     */
+    public void setMaxWaitMillis(final long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+    
+    /**
+     * get idleTimeoutMillis.
+     *
+     * @return the idle eviction timeout in milliseconds
+     */
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+    
+    /**
+     * set idleTimeoutMillis.
+     *
+     * @param idleTimeoutMillis the idle eviction timeout in milliseconds
+     */
+    public void setIdleTimeoutMillis(final long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+    
+    /**
+     * get maxUses.
+     *
+     * @return how many times an instance may be lent before it is recycled
+     */
+    public int getMaxUses() {
+        return maxUses;
+    }
+    
+    /**
+     * set maxUses.
+     *
+     * @param maxUses how many times an instance may be lent before it is recycled
+     */
+    public void setMaxUses(final int maxUses) {
+        this.maxUses = maxUses;
+    }
+    
+    /**
+     * get executionLimits.
+     *
+     * @return the limits applied to every call into the pooled instances
+     */
+    public ExecutionLimits getExecutionLimits() {
+        return executionLimits;
+    }
+    
+    /**
+     * set executionLimits.
+     *
+     * @param executionLimits the limits applied to every call into the pooled instances
+     */
+    public void setExecutionLimits(final ExecutionLimits executionLimits) {
+        this.executionLimits = executionLimits;
+    }
+    
+    /**
+     * get imports.
+     *
+     * @return the host functions the pooled instances are created with
+     */
+    public ImportObject getImports() {
+        return imports;
+    }
+    
+    /**
+     * set imports. The same host functions are shared by every pooled instance.
+     *
+     * @param imports the host functions the pooled instances are created with
+     */
+    public void setImports(final ImportObject imports) {
+        this.imports = imports;
+    }
+    
+    /**
+     * get resetOnRelease.
+     *
+     * @return whether released instances are reset
+     */
+    public boolean isResetOnRelease() {
+        return resetOnRelease;
+    }
+    
+    /**
+     * set resetOnRelease.
+     *
+     * @param resetOnRelease whether released instances are reset
+     */
+    public void setResetOnRelease(final boolean resetOnRelease) {
+        this.resetOnRelease = resetOnRelease;
+    }
+}
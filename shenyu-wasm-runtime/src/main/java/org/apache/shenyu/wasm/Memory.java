@@ -24,8 +24,11 @@
 
 package org.apache.shenyu.wasm;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.apache.shenyu.wasm.exports.Export;
 
@@ -46,32 +49,100 @@ import org.apache.shenyu.wasm.exports.Export;
  * byte[] bytes = new byte[5];
  * memoryBuffer.position(0);
  * memoryBuffer.get(bytes);
+ *
+ * // Or copy them in bulk at absolute addresses.
+ * memory.write(0, new byte[]{1, 2, 3, 4, 5});
+ * memory.putInt(8, 42);
+ * String message = memory.readCString(16);
  * }</pre>
  */
 @SuppressWarnings("unused")
-public final class Memory implements Export {
+public final class Memory implements Export, AutoCloseable {
+    
+    /**
+     * The number of bytes {@link #readCString(int)} copies at first, enough for most strings.
+     */
+    private static final int C_STRING_CHUNK = 256;
     
     /**
      * Represents the actual WebAssembly memory data, borrowed from the runtime (in Rust). The `setBuffer` method must
-     * be used to set this attribute.
+     * be used to set this attribute. It is cached until the memory grows, and then rebuilt lazily.
      */
     private ByteBuffer buffer;
     
+    /**
+     * Points into the instance, which owns the memory.
+     */
     private long memoryPointer;
     
-    private Memory() {
-        // This object is instantiated by Rust.
+    /**
+     * The instance owning the memory, kept reachable as long as this memory is.
+     */
+    private final Instance instance;
+    
+    /**
+     * The name the memory is exported under.
+     */
+    private final String name;
+    
+    /**
+     * The constructor wraps an exported memory, once it is asked for.
+     *
+     * @param instance      the instance exporting the memory.
+     * @param name          the name the memory is exported under.
+     * @param memoryPointer the memory pointer, into the instance.
+     */
+    Memory(final Instance instance, final String name, final long memoryPointer) {
+        this.instance = instance;
+        this.name = name;
+        this.memoryPointer = memoryPointer;
     }
     
     /**
      * Return a _new_ direct byte buffer borrowing the memory data.
      *
+     * <p>The returned buffer has its own position and limit, but shares the cached view of the memory: no native
+     * call is made unless the memory has grown since the view was built.
+     *
      * @return A new direct byte buffer.
      */
     public ByteBuffer buffer() {
-        this.nativeMemoryView(this, this.memoryPointer);
-        
-        return this.buffer;
+        return this.view().duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Return the cached view of the memory, building it when missing.
+     */
+    ByteBuffer view() {
+        ByteBuffer view = this.buffer;
+        if (view == null) {
+            long memoryPointer = this.pointer();
+            boolean entered = this.instance.enter();
+            try {
+                this.nativeMemoryView(this, this.instance.getInstancePointer(), memoryPointer);
+            } finally {
+                this.instance.exit(entered);
+            }
+            view = this.buffer;
+        }
+        return view;
+    }
+    
+    /**
+     * Return the memory pointer, as long as both this memory and its instance are open.
+     */
+    private long pointer() {
+        if (this.memoryPointer == 0L || this.instance.getInstancePointer() == 0L) {
+            throw new IllegalStateException("The memory is closed");
+        }
+        return this.memoryPointer;
+    }
+    
+    /**
+     * Drop the cached view, because the memory has grown or its instance is closed.
+     */
+    void invalidateView() {
+        this.buffer = null;
     }
     
     /**
@@ -88,6 +159,239 @@ public final class Memory implements Export {
         }
     }
     
+    /**
+     * Copy bytes into the memory.
+     *
+     * @param offset the address to write at.
+     * @param source the bytes to write.
+     */
+    public void write(final int offset, final byte[] source) {
+        this.write(offset, source, 0, source.length);
+    }
+    
+    /**
+     * Copy a range of bytes into the memory.
+     *
+     * @param offset       the address to write at.
+     * @param source       the array holding the bytes to write.
+     * @param sourceOffset the index of the first byte to write.
+     * @param length       the number of bytes to write.
+     */
+    public void write(final int offset, final byte[] source, final int sourceOffset, final int length) {
+        this.region(offset, length).put(source, sourceOffset, length);
+    }
+    
+    /**
+     * Copy the remaining bytes of a buffer into the memory, advancing the position of the buffer.
+     *
+     * @param offset the address to write at.
+     * @param source the bytes to write.
+     */
+    public void write(final int offset, final ByteBuffer source) {
+        this.region(offset, source.remaining()).put(source);
+    }
+    
+    /**
+     * Copy bytes out of the memory.
+     *
+     * @param offset      the address to read at.
+     * @param destination the array to fill.
+     */
+    public void read(final int offset, final byte[] destination) {
+        this.read(offset, destination, 0, destination.length);
+    }
+    
+    /**
+     * Copy a range of bytes out of the memory.
+     *
+     * @param offset            the address to read at.
+     * @param destination       the array receiving the bytes.
+     * @param destinationOffset the index of the first byte to fill.
+     * @param length            the number of bytes to read.
+     */
+    public void read(final int offset, final byte[] destination, final int destinationOffset, final int length) {
+        this.region(offset, length).get(destination, destinationOffset, length);
+    }
+    
+    /**
+     * Copy bytes out of the memory into a buffer, advancing the position of the buffer.
+     *
+     * @param offset      the address to read at.
+     * @param length      the number of bytes to read.
+     * @param destination the buffer receiving the bytes.
+     */
+    public void read(final int offset, final int length, final ByteBuffer destination) {
+        destination.put(this.region(offset, length));
+    }
+    
+    /**
+     * Decode a UTF-8 string of known length.
+     *
+     * @param offset the address of the string.
+     * @param length the length of the string in bytes.
+     * @return the string.
+     */
+    public String readUtf8(final int offset, final int length) {
+        byte[] bytes = new byte[length];
+        this.read(offset, bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Decode a NUL-terminated UTF-8 string.
+     *
+     * @param offset the address of the string.
+     * @return the string, without its terminator.
+     */
+    public String readCString(final int offset) {
+        ByteBuffer view = this.view().duplicate();
+        ((Buffer) view).position(offset);
+        byte[] bytes = new byte[Math.min(C_STRING_CHUNK, view.remaining())];
+        int length = 0;
+        while (view.hasRemaining()) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min((long) length * 2, length + view.remaining()));
+            }
+            int count = Math.min(bytes.length - length, view.remaining());
+            view.get(bytes, length, count);
+            for (int i = length; i < length + count; i++) {
+                if (bytes[i] == 0) {
+                    return new String(bytes, 0, i, StandardCharsets.UTF_8);
+                }
+            }
+            length += count;
+        }
+        throw new IllegalArgumentException("No NUL terminator after offset " + offset);
+    }
+    
+    /**
+     * Encode a string as UTF-8 into the memory, without a terminator.
+     *
+     * @param offset the address to write at.
+     * @param value  the string.
+     * @return the number of bytes written.
+     */
+    public int writeUtf8(final int offset, final String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.write(offset, bytes, 0, bytes.length);
+        return bytes.length;
+    }
+    
+    /**
+     * Read a byte at an absolute address.
+     *
+     * @param offset the address.
+     * @return the value.
+     */
+    public byte getByte(final int offset) {
+        return this.view().get(offset);
+    }
+    
+    /**
+     * Write a byte at an absolute address.
+     *
+     * @param offset the address.
+     * @param value  the value.
+     */
+    public void putByte(final int offset, final byte value) {
+        this.view().put(offset, value);
+    }
+    
+    /**
+     * Read a little-endian `i32` at an absolute address.
+     *
+     * @param offset the address.
+     * @return the value.
+     */
+    public int getInt(final int offset) {
+        return this.view().getInt(offset);
+    }
+    
+    /**
+     * Write a little-endian `i32` at an absolute address.
+     *
+     * @param offset the address.
+     * @param value  the value.
+     */
+    public void putInt(final int offset, final int value) {
+        this.view().putInt(offset, value);
+    }
+    
+    /**
+     * Read a little-endian `i64` at an absolute address.
+     *
+     * @param offset the address.
+     * @return the value.
+     */
+    public long getLong(final int offset) {
+        return this.view().getLong(offset);
+    }
+    
+    /**
+     * Write a little-endian `i64` at an absolute address.
+     *
+     * @param offset the address.
+     * @param value  the value.
+     */
+    public void putLong(final int offset, final long value) {
+        this.view().putLong(offset, value);
+    }
+    
+    /**
+     * Read a little-endian `f32` at an absolute address.
+     *
+     * @param offset the address.
+     * @return the value.
+     */
+    public float getFloat(final int offset) {
+        return this.view().getFloat(offset);
+    }
+    
+    /**
+     * Write a little-endian `f32` at an absolute address.
+     *
+     * @param offset the address.
+     * @param value  the value.
+     */
+    public void putFloat(final int offset, final float value) {
+        this.view().putFloat(offset, value);
+    }
+    
+    /**
+     * Read a little-endian `f64` at an absolute address.
+     *
+     * @param offset the address.
+     * @return the value.
+     */
+    public double getDouble(final int offset) {
+        return this.view().getDouble(offset);
+    }
+    
+    /**
+     * Write a little-endian `f64` at an absolute address.
+     *
+     * @param offset the address.
+     * @param value  the value.
+     */
+    public void putDouble(final int offset, final double value) {
+        this.view().putDouble(offset, value);
+    }
+    
+    /**
+     * Return a buffer over `length` bytes of the memory starting at `offset`, for a single bulk copy.
+     */
+    private ByteBuffer region(final int offset, final int length) {
+        ByteBuffer view = this.view();
+        if (offset < 0 || length < 0 || offset > view.capacity() - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + ((long) offset + length) + ") is out of the memory bounds (size " + view.capacity() + ")");
+        }
+        ByteBuffer region = view.duplicate();
+        // Casts keep the Java 8 `Buffer` signatures.
+        ((Buffer) region).limit(offset + length);
+        ((Buffer) region).position(offset);
+        return region;
+    }
+    
     /**
      * Grow this memory by the specified number of pages.
      *
@@ -95,11 +399,30 @@ public final class Memory implements Export {
      * @return The previous number of pages.
      */
     public int grow(final int page) {
-        return this.nativeMemoryGrow(this, this.memoryPointer, page);
+        long memoryPointer = this.pointer();
+        boolean entered = this.instance.enter();
+        try {
+            int previousPages = this.nativeMemoryGrow(this, this.instance.getInstancePointer(), memoryPointer, page);
+            this.invalidateView();
+            return previousPages;
+        } finally {
+            this.instance.exit(entered);
+        }
+    }
+    
+    /**
+     * Detach this object from the memory and drop its cached view. The memory itself belongs to the instance, and is
+     * freed when the instance is closed. Asking the instance for the memory again returns a new object.
+     */
+    @Override
+    public void close() {
+        this.memoryPointer = 0L;
+        this.invalidateView();
+        this.instance.evictExport(this.name, this);
     }
     
-    private native void nativeMemoryView(Memory memory, long memoryPointer);
+    private native void nativeMemoryView(Memory memory, long instancePointer, long memoryPointer);
     
-    private native int nativeMemoryGrow(Memory memory, long memoryPointer, int page);
+    private native int nativeMemoryGrow(Memory memory, long instancePointer, long memoryPointer, int page);
     
 }
@@ -24,6 +24,24 @@
 
 package org.apache.shenyu.wasm;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * `Module` is a Java class that represents a WebAssembly module.
  *
@@ -33,16 +51,51 @@ package org.apache.shenyu.wasm;
  *
  * Module module = new Module(wasmBytes);
  * Instance instance = module.instantiate();
+ *
+ * // Compile a large module straight from a memory-mapped file.
+ * Module mapped = Module.compile(Paths.get("filter.wasm"));
+ *
+ * // Compile without blocking the calling thread.
+ * CompletableFuture<Module> reloaded = Module.compileAsync(wasmBytes, executor);
+ *
+ * // Trade compile time for faster code.
+ * EngineConfig config = new EngineConfig();
+ * config.setCompiler(EngineConfig.Compiler.LLVM);
+ * Module optimized = new Module(wasmBytes, config);
  * }</pre>
  */
 @SuppressWarnings("unused")
-public class Module {
+public class Module implements AutoCloseable {
+    
+    /**
+     * The configuration of modules compiled without an explicit one. Never modified.
+     */
+    private static final EngineConfig DEFAULT_ENGINE_CONFIG = new EngineConfig();
     
-    private long modulePointer;
+    /**
+     * The size of the reads of a streamed module, gathered off the Java heap.
+     */
+    private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+    
+    /**
+     * The length of the magic number and version a streamed module is checked against first.
+     */
+    private static final int BINARY_HEADER_LENGTH = 8;
+    
+    /**
+     * The module pointer, released on close or once this object is garbage collected.
+     */
+    private final NativeResources.Handle handle;
+    
+    /**
+     * The exports of the module, read on the first instantiation and shared by all the instances.
+     */
+    private volatile ExportTable exportTable;
     
     private Module() {
         // Native bindings.
         Native.init();
+        this.handle = NativeResources.module(this, 0L, Module::nativeDrop);
     }
     
     /**
@@ -51,9 +104,207 @@ public class Module {
      * @param moduleBytes webassembly bytes.
      */
     public Module(final byte[] moduleBytes) {
+        this(moduleBytes, DEFAULT_ENGINE_CONFIG);
+    }
+    
+    /**
+     * The constructor instantiates a new WebAssembly module based on WebAssembly bytes, compiled as configured.
+     *
+     * @param moduleBytes webassembly bytes.
+     * @param config      the engine configuration.
+     */
+    public Module(final byte[] moduleBytes, final EngineConfig config) {
+        // Native bindings.
+        Native.init();
+        long modulePointer = nativeModuleInstantiate(moduleBytes, config.getCompiler().ordinal(),
+                config.getOptimizationLevel().ordinal(), config.isMetering(), config.isSnapshots());
+        this.handle = NativeResources.module(this, modulePointer, Module::nativeDrop);
+    }
+    
+    /**
+     * The constructor instantiates a new WebAssembly module based on the remaining bytes of a buffer. A direct
+     * buffer, e.g. a {@link java.nio.MappedByteBuffer}, is compiled in place without being copied to the Java heap.
+     *
+     * @param moduleBytes webassembly bytes.
+     */
+    public Module(final ByteBuffer moduleBytes) {
+        this(moduleBytes, DEFAULT_ENGINE_CONFIG);
+    }
+    
+    /**
+     * The constructor instantiates a new WebAssembly module based on the remaining bytes of a buffer, compiled as
+     * configured.
+     *
+     * @param moduleBytes webassembly bytes.
+     * @param config      the engine configuration.
+     */
+    public Module(final ByteBuffer moduleBytes, final EngineConfig config) {
+        // Native bindings.
+        Native.init();
+        int compiler = config.getCompiler().ordinal();
+        int optimizationLevel = config.getOptimizationLevel().ordinal();
+        long modulePointer;
+        if (moduleBytes.isDirect()) {
+            modulePointer = nativeModuleInstantiateBuffer(moduleBytes, moduleBytes.position(), moduleBytes.remaining(),
+                    compiler, optimizationLevel, config.isMetering(), config.isSnapshots());
+        } else {
+            modulePointer = nativeModuleInstantiate(NativeBuffers.remainingBytes(moduleBytes), compiler, optimizationLevel,
+                    config.isMetering(), config.isSnapshots());
+        }
+        this.handle = NativeResources.module(this, modulePointer, Module::nativeDrop);
+    }
+    
+    /**
+     * The constructor wraps a module compiled or deserialized by an {@link Engine}.
+     *
+     * @param modulePointer the module pointer.
+     */
+    Module(final long modulePointer) {
+        this.handle = NativeResources.module(this, modulePointer, Module::nativeDrop);
+    }
+    
+    /**
+     * Compile the WebAssembly module stored in a file. The file is memory-mapped, so it is never copied to the Java
+     * heap.
+     *
+     * @param modulePath path of the WebAssembly file.
+     * @return Module object.
+     * @throws IOException if the file cannot be mapped
+     */
+    public static Module compile(final Path modulePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(modulePath, StandardOpenOption.READ)) {
+            return new Module(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+    
+    /**
+     * Compile a module read from a stream, e.g. a download. See {@link #compile(ReadableByteChannel, EngineConfig)}.
+     *
+     * @param moduleStream the stream, read to its end but not closed.
+     * @return Module object.
+     * @throws IOException if the stream cannot be read
+     */
+    public static Module compile(final InputStream moduleStream) throws IOException {
+        return compile(Channels.newChannel(moduleStream), DEFAULT_ENGINE_CONFIG, moduleStream.available());
+    }
+    
+    /**
+     * Compile a module read from a blocking channel, e.g. a download. See
+     * {@link #compile(ReadableByteChannel, EngineConfig)}.
+     *
+     * @param moduleChannel the channel, read to its end but not closed.
+     * @return Module object.
+     * @throws IOException if the channel cannot be read
+     */
+    public static Module compile(final ReadableByteChannel moduleChannel) throws IOException {
+        return compile(moduleChannel, DEFAULT_ENGINE_CONFIG);
+    }
+    
+    /**
+     * Compile a module read from a blocking channel, as configured. The binary is gathered chunk by chunk in native
+     * memory, so it is never materialised on the Java heap, and freed as soon as the module is compiled. Anything
+     * but a WebAssembly binary is rejected as soon as its first bytes arrive.
+     *
+     * <p>Reading and compiling do not overlap: the compiler only handles complete binaries, so the whole binary is
+     * buffered, and compilation starts once the channel is read to its end. Functions are then compiled in parallel,
+     * as for the other constructors.
+     *
+     * @param moduleChannel the channel, read to its end but not closed.
+     * @param config        the engine configuration.
+     * @return Module object.
+     * @throws IOException if the channel cannot be read
+     * @throws IllegalArgumentException if the channel is in non-blocking mode
+     */
+    public static Module compile(final ReadableByteChannel moduleChannel, final EngineConfig config) throws IOException {
+        if (moduleChannel instanceof SelectableChannel && !((SelectableChannel) moduleChannel).isBlocking()) {
+            throw new IllegalArgumentException("The channel must be in blocking mode");
+        }
+        long sizeHint = 0L;
+        if (moduleChannel instanceof SeekableByteChannel) {
+            SeekableByteChannel seekableChannel = (SeekableByteChannel) moduleChannel;
+            sizeHint = seekableChannel.size() - seekableChannel.position();
+        }
+        return compile(moduleChannel, config, sizeHint);
+    }
+    
+    /**
+     * Compile a module read from a blocking channel, reserving native memory for `sizeHint` bytes upfront when the
+     * size is known, so that the binary is not copied as it grows.
+     */
+    private static Module compile(final ReadableByteChannel moduleChannel, final EngineConfig config, final long sizeHint) throws IOException {
         // Native bindings.
         Native.init();
-        this.modulePointer = this.nativeModuleInstantiate(this, moduleBytes);
+        long streamPointer = nativeStreamNew((int) Math.max(0L, Math.min(sizeHint, Integer.MAX_VALUE)));
+        try {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(STREAM_CHUNK_SIZE);
+            boolean started = false;
+            while (moduleChannel.read(chunk) >= 0) {
+                if (!chunk.hasRemaining() || !started && chunk.position() >= BINARY_HEADER_LENGTH) {
+                    nativeStreamAppend(streamPointer, chunk, chunk.position());
+                    ((Buffer) chunk).clear();
+                    started = true;
+                }
+            }
+            nativeStreamAppend(streamPointer, chunk, chunk.position());
+            return new Module(nativeStreamCompile(streamPointer, config.getCompiler().ordinal(),
+                    config.getOptimizationLevel().ordinal(), config.isMetering(), config.isSnapshots()));
+        } finally {
+            nativeStreamDrop(streamPointer);
+        }
+    }
+    
+    /**
+     * Compile a module on an executor, so that the calling thread, e.g. the one reloading a plugin, does not wait for
+     * the compiler.
+     *
+     * @param moduleBytes WebAssembly bytes.
+     * @param executor    the executor running the compilation.
+     * @return the module, once compiled
+     */
+    public static CompletableFuture<Module> compileAsync(final byte[] moduleBytes, final Executor executor) {
+        return compileAsync(moduleBytes, DEFAULT_ENGINE_CONFIG, executor);
+    }
+    
+    /**
+     * Compile a module on an executor, as configured.
+     *
+     * @param moduleBytes WebAssembly bytes.
+     * @param config      the engine configuration.
+     * @param executor    the executor running the compilation.
+     * @return the module, once compiled
+     */
+    public static CompletableFuture<Module> compileAsync(final byte[] moduleBytes, final EngineConfig config, final Executor executor) {
+        return CompletableFuture.supplyAsync(() -> new Module(moduleBytes, config), executor);
+    }
+    
+    /**
+     * Compile modules in parallel on the common fork-join pool, and wait for all of them. If any of them fails, the
+     * others are closed and the first failure is thrown.
+     *
+     * @param moduleBytes the WebAssembly bytes of each module.
+     * @return the modules, in the order of their bytes
+     */
+    public static List<Module> compileAll(final List<byte[]> moduleBytes) {
+        List<CompletableFuture<Module>> futures = new ArrayList<>(moduleBytes.size());
+        for (byte[] bytes : moduleBytes) {
+            futures.add(compileAsync(bytes, ForkJoinPool.commonPool()));
+        }
+        List<Module> modules = new ArrayList<>(futures.size());
+        RuntimeException failure = null;
+        for (CompletableFuture<Module> future : futures) {
+            try {
+                modules.add(future.join());
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }
+        }
+        if (failure != null) {
+            modules.forEach(Module::close);
+            throw failure;
+        }
+        return modules;
     }
     
     /**
@@ -64,7 +315,23 @@ public class Module {
      */
     public static Module deserialize(final byte[] serializedBytes) {
         Module module = new Module();
-        module.modulePointer = Module.nativeDeserialize(module, serializedBytes);
+        module.handle.replace(Module.nativeDeserialize(serializedBytes));
+        return module;
+    }
+    
+    /**
+     * Create an original Module object from the remaining bytes of a buffer. A direct buffer, e.g. a
+     * {@link java.nio.MappedByteBuffer}, is deserialized in place without being copied to the Java heap.
+     *
+     * @param serializedBytes serialized bytes
+     * @return Module object.
+     */
+    public static Module deserialize(final ByteBuffer serializedBytes) {
+        if (!serializedBytes.isDirect()) {
+            return Module.deserialize(NativeBuffers.remainingBytes(serializedBytes));
+        }
+        Module module = new Module();
+        module.handle.replace(Module.nativeDeserializeBuffer(serializedBytes, serializedBytes.position(), serializedBytes.remaining()));
         return module;
     }
     
@@ -79,23 +346,46 @@ public class Module {
     }
     
     /**
-     * Delete a module object pointer.
+     * Check that the remaining bytes of a buffer represent a valid WebAssembly module.
+     *
+     * @param moduleBytes WebAssembly bytes.
+     * @return true if, and only if, given bytes are valid as a WebAssembly module.
      */
-    public void close() {
-        if (this.modulePointer != 0L) {
-            this.nativeDrop(this.modulePointer);
-            this.modulePointer = 0L;
+    public static boolean validate(final ByteBuffer moduleBytes) {
+        if (!moduleBytes.isDirect()) {
+            return Module.nativeValidate(NativeBuffers.remainingBytes(moduleBytes));
         }
+        return Module.nativeValidateBuffer(moduleBytes, moduleBytes.position(), moduleBytes.remaining());
     }
     
     /**
-     * Delete a module object pointer, which is called by the garbage collector before an object is removed from the
-     * memory.
+     * Return the version of the native runtime, including the engine and the target. Serialized modules can only
+     * be deserialized by the exact same runtime version.
+     *
+     * @return the native runtime version.
+     */
+    public static String runtimeVersion() {
+        Native.init();
+        return Module.nativeRuntimeVersion();
+    }
+    
+    /**
+     * Delete a module object pointer. Instances created from the module are independent, and stay usable.
      */
     @Override
-    public void finalize() throws Throwable {
-        this.close();
-        super.finalize();
+    public void close() {
+        this.handle.close();
+    }
+    
+    /**
+     * Return the module pointer of a module that is still open.
+     */
+    private long pointer() {
+        long modulePointer = this.handle.pointer();
+        if (modulePointer == 0L) {
+            throw new IllegalStateException("The module is closed");
+        }
+        return modulePointer;
     }
     
     /**
@@ -104,13 +394,39 @@ public class Module {
      * @return Instance object.
      */
     public Instance instantiate() {
-        Instance instance = new Instance();
-        long instancePointer = this.nativeInstantiate(this.modulePointer, instance);
-        instance.setInstancePointer(instancePointer);
-        
-        Instance.nativeInitializeExportedFunctions(instancePointer);
-        Instance.nativeInitializeExportedMemories(instancePointer);
-        return instance;
+        return this.instantiate(null);
+    }
+    
+    /**
+     * Create an instance object based on a module object, resolving the module's imports against host functions.
+     *
+     * @param imports the host functions the module imports, or `null` if it has no imports.
+     * @return Instance object.
+     */
+    public Instance instantiate(final ImportObject imports) {
+        return new Instance(this.nativeInstantiate(this.pointer(), imports), imports, this.exportTable());
+    }
+    
+    /**
+     * Whether the instances of the module can be snapshotted and reset, i.e. it was compiled with
+     * {@link EngineConfig#isSnapshots()}, or has no state to restore.
+     *
+     * @return `true` if {@link Instance#snapshot()} and {@link Instance#reset()} are supported
+     */
+    public boolean supportsSnapshots() {
+        return this.nativeSupportsSnapshots(this.pointer());
+    }
+    
+    /**
+     * Return the exports of the module, read once. Concurrent first reads are harmless, and yield equal tables.
+     */
+    private ExportTable exportTable() {
+        ExportTable table = this.exportTable;
+        if (table == null) {
+            table = ExportTable.ofModule(this, this.pointer());
+            this.exportTable = table;
+        }
+        return table;
     }
     
     /**
@@ -119,19 +435,41 @@ public class Module {
      * @return Serialized bytes.
      */
     public byte[] serialize() {
-        return this.nativeSerialize(this.modulePointer);
+        return this.nativeSerialize(this.pointer());
     }
     
-    private native long nativeModuleInstantiate(Module self, byte[] moduleBytes);
+    private static native long nativeModuleInstantiate(byte[] moduleBytes, int compiler, int optimizationLevel, boolean metering,
+                                                       boolean snapshots);
     
-    private native void nativeDrop(long modulePointer);
+    private static native long nativeModuleInstantiateBuffer(ByteBuffer moduleBytes, int offset, int length,
+                                                             int compiler, int optimizationLevel, boolean metering,
+                                                             boolean snapshots);
     
-    private native long nativeInstantiate(long modulePointer, Instance instance);
+    private static native void nativeDrop(long modulePointer);
+    
+    private native long nativeInstantiate(long modulePointer, ImportObject imports);
+    
+    private native boolean nativeSupportsSnapshots(long modulePointer);
     
     private static native boolean nativeValidate(byte[] moduleBytes);
     
+    private static native boolean nativeValidateBuffer(ByteBuffer moduleBytes, int offset, int length);
+    
     private native byte[] nativeSerialize(long modulePointer);
     
-    private static native long nativeDeserialize(Module module, byte[] serializedBytes);
+    private static native long nativeDeserialize(byte[] serializedBytes);
+    
+    private static native long nativeDeserializeBuffer(ByteBuffer serializedBytes, int offset, int length);
+    
+    private static native String nativeRuntimeVersion();
+    
+    private static native long nativeStreamNew(int sizeHint);
+    
+    private static native void nativeStreamAppend(long streamPointer, ByteBuffer chunk, int length);
+    
+    private static native long nativeStreamCompile(long streamPointer, int compiler, int optimizationLevel, boolean metering,
+                                                   boolean snapshots);
+    
+    private static native void nativeStreamDrop(long streamPointer);
     
 }
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * `ModuleCache` keeps compiled modules in a local directory, so that a restart deserializes them instead of
+ * compiling the WebAssembly bytes again.
+ *
+ * <p>An entry is keyed by the SHA-256 of the native runtime version and of the WebAssembly bytes, so upgrading the
+ * runtime never loads an artifact produced by another compiler. Entries are written to a temporary file and moved in
+ * place, and carry the digest of their payload. An entry is read once into native memory, and that copy is both
+ * verified and deserialized, so that a file changed in place after its check is never loaded. A truncated, corrupted
+ * or otherwise unloadable entry is deleted and the module is compiled again.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * ModuleCache cache = new ModuleCache(Paths.get("/var/cache/shenyu-wasm"));
+ * Module module = cache.load(wasmBytes);
+ * }</pre>
+ */
+public final class ModuleCache {
+    
+    private static final int MAGIC = 0x5357_4d43;
+    
+    private static final int FORMAT_VERSION = 1;
+    
+    private static final int DIGEST_LENGTH = 32;
+    
+    /**
+     * magic, format version, payload length and payload digest.
+     */
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + DIGEST_LENGTH;
+    
+    private static final String ENTRY_SUFFIX = ".module";
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final Path directory;
+    
+    private final byte[] runtimeVersion;
+    
+    private final AtomicLong hits = new AtomicLong();
+    
+    private final AtomicLong misses = new AtomicLong();
+    
+    /**
+     * Create a cache stored in `directory`, which is created when missing.
+     *
+     * @param directory the cache directory.
+     * @throws IOException if the directory cannot be created
+     */
+    public ModuleCache(final Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.runtimeVersion = Module.runtimeVersion().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Return the module compiled from `wasmBytes`, deserializing it from the cache when possible and compiling and
+     * storing it otherwise.
+     *
+     * @param wasmBytes WebAssembly bytes.
+     * @return the compiled module
+     */
+    public Module load(final byte[] wasmBytes) {
+        Path entry = this.entryPath(wasmBytes);
+        Module module = this.read(entry);
+        if (module != null) {
+            this.hits.incrementAndGet();
+            return module;
+        }
+        this.misses.incrementAndGet();
+        module = new Module(wasmBytes);
+        this.write(entry, module.serialize());
+        return module;
+    }
+    
+    /**
+     * Remove the entry of `wasmBytes`, if any.
+     *
+     * @param wasmBytes WebAssembly bytes.
+     * @throws IOException if the entry cannot be deleted
+     */
+    public void invalidate(final byte[] wasmBytes) throws IOException {
+        Files.deleteIfExists(this.entryPath(wasmBytes));
+    }
+    
+    /**
+     * get the number of modules loaded from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+    
+    /**
+     * get the number of modules compiled because they were not cached.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+    
+    private Path entryPath(final byte[] wasmBytes) {
+        MessageDigest digest = sha256();
+        digest.update(this.runtimeVersion);
+        digest.update((byte) 0);
+        digest.update(wasmBytes);
+        return this.directory.resolve(toHex(digest.digest()) + ENTRY_SUFFIX);
+    }
+    
+    /**
+     * Deserialize an entry, or return null when it is missing or cannot be trusted.
+     */
+    private Module read(final Path entry) {
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try {
+            ByteBuffer payload = this.readPayload(entry);
+            if (payload != null) {
+                return Module.deserialize(payload);
+            }
+        } catch (IOException | RuntimeException ignore) {
+            // Unreadable, or rejected by the runtime: fall through and compile again.
+        }
+        deleteQuietly(entry);
+        return null;
+    }
+    
+    private ByteBuffer readPayload(final Path entry) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH) {
+                return null;
+            }
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // A private copy rather than a mapping, which would see the file change between the check and the load.
+            ByteBuffer entryBytes = ByteBuffer.allocateDirect((int) size).order(ByteOrder.BIG_ENDIAN);
+            while (entryBytes.hasRemaining()) {
+                if (channel.read(entryBytes) < 0) {
+                    return null;
+                }
+            }
+            ((Buffer) entryBytes).flip();
+            if (entryBytes.getInt() != MAGIC || entryBytes.getInt() != FORMAT_VERSION || entryBytes.getLong() != size - HEADER_LENGTH) {
+                return null;
+            }
+            byte[] expectedDigest = new byte[DIGEST_LENGTH];
+            entryBytes.get(expectedDigest);
+            ByteBuffer payload = entryBytes.slice();
+            MessageDigest digest = sha256();
+            digest.update(payload.duplicate());
+            if (!MessageDigest.isEqual(expectedDigest, digest.digest())) {
+                return null;
+            }
+            return payload;
+        }
+    }
+    
+    private void write(final Path entry, final byte[] payload) {
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(this.directory, entry.getFileName().toString(), ".tmp");
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(payload.length).put(sha256().digest(payload));
+            ((Buffer) header).flip();
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ByteBuffer body = ByteBuffer.wrap(payload);
+                while (header.hasRemaining() || body.hasRemaining()) {
+                    channel.write(new ByteBuffer[]{header, body});
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ignore) {
+            // The cache is an optimization only: the compiled module is still returned.
+        } finally {
+            if (temporary != null) {
+                deleteQuietly(temporary);
+            }
+        }
+    }
+    
+    private static void deleteQuietly(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignore) {
+            // Retried the next time the entry is rejected.
+        }
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+    
+    private static String toHex(final byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
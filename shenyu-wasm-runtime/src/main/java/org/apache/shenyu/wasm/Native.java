@@ -18,7 +18,6 @@
 package org.apache.shenyu.wasm;
 
 import java.io.File;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.scijava.nativelib.JniExtractor;
 import org.scijava.nativelib.NativeLoader;
@@ -29,34 +28,41 @@ import org.scijava.nativelib.NativeLoader;
  */
 public abstract class Native {
     
-    private static final AtomicBoolean INITED = new AtomicBoolean();
-    
-    private static final AtomicBoolean SUCCESS = new AtomicBoolean();
+    /**
+     * Set once the library is loaded. Other threads calling {@link #init()} meanwhile wait for it, rather than
+     * calling into a library that is not loaded yet.
+     */
+    private static volatile boolean loaded;
     
     private Native() {
     }
     
     /**
-     * load the native library.
+     * load the native library. A failed load is retried on the next call.
      */
     public static void init() {
-        if (!SUCCESS.get() && INITED.compareAndSet(false, true)) {
+        if (loaded) {
+            return;
+        }
+        synchronized (Native.class) {
+            if (loaded) {
+                return;
+            }
             try {
                 final JniExtractor extractor = NativeLoader.getJniExtractor();
                 final String path = extractor.extractJni("",
                         "shenyu_wasm_" + NativeUtils.detectArch()).getAbsolutePath();
                 System.load(path);
-                SUCCESS.set(true);
             } catch (Throwable ignored) {
                 try {
                     File path = new File(Native.class.getProtectionDomain().getCodeSource().getLocation().getPath());
                     String libPath = new File(path, NativeUtils.detectLibName()).getAbsolutePath();
                     System.load(libPath);
-                    SUCCESS.set(true);
                 } catch (Throwable t) {
                     throw new ShenyuWasmInitException("native lib init failed !", t);
                 }
             }
+            loaded = true;
         }
     }
 }
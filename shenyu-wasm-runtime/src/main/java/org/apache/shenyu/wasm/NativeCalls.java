@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+/**
+ * The boundary the typed calls of {@link Instance} cross into the native library: JNI on this release. On Java 22
+ * and later, the `META-INF/versions/22` variant of this class calls through `java.lang.foreign` downcalls instead.
+ */
+final class NativeCalls {
+    
+    private NativeCalls() {
+    }
+    
+    /**
+     * Whether the typed calls go through `java.lang.foreign` downcalls.
+     *
+     * @return `false` if they all go through JNI
+     */
+    static boolean isForeign() {
+        return false;
+    }
+    
+    static int callI32(final Instance instance, final int functionIndex, final int[] arguments) {
+        return instance.jniCallI32(functionIndex, arguments);
+    }
+    
+    static long callI64(final Instance instance, final int functionIndex, final long[] arguments) {
+        return instance.jniCallI64(functionIndex, arguments);
+    }
+    
+    static float callF32(final Instance instance, final int functionIndex, final float[] arguments) {
+        return instance.jniCallF32(functionIndex, arguments);
+    }
+    
+    static double callF64(final Instance instance, final int functionIndex, final double[] arguments) {
+        return instance.jniCallF64(functionIndex, arguments);
+    }
+}
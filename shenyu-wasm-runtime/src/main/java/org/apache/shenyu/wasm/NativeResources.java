@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Tracks the native objects owned by Java objects, and releases those whose owner was garbage collected without
+ * being closed.
+ *
+ * <p>Owners are watched through phantom references drained by a single daemon thread, which does the job of
+ * `java.lang.ref.Cleaner` on Java 8. Unlike finalization, this neither delays the collection of the owner nor
+ * requires an extra GC cycle before the native memory is freed.
+ *
+ * <p>An owner may become phantom reachable as soon as its pointer is read, so the natives dereferencing a pointer
+ * are instance methods of its owner, or take the owner as an argument: either way, the JNI call keeps the owner
+ * reachable until it returns. Java 8 has no `Reference.reachabilityFence`.
+ */
+public final class NativeResources {
+    
+    private static final AtomicLong LIVE_ENGINES = new AtomicLong();
+    
+    private static final AtomicLong LIVE_MODULES = new AtomicLong();
+    
+    private static final AtomicLong LIVE_INSTANCES = new AtomicLong();
+    
+    private static final AtomicLong LIVE_SNAPSHOTS = new AtomicLong();
+    
+    /**
+     * Counts the native objects only ever owned by another native object's owner, which are not worth reporting.
+     */
+    private static final AtomicLong LIVE_AUXILIARIES = new AtomicLong();
+    
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+    
+    /**
+     * Keeps the handles of live native objects reachable until they are enqueued.
+     */
+    private static final Set<Handle> HANDLES = ConcurrentHashMap.newKeySet();
+    
+    static {
+        Thread cleaner = new Thread(NativeResources::drain, "shenyu-wasm-cleaner");
+        cleaner.setDaemon(true);
+        cleaner.start();
+    }
+    
+    private NativeResources() {
+    }
+    
+    /**
+     * Return the number of shared native engines that are neither closed nor collected.
+     *
+     * @return the number of live engines
+     */
+    public static long liveEngines() {
+        return LIVE_ENGINES.get();
+    }
+    
+    /**
+     * Return the number of native modules that are neither closed nor collected.
+     *
+     * @return the number of live modules
+     */
+    public static long liveModules() {
+        return LIVE_MODULES.get();
+    }
+    
+    /**
+     * Return the number of native instances, and so of linear memories, that are neither closed nor collected.
+     *
+     * @return the number of live instances
+     */
+    public static long liveInstances() {
+        return LIVE_INSTANCES.get();
+    }
+    
+    /**
+     * Return the number of native snapshots that are neither closed nor collected.
+     *
+     * @return the number of live snapshots
+     */
+    public static long liveSnapshots() {
+        return LIVE_SNAPSHOTS.get();
+    }
+    
+    static Handle engine(final Object owner, final long pointer, final LongConsumer drop) {
+        return new Handle(owner, pointer, drop, LIVE_ENGINES);
+    }
+    
+    static Handle module(final Object owner, final long pointer, final LongConsumer drop) {
+        return new Handle(owner, pointer, drop, LIVE_MODULES);
+    }
+    
+    static Handle instance(final Object owner, final long pointer, final LongConsumer drop) {
+        return new Handle(owner, pointer, drop, LIVE_INSTANCES);
+    }
+    
+    static Handle snapshot(final Object owner, final long pointer, final LongConsumer drop) {
+        return new Handle(owner, pointer, drop, LIVE_SNAPSHOTS);
+    }
+    
+    static Handle auxiliary(final Object owner, final long pointer, final LongConsumer drop) {
+        return new Handle(owner, pointer, drop, LIVE_AUXILIARIES);
+    }
+    
+    private static void drain() {
+        while (true) {
+            try {
+                ((Handle) QUEUE.remove()).close();
+            } catch (InterruptedException ignore) {
+                // The cleaner lives as long as the JVM.
+            } catch (RuntimeException ignore) {
+                // A failed release must not stop the release of the others.
+            }
+        }
+    }
+    
+    /**
+     * The pointer to a native object and the way to drop it. The drop action must not reference the owner, or the
+     * owner would never become phantom reachable.
+     */
+    static final class Handle extends PhantomReference<Object> {
+        
+        private final AtomicLong pointer = new AtomicLong();
+        
+        private final LongConsumer drop;
+        
+        private final AtomicLong live;
+        
+        private Handle(final Object owner, final long pointer, final LongConsumer drop, final AtomicLong live) {
+            super(owner, QUEUE);
+            this.drop = drop;
+            this.live = live;
+            this.replace(pointer);
+        }
+        
+        /**
+         * Return the native pointer, or `0` once released.
+         *
+         * @return the pointer
+         */
+        long pointer() {
+            return this.pointer.get();
+        }
+        
+        /**
+         * Take ownership of another native object, dropping the current one.
+         *
+         * @param next the new pointer, or `0` to only drop the current one
+         */
+        void replace(final long next) {
+            long previous = this.pointer.getAndSet(next);
+            if (previous == next) {
+                return;
+            }
+            if (previous == 0L) {
+                HANDLES.add(this);
+                this.live.incrementAndGet();
+                return;
+            }
+            if (next == 0L) {
+                HANDLES.remove(this);
+                this.live.decrementAndGet();
+            }
+            this.drop.accept(previous);
+        }
+        
+        /**
+         * Take ownership of another native object, leaving the current one to whoever else holds it.
+         *
+         * @param next the new pointer, or `0` to own none
+         */
+        void adopt(final long next) {
+            long previous = this.pointer.getAndSet(next);
+            if (previous == 0L && next != 0L) {
+                HANDLES.add(this);
+                this.live.incrementAndGet();
+            } else if (previous != 0L && next == 0L) {
+                HANDLES.remove(this);
+                this.live.decrementAndGet();
+            }
+        }
+        
+        /**
+         * Drop the native object. Calling it again has no effect.
+         */
+        void close() {
+            this.replace(0L);
+        }
+    }
+}
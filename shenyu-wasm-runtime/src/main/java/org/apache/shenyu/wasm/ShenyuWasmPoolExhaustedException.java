@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+/**
+ * {@code ShenyuWasmPoolExhaustedException} is thrown when an
+ * {@link InstancePool} cannot lend an instance before the configured
+ * wait timeout expires.
+ */
+public class ShenyuWasmPoolExhaustedException extends RuntimeException {
+    
+    private static final long serialVersionUID = 4270135432532839416L;
+    
+    /**
+     * Constructs a new exception with the specified detail message.
+     *
+     * @param message the detail message. The detail message is saved for
+     *                later retrieval by the {@link #getMessage()} method.
+     */
+    public ShenyuWasmPoolExhaustedException(final String message) {
+        super(message);
+    }
+    
+    /**
+     * Constructs a new exception with the specified detail message and
+     * cause.
+     *
+     * @param message the detail message (which is saved for later retrieval
+     *                by the {@link #getMessage()} method).
+     * @param cause   the cause (which is saved for later retrieval by the
+     *                {@link #getCause()} method).
+     */
+    public ShenyuWasmPoolExhaustedException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+/**
+ * `Snapshot` is the state of an {@link Instance} at some point, from which new instances of the same module start,
+ * skipping whatever calls led to it.
+ *
+ * <p>It holds the linear memories and the mutable globals of the instance, including those the module does not
+ * export. Tables are not captured: a module that modifies its tables while initializing must not be snapshotted.
+ * On Linux, each new instance maps the captured memories copy-on-write, and their pages are only copied once written.
+ * The module is still instantiated as usual first: its data segments are copied and its start function runs, host
+ * functions included, before the captured state replaces theirs.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * EngineConfig config = new EngineConfig();
+ * config.setSnapshots(true);
+ * Module module = new Module(wasmBytes, config);
+ * Instance template = module.instantiate(imports);
+ * template.getFunction("init").apply();
+ * Snapshot snapshot = template.snapshot();
+ * template.close();
+ *
+ * // Per request.
+ * try (Instance instance = snapshot.instantiate()) {
+ *     instance.callI32("handle", request);
+ * }
+ * }</pre>
+ */
+public final class Snapshot implements AutoCloseable {
+    
+    /**
+     * The snapshot pointer, released on close or once this object is garbage collected.
+     */
+    private final NativeResources.Handle handle;
+    
+    /**
+     * The host functions of the instances, or `null`.
+     */
+    private final ImportObject imports;
+    
+    /**
+     * The exports of the module of the snapshotted instance, shared by the instances.
+     */
+    private final ExportTable exportTable;
+    
+    /**
+     * The constructor wraps a snapshot captured by {@link Instance#snapshot()}.
+     *
+     * @param snapshotPointer the snapshot pointer.
+     * @param imports         the host functions of the snapshotted instance, or `null`.
+     * @param exportTable     the exports of the module of the snapshotted instance.
+     */
+    Snapshot(final long snapshotPointer, final ImportObject imports, final ExportTable exportTable) {
+        this.handle = NativeResources.snapshot(this, snapshotPointer, Snapshot::nativeDrop);
+        this.imports = imports;
+        this.exportTable = exportTable;
+    }
+    
+    /**
+     * Create an instance in the captured state, with the host functions of the snapshotted instance. The module is
+     * instantiated as usual, start function included, before the captured state is restored.
+     *
+     * @return the instance
+     */
+    public Instance instantiate() {
+        return new Instance(this.nativeInstantiate(this.pointer(), this.imports), this.imports, this.exportTable);
+    }
+    
+    /**
+     * Release the snapshot. Its instances are not affected.
+     */
+    @Override
+    public void close() {
+        this.handle.close();
+    }
+    
+    private long pointer() {
+        long snapshotPointer = this.handle.pointer();
+        if (snapshotPointer == 0L) {
+            throw new IllegalStateException("The snapshot is closed");
+        }
+        return snapshotPointer;
+    }
+    
+    private native long nativeInstantiate(long snapshotPointer, ImportObject imports);
+    
+    private static native void nativeDrop(long snapshotPointer);
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+/**
+ * The type of a WebAssembly value, as described by {@link org.apache.shenyu.wasm.exports.ExportDescriptor} and taken
+ * and returned by host functions.
+ */
+public enum ValueType {
+    
+    /**
+     * 32-bit integer, passed to host functions as a sign-extended `long`.
+     */
+    I32('I'),
+    
+    /**
+     * 64-bit integer, passed to host functions as is.
+     */
+    I64('J'),
+    
+    /**
+     * 32-bit float, passed to host functions as {@link Float#floatToRawIntBits(float)}.
+     */
+    F32('F'),
+    
+    /**
+     * 64-bit float, passed to host functions as {@link Double#doubleToRawLongBits(double)}.
+     */
+    F64('D'),
+    
+    /**
+     * 128-bit vector, which host functions cannot take or return.
+     */
+    V128('\0'),
+    
+    /**
+     * Host reference, which host functions cannot take or return.
+     */
+    EXTERNREF('\0'),
+    
+    /**
+     * Function reference, which host functions cannot take or return.
+     */
+    FUNCREF('\0');
+    
+    private static final ValueType[] VALUES = values();
+    
+    private final char descriptor;
+    
+    ValueType(final char descriptor) {
+        this.descriptor = descriptor;
+    }
+    
+    /**
+     * Return the type with the given ordinal, as encoded by the native library.
+     *
+     * @param ordinal the ordinal.
+     * @return the type
+     */
+    public static ValueType of(final int ordinal) {
+        return VALUES[ordinal];
+    }
+    
+    /**
+     * Return the JVM descriptor letter of the type, used to describe the signatures of host functions to the native
+     * runtime.
+     *
+     * @return the descriptor letter
+     * @throws IllegalArgumentException if host functions cannot take or return the type
+     */
+    public char getDescriptor() {
+        if (descriptor == '\0') {
+            throw new IllegalArgumentException("Host functions cannot take or return " + this);
+        }
+        return descriptor;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * `WasmExecutor` runs calls into instances on a bounded pool of platform threads, so that event loops and virtual
+ * threads wait on a future instead of blocking, or pinning their carrier, in native code.
+ *
+ * <p>Calls wait in a queue of fixed capacity. Once it is full, new calls fail at once with a
+ * {@link RejectedExecutionException}, which is the signal to shed load. Cancelling the future of a queued call
+ * drops it; cancelling a running one stops the guest, as a deadline does, and the instance is then poisoned. Only
+ * the instances of metered modules can be stopped, see {@link EngineConfig#setMetering(boolean)}: the calls of the
+ * others run to their end whatever happens to their futures. A call that has not entered the guest yet may still
+ * run to its end. Closing the instance of a call that keeps running frees it once the call returns.
+ *
+ * <p>An instance runs one call at a time: a call submitted while another call into the same instance is running
+ * fails with an {@link IllegalStateException}. Submit the calls of one instance one after the other, or use an
+ * {@link InstancePool}.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * try (WasmExecutor executor = new WasmExecutor(4, 256)) {
+ *     CompletableFuture<Object[]> results = instance.callAsync(executor, "sum", 1, 2);
+ * }
+ * }</pre>
+ */
+public final class WasmExecutor implements AutoCloseable {
+    
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    
+    private final AtomicLong rejected = new AtomicLong();
+    
+    private final ThreadPoolExecutor executor;
+    
+    /**
+     * Create an executor.
+     *
+     * @param threads       the number of calls running at once.
+     * @param queueCapacity the number of calls waiting at most.
+     */
+    public WasmExecutor(final int threads, final int queueCapacity) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), WasmExecutor::newThread, this::reject);
+    }
+    
+    /**
+     * The executor of {@link Instance#callAsync(String, Object...)}, with a thread per processor and a queue of 1024
+     * calls. Its threads are daemons, it never needs to be closed.
+     *
+     * @return the shared executor
+     */
+    public static WasmExecutor getDefault() {
+        return Default.INSTANCE;
+    }
+    
+    private static Thread newThread(final Runnable task) {
+        Thread thread = new Thread(task, "shenyu-wasm-call-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+    
+    private void reject(final Runnable task, final ThreadPoolExecutor executor) {
+        this.rejected.incrementAndGet();
+        throw new RejectedExecutionException("Too many pending WebAssembly calls");
+    }
+    
+    <T> CompletableFuture<T> submit(final Instance instance, final Function<Instance, T> call) {
+        instance.prepareInterrupt();
+        Task<T> task = new Task<>(instance, call);
+        try {
+            this.executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.future.completeExceptionally(e);
+            return task.future;
+        }
+        task.future.whenComplete((result, error) -> {
+            if (task.future.isCancelled()) {
+                task.cancel();
+            }
+        });
+        return task.future;
+    }
+    
+    /**
+     * The number of calls waiting for a thread.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+    
+    /**
+     * The number of calls running, approximately.
+     *
+     * @return the active count
+     */
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+    
+    /**
+     * The number of calls done, approximately.
+     *
+     * @return the completed count
+     */
+    public long getCompletedCount() {
+        return this.executor.getCompletedTaskCount();
+    }
+    
+    /**
+     * The number of calls refused because the queue was full, or the executor closed.
+     *
+     * @return the rejected count
+     */
+    public long getRejectedCount() {
+        return this.rejected.get();
+    }
+    
+    /**
+     * Refuse new calls, and let the threads end once the queued calls are done.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+    
+    /**
+     * A call, which holds its instance from the time it starts until it ends, so that cancelling it interrupts this
+     * call only, and never another call into the same instance.
+     */
+    private static final class Task<T> implements Runnable {
+        
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        
+        private final Instance instance;
+        
+        private final Function<Instance, T> call;
+        
+        /**
+         * Whether the call is running, guarded by this task.
+         */
+        private boolean running;
+        
+        Task(final Instance instance, final Function<Instance, T> call) {
+            this.instance = instance;
+            this.call = call;
+        }
+        
+        @Override
+        public void run() {
+            if (this.future.isDone()) {
+                return;
+            }
+            boolean entered;
+            try {
+                entered = this.instance.enter();
+            } catch (Throwable e) {
+                this.future.completeExceptionally(e);
+                return;
+            }
+            try {
+                synchronized (this) {
+                    if (this.future.isDone()) {
+                        return;
+                    }
+                    this.running = true;
+                }
+                this.future.complete(this.call.apply(this.instance));
+            } catch (Throwable e) {
+                this.future.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    this.running = false;
+                }
+                this.instance.exit(entered);
+            }
+        }
+        
+        /**
+         * Interrupt the call if it is running. A queued call is skipped once a thread picks it up.
+         */
+        synchronized void cancel() {
+            if (this.running) {
+                this.instance.interrupt();
+            }
+        }
+    }
+    
+    private static final class Default {
+        
+        private static final WasmExecutor INSTANCE = new WasmExecutor(Runtime.getRuntime().availableProcessors(), 1024);
+    }
+}
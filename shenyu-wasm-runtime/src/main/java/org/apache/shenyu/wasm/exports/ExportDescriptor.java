@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm.exports;
+
+import java.util.Collections;
+import java.util.List;
+import org.apache.shenyu.wasm.ValueType;
+
+/**
+ * `ExportDescriptor` describes a WebAssembly export: the signature of a function, the limits of a memory or a
+ * table, the type of a global.
+ *
+ * <p>Limits are in pages of 64 KiB for memories and in elements for tables, and are `-1` when absent.
+ */
+public final class ExportDescriptor {
+    
+    private final String name;
+    
+    private final Kind kind;
+    
+    private final List<ValueType> params;
+    
+    private final List<ValueType> results;
+    
+    private final ValueType type;
+    
+    private final long minimum;
+    
+    private final long maximum;
+    
+    private final boolean mutable;
+    
+    private final boolean shared;
+    
+    private ExportDescriptor(final String name, final Kind kind, final List<ValueType> params, final List<ValueType> results,
+                             final ValueType type, final long minimum, final long maximum, final boolean mutable, final boolean shared) {
+        this.name = name;
+        this.kind = kind;
+        this.params = Collections.unmodifiableList(params);
+        this.results = Collections.unmodifiableList(results);
+        this.type = type;
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.mutable = mutable;
+        this.shared = shared;
+    }
+    
+    /**
+     * Describe an exported function.
+     *
+     * @param name    the export name.
+     * @param params  the parameter types.
+     * @param results the result types.
+     * @return the descriptor
+     */
+    public static ExportDescriptor function(final String name, final List<ValueType> params, final List<ValueType> results) {
+        return new ExportDescriptor(name, Kind.FUNCTION, params, results, null, -1L, -1L, false, false);
+    }
+    
+    /**
+     * Describe an exported memory.
+     *
+     * @param name    the export name.
+     * @param minimum the minimum number of pages.
+     * @param maximum the maximum number of pages, or `-1`.
+     * @param shared  whether the memory is shared between threads.
+     * @return the descriptor
+     */
+    public static ExportDescriptor memory(final String name, final long minimum, final long maximum, final boolean shared) {
+        return new ExportDescriptor(name, Kind.MEMORY, Collections.emptyList(), Collections.emptyList(), null, minimum, maximum, false, shared);
+    }
+    
+    /**
+     * Describe an exported table.
+     *
+     * @param name        the export name.
+     * @param elementType the type of the elements.
+     * @param minimum     the minimum number of elements.
+     * @param maximum     the maximum number of elements, or `-1`.
+     * @return the descriptor
+     */
+    public static ExportDescriptor table(final String name, final ValueType elementType, final long minimum, final long maximum) {
+        return new ExportDescriptor(name, Kind.TABLE, Collections.emptyList(), Collections.emptyList(), elementType, minimum, maximum, false, false);
+    }
+    
+    /**
+     * Describe an exported global.
+     *
+     * @param name    the export name.
+     * @param type    the type of the value.
+     * @param mutable whether the global is mutable.
+     * @return the descriptor
+     */
+    public static ExportDescriptor global(final String name, final ValueType type, final boolean mutable) {
+        return new ExportDescriptor(name, Kind.GLOBAL, Collections.emptyList(), Collections.emptyList(), type, -1L, -1L, mutable, false);
+    }
+    
+    /**
+     * get name.
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * get kind.
+     *
+     * @return kind
+     */
+    public Kind getKind() {
+        return kind;
+    }
+    
+    /**
+     * The parameter types of a function, empty otherwise.
+     *
+     * @return params
+     */
+    public List<ValueType> getParams() {
+        return params;
+    }
+    
+    /**
+     * The result types of a function, empty otherwise.
+     *
+     * @return results
+     */
+    public List<ValueType> getResults() {
+        return results;
+    }
+    
+    /**
+     * The element type of a table or the value type of a global, `null` otherwise.
+     *
+     * @return type
+     */
+    public ValueType getType() {
+        return type;
+    }
+    
+    /**
+     * get minimum.
+     *
+     * @return minimum
+     */
+    public long getMinimum() {
+        return minimum;
+    }
+    
+    /**
+     * get maximum.
+     *
+     * @return maximum
+     */
+    public long getMaximum() {
+        return maximum;
+    }
+    
+    /**
+     * get mutable.
+     *
+     * @return mutable
+     */
+    public boolean isMutable() {
+        return mutable;
+    }
+    
+    /**
+     * get shared.
+     *
+     * @return shared
+     */
+    public boolean isShared() {
+        return shared;
+    }
+    
+    /**
+     * Whether this is a function taking only values of the given type and returning exactly one of them, as the
+     * typed calls of {@link org.apache.shenyu.wasm.Instance} expect.
+     *
+     * @param valueType the type.
+     * @return `true` if the function has such a signature
+     */
+    public boolean isScalarFunction(final ValueType valueType) {
+        if (kind != Kind.FUNCTION || results.size() != 1 || results.get(0) != valueType) {
+            return false;
+        }
+        for (ValueType param : params) {
+            if (param != valueType) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public String toString() {
+        switch (kind) {
+            case FUNCTION:
+                return name + ": func " + params + " -> " + results;
+            case MEMORY:
+                return name + ": memory {" + minimum + ", " + maximum + "}" + (shared ? " shared" : "");
+            case TABLE:
+                return name + ": table " + type + " {" + minimum + ", " + maximum + "}";
+            default:
+                return name + ": global " + (mutable ? "mut " : "") + type;
+        }
+    }
+    
+    /**
+     * The kind of an export.
+     */
+    public enum Kind {
+        
+        FUNCTION,
+        
+        MEMORY,
+        
+        TABLE,
+        
+        GLOBAL
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm.exports;
+
+/**
+ * An exported function taking only `f64` values and returning exactly one, checked once when it is looked up, so
+ * that calls skip the boxing and the conversions of {@link NativeFunction}.
+ */
+@FunctionalInterface
+public interface F64Function extends Export {
+    
+    /**
+     * call the function from WASM.
+     *
+     * @param arguments the arguments
+     * @return the result
+     */
+    double apply(double... arguments);
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm.imports;
+
+import org.apache.shenyu.wasm.Instance;
+
+/**
+ * A Java implementation of a function imported by a WebAssembly module.
+ *
+ * <p>Values are passed as raw 64-bit patterns, as described by {@link org.apache.shenyu.wasm.ValueType}, so that calls
+ * from the guest do not allocate. The host function runs on the thread that called into the guest; an exception it
+ * throws aborts the guest call and is rethrown to the Java caller.
+ *
+ * <p>The runtime holds host functions strongly: use `caller` rather than capturing the instance, or the instance
+ * can never be released by the garbage collector.
+ */
+@FunctionalInterface
+public interface HostFunction {
+    
+    /**
+     * Called by the guest.
+     *
+     * @param caller    the instance the call comes from, or `null` while the module's start function runs during
+     *                  instantiation
+     * @param arguments the arguments, one per parameter
+     * @param results   the results to fill in, one per result
+     */
+    void call(Instance caller, long[] arguments, long[] results);
+}
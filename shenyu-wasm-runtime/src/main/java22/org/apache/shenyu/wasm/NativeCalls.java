@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.Reference;
+import java.util.concurrent.CancellationException;
+
+/**
+ * The boundary the typed calls of {@link Instance} cross into the native library, on Java 22 and later: downcalls
+ * through `java.lang.foreign`, which skip the JNI transition and its local references.
+ *
+ * <p>Only the typed calls cross this way. The boxed calls, {@link Memory}, and the lifecycle of instances, modules
+ * and engines still go through JNI on every release.
+ *
+ * <p>Arguments and the result go through a small native buffer per thread, and failures come back as a status
+ * code, the native side never touching Java. Instances with host functions, which call back into Java through JNI,
+ * and calls with more arguments than the buffer holds, still go through JNI, as they do if the native library does
+ * not export the downcall entry points.
+ *
+ * <p>Linking the downcalls is a restricted operation: without `--enable-native-access`, the JVM prints a warning the
+ * first time, as it does on Java 24 and later when the JNI library is loaded.
+ *
+ * <p>The downcalls are not `Linker.Option.critical`: a critical call holds off safepoints for as long as the guest
+ * runs, stalling every other thread on the next garbage collection, and a guest may run up to its deadline.
+ */
+final class NativeCalls {
+    
+    private static final int OK = 0;
+    
+    private static final int FUEL_EXHAUSTED = 2;
+    
+    private static final int TIMEOUT = 3;
+    
+    private static final int CANCELLED = 4;
+    
+    private static final int UNAVAILABLE = 5;
+    
+    private static final int MEMORY_GROWN = 0x100;
+    
+    private static final int ARGUMENT_SLOTS = 32;
+    
+    private static final long ARGUMENTS_OFFSET = 8L;
+    
+    private static final MethodHandle CALL_I32 = downcall("shenyu_wasm_call_i32");
+    
+    private static final MethodHandle CALL_I64 = downcall("shenyu_wasm_call_i64");
+    
+    private static final MethodHandle CALL_F32 = downcall("shenyu_wasm_call_f32");
+    
+    private static final MethodHandle CALL_F64 = downcall("shenyu_wasm_call_f64");
+    
+    private static final MethodHandle LAST_ERROR = downcall("shenyu_wasm_last_error", FunctionDescriptor.of(ValueLayout.ADDRESS));
+    
+    /**
+     * The result, then the arguments, of the calls of each thread. Freed once the thread is gone.
+     */
+    private static final ThreadLocal<MemorySegment> BUFFER = ThreadLocal.withInitial(
+        () -> Arena.ofAuto().allocate(ARGUMENTS_OFFSET + ARGUMENT_SLOTS * Long.BYTES, Long.BYTES));
+    
+    private NativeCalls() {
+    }
+    
+    private static MethodHandle downcall(final String name) {
+        return downcall(name, FunctionDescriptor.of(ValueLayout.JAVA_INT,
+            ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.ADDRESS));
+    }
+    
+    private static MethodHandle downcall(final String name, final FunctionDescriptor descriptor) {
+        return SymbolLookup.loaderLookup().find(name)
+            .map(symbol -> Linker.nativeLinker().downcallHandle(symbol, descriptor))
+            .orElse(null);
+    }
+    
+    /**
+     * Whether the typed calls go through `java.lang.foreign` downcalls.
+     *
+     * @return `false` if they all go through JNI
+     */
+    static boolean isForeign() {
+        return CALL_I32 != null && CALL_I64 != null && CALL_F32 != null && CALL_F64 != null && LAST_ERROR != null;
+    }
+    
+    private static boolean viaJni(final MethodHandle handle, final Instance instance, final int length) {
+        return handle == null || LAST_ERROR == null || length > ARGUMENT_SLOTS || instance.hasHostFunctions();
+    }
+    
+    static int callI32(final Instance instance, final int functionIndex, final int[] arguments) {
+        if (viaJni(CALL_I32, instance, arguments.length)) {
+            return instance.jniCallI32(functionIndex, arguments);
+        }
+        MemorySegment buffer = BUFFER.get();
+        MemorySegment.copy(arguments, 0, buffer, ValueLayout.JAVA_INT, ARGUMENTS_OFFSET, arguments.length);
+        try {
+            check(instance, (int) CALL_I32.invokeExact(instance.pointer(), functionIndex, buffer.asSlice(ARGUMENTS_OFFSET), arguments.length, buffer));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        } finally {
+            Reference.reachabilityFence(instance);
+        }
+        return buffer.get(ValueLayout.JAVA_INT, 0L);
+    }
+    
+    static long callI64(final Instance instance, final int functionIndex, final long[] arguments) {
+        if (viaJni(CALL_I64, instance, arguments.length)) {
+            return instance.jniCallI64(functionIndex, arguments);
+        }
+        MemorySegment buffer = BUFFER.get();
+        MemorySegment.copy(arguments, 0, buffer, ValueLayout.JAVA_LONG, ARGUMENTS_OFFSET, arguments.length);
+        try {
+            check(instance, (int) CALL_I64.invokeExact(instance.pointer(), functionIndex, buffer.asSlice(ARGUMENTS_OFFSET), arguments.length, buffer));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        } finally {
+            Reference.reachabilityFence(instance);
+        }
+        return buffer.get(ValueLayout.JAVA_LONG, 0L);
+    }
+    
+    static float callF32(final Instance instance, final int functionIndex, final float[] arguments) {
+        if (viaJni(CALL_F32, instance, arguments.length)) {
+            return instance.jniCallF32(functionIndex, arguments);
+        }
+        MemorySegment buffer = BUFFER.get();
+        MemorySegment.copy(arguments, 0, buffer, ValueLayout.JAVA_FLOAT, ARGUMENTS_OFFSET, arguments.length);
+        try {
+            check(instance, (int) CALL_F32.invokeExact(instance.pointer(), functionIndex, buffer.asSlice(ARGUMENTS_OFFSET), arguments.length, buffer));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        } finally {
+            Reference.reachabilityFence(instance);
+        }
+        return buffer.get(ValueLayout.JAVA_FLOAT, 0L);
+    }
+    
+    static double callF64(final Instance instance, final int functionIndex, final double[] arguments) {
+        if (viaJni(CALL_F64, instance, arguments.length)) {
+            return instance.jniCallF64(functionIndex, arguments);
+        }
+        MemorySegment buffer = BUFFER.get();
+        MemorySegment.copy(arguments, 0, buffer, ValueLayout.JAVA_DOUBLE, ARGUMENTS_OFFSET, arguments.length);
+        try {
+            check(instance, (int) CALL_F64.invokeExact(instance.pointer(), functionIndex, buffer.asSlice(ARGUMENTS_OFFSET), arguments.length, buffer));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        } finally {
+            Reference.reachabilityFence(instance);
+        }
+        return buffer.get(ValueLayout.JAVA_DOUBLE, 0L);
+    }
+    
+    /**
+     * Turn the status of a downcall into the exception the JNI call would have thrown.
+     */
+    private static void check(final Instance instance, final int status) throws Throwable {
+        if ((status & MEMORY_GROWN) != 0) {
+            instance.onMemoryGrown();
+        }
+        switch (status & ~MEMORY_GROWN) {
+            case OK:
+                return;
+            case FUEL_EXHAUSTED:
+                throw new ShenyuWasmFuelExhaustedException(lastError());
+            case TIMEOUT:
+                throw new ShenyuWasmTimeoutException(lastError());
+            case CANCELLED:
+                throw new CancellationException(lastError());
+            case UNAVAILABLE:
+                throw new IllegalStateException(lastError());
+            default:
+                throw new RuntimeException(lastError());
+        }
+    }
+    
+    private static String lastError() throws Throwable {
+        MemorySegment message = (MemorySegment) LAST_ERROR.invokeExact();
+        return message.reinterpret(Integer.MAX_VALUE).getString(0L);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class EngineTest {
+    
+    private byte[] getBytes(final String filename) throws Exception {
+        Path modulePath = Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource(filename)).toURI());
+        return Files.readAllBytes(modulePath);
+    }
+    
+    @Test
+    void compileManyModules() throws Exception {
+        Engine engine = new Engine();
+        Module tests = engine.compile(getBytes("tests.wasm"));
+        Module loop = engine.compile(getBytes("loop.wasm"));
+        
+        Instance testsInstance = tests.instantiate();
+        Instance loopInstance = loop.instantiate();
+        assertEquals(3, testsInstance.callI32("sum", 1, 2));
+        assertEquals(7, loopInstance.callI32("count", 7));
+        
+        testsInstance.close();
+        loopInstance.close();
+        tests.close();
+        loop.close();
+        engine.close();
+    }
+    
+    @Test
+    void meteringIsPerModule() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.setMetering(true);
+        Engine engine = new Engine(config);
+        ExecutionLimits limits = new ExecutionLimits();
+        limits.setFuel(100000L);
+        
+        for (int i = 0; i < 3; i++) {
+            Module module = engine.compile(getBytes("loop.wasm"));
+            Instance instance = module.instantiate();
+            instance.setExecutionLimits(limits);
+            assertEquals(1000, instance.callI32("count", 1000));
+            assertThrows(ShenyuWasmFuelExhaustedException.class, () -> instance.getFunction("spin").apply());
+            instance.close();
+            module.close();
+        }
+        
+        engine.close();
+    }
+    
+    @Test
+    void deserialize() throws Exception {
+        Engine engine = new Engine();
+        Module module = engine.compile(getBytes("tests.wasm"));
+        byte[] serialized = module.serialize();
+        module.close();
+        
+        Module deserialized = engine.deserialize(serialized);
+        assertEquals(3, deserialized.instantiate().callI32("sum", 1, 2));
+        
+        deserialized.close();
+        engine.close();
+    }
+    
+    @Test
+    void modulesOutliveTheirEngine() throws Exception {
+        Engine engine = new Engine();
+        Module module = engine.compile(getBytes("tests.wasm"));
+        engine.close();
+        
+        assertEquals(3, module.instantiate().callI32("sum", 1, 2));
+        assertThrows(IllegalStateException.class, () -> engine.compile(getBytes("tests.wasm")));
+        
+        module.close();
+    }
+}
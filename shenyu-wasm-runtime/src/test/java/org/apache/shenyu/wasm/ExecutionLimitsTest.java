@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class ExecutionLimitsTest {
+    
+    private byte[] getBytes() throws Exception {
+        URL url = getClass().getClassLoader().getResource("loop.wasm");
+        Path modulePath = Paths.get(Objects.requireNonNull(url).toURI());
+        return Files.readAllBytes(modulePath);
+    }
+    
+    private Module metered() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.setMetering(true);
+        return new Module(getBytes(), config);
+    }
+    
+    private static ExecutionLimits limits(final long fuel, final long timeoutMillis) {
+        ExecutionLimits limits = new ExecutionLimits();
+        limits.setFuel(fuel);
+        limits.setTimeoutMillis(timeoutMillis);
+        return limits;
+    }
+    
+    @Test
+    void unlimited() throws Exception {
+        Instance instance = metered().instantiate();
+        
+        assertEquals(100000, instance.callI32("count", 100000));
+        assertFalse(instance.isPoisoned());
+        
+        instance.close();
+    }
+    
+    @Test
+    void withinFuel() throws Exception {
+        Instance instance = metered().instantiate();
+        instance.setExecutionLimits(limits(100000L, 0L));
+        
+        // The fuel is granted per call, not per instance.
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1000, instance.callI32("count", 1000));
+        }
+        assertFalse(instance.isPoisoned());
+        
+        instance.close();
+    }
+    
+    @Test
+    void fuelExhausted() throws Exception {
+        Instance instance = metered().instantiate();
+        instance.setExecutionLimits(limits(100000L, 0L));
+        
+        assertThrows(ShenyuWasmFuelExhaustedException.class, () -> instance.getFunction("spin").apply());
+        assertTrue(instance.isPoisoned());
+        assertThrows(IllegalStateException.class, () -> instance.callI32("count", 1));
+        
+        instance.close();
+    }
+    
+    @Test
+    void deadline() throws Exception {
+        Instance instance = metered().instantiate();
+        instance.setExecutionLimits(limits(0L, 50L));
+        
+        assertThrows(ShenyuWasmTimeoutException.class, () -> instance.getFunction("spin").apply());
+        assertTrue(instance.isPoisoned());
+        
+        instance.close();
+    }
+    
+    @Test
+    void poisonedInstancesLeaveThePool() throws Exception {
+        InstancePoolConfig config = new InstancePoolConfig();
+        config.setMaxSize(1);
+        config.setExecutionLimits(limits(100000L, 0L));
+        Module module = metered();
+        InstancePool pool = new InstancePool(module, config);
+        
+        Instance instance = pool.borrow();
+        assertThrows(ShenyuWasmFuelExhaustedException.class, () -> instance.getFunction("spin").apply());
+        pool.release(instance);
+        
+        assertEquals(0, pool.getTotalCount());
+        Instance fresh = pool.borrow();
+        assertEquals(10, fresh.callI32("count", 10));
+        pool.release(fresh);
+        
+        pool.close();
+        module.close();
+    }
+}
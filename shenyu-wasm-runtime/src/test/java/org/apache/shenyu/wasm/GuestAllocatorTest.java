@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class GuestAllocatorTest {
+    
+    private byte[] getBytes(final String filename) throws Exception {
+        Path modulePath = Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource(filename)).toURI());
+        return Files.readAllBytes(modulePath);
+    }
+    
+    @Test
+    void call() throws Exception {
+        try (Instance instance = new Instance(getBytes("allocator.wasm"))) {
+            GuestAllocator allocator = GuestAllocator.of(instance);
+            
+            assertEquals(6, allocator.call("sum", new byte[] {1, 2, 3}));
+            assertEquals(15, allocator.call("sum", ByteBuffer.wrap(new byte[] {4, 5, 6})));
+            assertEquals('a' + 'b', allocator.call("sum", "ab"));
+            assertEquals(0, instance.callI32("allocations"));
+        }
+    }
+    
+    @Test
+    void pooled() throws Exception {
+        try (Instance instance = new Instance(getBytes("allocator.wasm"))) {
+            GuestAllocator allocator = GuestAllocator.pooled(instance, 4);
+            
+            assertEquals(6, allocator.call("sum", new byte[] {1, 2, 3}));
+            assertEquals(10, allocator.call("sum", new byte[] {1, 2, 3, 4}));
+            assertEquals(1, instance.callI32("allocations"));
+            
+            assertEquals(15, allocator.call("sum", new byte[] {1, 2, 3, 4, 5}));
+            assertEquals(1, instance.callI32("allocations"));
+            
+            allocator.close();
+            assertEquals(0, instance.callI32("allocations"));
+        }
+    }
+    
+    @Test
+    void pooledAfterReset() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.setSnapshots(true);
+        try (Module module = new Module(getBytes("allocator.wasm"), config); Instance instance = module.instantiate()) {
+            final GuestAllocator allocator = GuestAllocator.pooled(instance, 4);
+            assertEquals(1, instance.callI32("allocations"));
+            
+            instance.reset();
+            assertEquals(0, instance.callI32("allocations"));
+            assertEquals(6, allocator.call("sum", new byte[] {1, 2, 3}));
+            assertEquals(1, instance.callI32("allocations"));
+            
+            allocator.close();
+            assertEquals(0, instance.callI32("allocations"));
+        }
+    }
+    
+    @Test
+    void callWithBytes() throws Exception {
+        try (Instance instance = new Instance(getBytes("allocator.wasm"))) {
+            GuestAllocator allocator = GuestAllocator.pooled(instance, 16);
+            byte[] out = new byte[4];
+            
+            assertEquals(3, allocator.call("reverse", new byte[] {1, 2, 3}, out));
+            assertArrayEquals(new byte[] {3, 2, 1, 0}, out);
+            assertEquals(-1, allocator.call("reverse", new byte[] {1, 2, 3, 4, 5}, out));
+            assertEquals(2, instance.callWithBytes("reverse", 0, new byte[] {7, 8}, 8, out));
+            assertArrayEquals(new byte[] {8, 7, 1, 0}, out);
+            assertThrows(RuntimeException.class, () -> instance.callWithBytes("reverse", 65535, new byte[] {1, 2}, 0, out));
+            
+            allocator.close();
+        }
+    }
+    
+    @Test
+    void allocationFailure() throws Exception {
+        try (Instance instance = new Instance(getBytes("limited_allocator.wasm"))) {
+            GuestAllocator allocator = GuestAllocator.of(instance);
+            
+            assertThrows(IllegalStateException.class, () -> allocator.call("spin", new byte[1000]));
+            assertThrows(IllegalStateException.class, () -> GuestAllocator.pooled(instance, 1000));
+        }
+    }
+    
+    @Test
+    void callExceedingLimits() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.setMetering(true);
+        try (Module module = new Module(getBytes("limited_allocator.wasm"), config); Instance instance = module.instantiate()) {
+            ExecutionLimits limits = new ExecutionLimits();
+            limits.setFuel(100000L);
+            instance.setExecutionLimits(limits);
+            GuestAllocator allocator = GuestAllocator.of(instance);
+            
+            ShenyuWasmFuelExhaustedException failure = assertThrows(ShenyuWasmFuelExhaustedException.class,
+                () -> allocator.call("spin", new byte[] {1, 2, 3}));
+            assertEquals(1, failure.getSuppressed().length);
+            assertTrue(failure.getSuppressed()[0] instanceof IllegalStateException);
+        }
+    }
+    
+    @Test
+    void noAllocator() throws Exception {
+        try (Instance instance = new Instance(getBytes("tests.wasm"))) {
+            assertThrows(IllegalArgumentException.class, () -> GuestAllocator.of(instance));
+        }
+    }
+}
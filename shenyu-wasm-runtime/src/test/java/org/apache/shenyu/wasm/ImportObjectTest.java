@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.shenyu.wasm.imports.HostFunction;
+import org.junit.jupiter.api.Test;
+
+class ImportObjectTest {
+    
+    private static final ValueType[] I32 = {ValueType.I32};
+    
+    private byte[] getBytes() throws Exception {
+        URL url = getClass().getClassLoader().getResource("imports.wasm");
+        Path modulePath = Paths.get(Objects.requireNonNull(url).toURI());
+        return Files.readAllBytes(modulePath);
+    }
+    
+    private ImportObject addOne(final HostFunction function) {
+        return new ImportObject().register("env", "add_one", I32, I32, function);
+    }
+    
+    @Test
+    void hostFunction() throws Exception {
+        AtomicReference<Instance> caller = new AtomicReference<>();
+        Instance instance = new Instance(getBytes(), addOne((self, arguments, results) -> {
+            caller.set(self);
+            results[0] = arguments[0] + 1;
+        }));
+        
+        assertEquals(42, instance.callI32("call_add_one", 41));
+        assertEquals(42, (Integer) instance.getFunction("call_add_one").apply(41)[0]);
+        assertSame(instance, caller.get());
+        
+        instance.close();
+    }
+    
+    @Test
+    void hostFunctionFromModule() throws Exception {
+        Module module = new Module(getBytes());
+        Instance instance = module.instantiate(addOne((self, arguments, results) -> results[0] = arguments[0] * 2));
+        
+        assertEquals(42, instance.callI32("call_add_one", 21));
+        
+        instance.close();
+        module.close();
+    }
+    
+    @Test
+    void hostFunctionException() throws Exception {
+        Instance instance = new Instance(getBytes(), addOne((self, arguments, results) -> {
+            throw new IllegalStateException("host failure");
+        }));
+        
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> instance.callI32("call_add_one", 1));
+        assertEquals("host failure", exception.getMessage());
+        
+        instance.close();
+    }
+    
+    @Test
+    void missingImport() {
+        assertThrows(RuntimeException.class, () -> new Instance(getBytes()));
+    }
+    
+    @Test
+    void mismatchedSignature() {
+        ImportObject imports = new ImportObject().register("env", "add_one", I32, new ValueType[] {ValueType.I64}, (self, arguments, results) -> {
+        });
+        
+        assertThrows(RuntimeException.class, () -> new Instance(getBytes(), imports));
+    }
+    
+    @Test
+    void duplicateImport() {
+        ImportObject imports = addOne((self, arguments, results) -> {
+        });
+        
+        assertThrows(IllegalArgumentException.class, () -> imports.register("env", "add_one", I32, I32, (self, arguments, results) -> {
+        }));
+        assertEquals(1, imports.size());
+    }
+    
+    @Test
+    void onlyNumericTypes() {
+        ImportObject imports = new ImportObject();
+        
+        assertThrows(IllegalArgumentException.class, () -> imports.register("env", "vector", new ValueType[] {ValueType.V128}, I32, (self, arguments, results) -> {
+        }));
+        assertEquals(0, imports.size());
+    }
+}
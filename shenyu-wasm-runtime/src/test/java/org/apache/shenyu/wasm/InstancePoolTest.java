@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class InstancePoolTest {
+    
+    private Module getModule() throws Exception {
+        Path modulePath = Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource("tests.wasm")).toURI());
+        return new Module(Files.readAllBytes(modulePath));
+    }
+    
+    private InstancePoolConfig getConfig(final int minSize, final int maxSize) {
+        InstancePoolConfig config = new InstancePoolConfig();
+        config.setMinSize(minSize);
+        config.setMaxSize(maxSize);
+        config.setMaxWaitMillis(0L);
+        return config;
+    }
+    
+    @Test
+    void prewarm() throws Exception {
+        Module module = getModule();
+        InstancePool pool = new InstancePool(module, getConfig(2, 4));
+        
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(2, pool.getTotalCount());
+        
+        pool.close();
+        module.close();
+    }
+    
+    @Test
+    void borrowAndRelease() throws Exception {
+        Module module = getModule();
+        InstancePool pool = new InstancePool(module, getConfig(1, 2));
+        
+        Instance instance = pool.borrow();
+        assertEquals(3, instance.callI32("sum", 1, 2));
+        assertEquals(1, pool.getBorrowedCount());
+        pool.release(instance);
+        
+        assertSame(instance, pool.borrow());
+        pool.release(instance);
+        assertThrows(IllegalStateException.class, () -> pool.release(instance));
+        
+        pool.close();
+        module.close();
+    }
+    
+    @Test
+    void exhausted() throws Exception {
+        Module module = getModule();
+        InstancePool pool = new InstancePool(module, getConfig(0, 1));
+        
+        Instance instance = pool.borrow();
+        assertThrows(ShenyuWasmPoolExhaustedException.class, pool::borrow);
+        pool.release(instance);
+        
+        pool.close();
+        module.close();
+    }
+    
+    @Test
+    void recycle() throws Exception {
+        Module module = getModule();
+        InstancePoolConfig config = getConfig(0, 1);
+        config.setMaxUses(1);
+        InstancePool pool = new InstancePool(module, config);
+        
+        Instance first = pool.borrow();
+        pool.release(first);
+        assertEquals(0, pool.getTotalCount());
+        
+        Instance second = pool.borrow();
+        assertNotSame(first, second);
+        pool.invalidate(second);
+        assertEquals(0, pool.getTotalCount());
+        
+        pool.close();
+        module.close();
+    }
+    
+    @Test
+    void resetOnReleaseNeedsSnapshots() throws Exception {
+        Module module = getModule();
+        InstancePoolConfig config = getConfig(0, 1);
+        config.setResetOnRelease(true);
+        
+        assertThrows(IllegalArgumentException.class, () -> new InstancePool(module, config));
+        
+        module.close();
+    }
+    
+    @Test
+    void imports() throws Exception {
+        Path modulePath = Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource("imports.wasm")).toURI());
+        Module module = new Module(Files.readAllBytes(modulePath));
+        InstancePoolConfig config = getConfig(1, 2);
+        ValueType[] i32 = {ValueType.I32};
+        config.setImports(new ImportObject().register("env", "add_one", i32, i32, (self, arguments, results) -> results[0] = arguments[0] + 1));
+        InstancePool pool = new InstancePool(module, config);
+        
+        Instance instance = pool.borrow();
+        assertEquals(42, instance.callI32("call_add_one", 41));
+        pool.release(instance);
+        
+        pool.close();
+        module.close();
+    }
+    
+    @Test
+    void releaseWhileClosing() throws Exception {
+        Module module = getModule();
+        for (int i = 0; i < 100; i++) {
+            InstancePool pool = new InstancePool(module, getConfig(0, 1));
+            Instance instance = pool.borrow();
+            Thread releasing = new Thread(() -> pool.release(instance));
+            
+            releasing.start();
+            pool.close();
+            releasing.join();
+            
+            assertEquals(0, pool.getTotalCount());
+        }
+        module.close();
+    }
+}
@@ -24,15 +24,21 @@
 
 package org.apache.shenyu.wasm;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Objects;
+import org.apache.shenyu.wasm.exports.ExportDescriptor;
 import org.apache.shenyu.wasm.exports.NativeFunction;
 import org.junit.jupiter.api.Test;
 
@@ -108,6 +114,112 @@ class InstanceTest {
         instance.close();
     }
     
+    @Test
+    void callI32() throws Exception {
+        Instance instance = new Instance(getBytes());
+        
+        assertEquals(3, instance.callI32("sum", 1, 2));
+        assertEquals(42, instance.callI32("arity_0"));
+        
+        instance.close();
+    }
+    
+    @Test
+    void callI64() throws Exception {
+        Instance instance = new Instance(getBytes());
+        
+        assertEquals(42L, instance.callI64("i64_i64", 42L));
+        
+        instance.close();
+    }
+    
+    @Test
+    void callF32() throws Exception {
+        Instance instance = new Instance(getBytes());
+        
+        assertEquals(42.0f, instance.callF32("f32_f32", 42.0f));
+        
+        instance.close();
+    }
+    
+    @Test
+    void callF64() throws Exception {
+        Instance instance = new Instance(getBytes());
+        
+        assertEquals(42.0d, instance.callF64("f64_f64", 42.0d));
+        
+        instance.close();
+    }
+    
+    @Test
+    void callWithMismatchedResultType() throws Exception {
+        Instance instance = new Instance(getBytes());
+        
+        assertThrows(RuntimeException.class, () -> instance.callI64("sum", 1L, 2L));
+        assertThrows(RuntimeException.class, () -> instance.callI32("void"));
+        
+        instance.close();
+    }
+    
+    @Test
+    void callBatch() throws Exception {
+        Instance instance = new Instance(getBytes());
+        int[] results = new int[3];
+        
+        instance.callBatch("sum", new int[] {1, 2, 3, 4, 5, 6}, 3, results);
+        
+        assertArrayEquals(new int[] {3, 7, 11}, results);
+        
+        instance.close();
+    }
+    
+    @Test
+    void callBatchTyped() throws Exception {
+        Instance instance = new Instance(getBytes());
+        long[] longs = new long[2];
+        double[] doubles = new double[2];
+        
+        instance.callBatch("i64_i64", new long[] {1L, 2L}, 2, longs);
+        instance.callBatch("f64_f64", new double[] {1.5d, 2.5d}, 2, doubles);
+        
+        assertArrayEquals(new long[] {1L, 2L}, longs);
+        assertArrayEquals(new double[] {1.5d, 2.5d}, doubles);
+        
+        instance.close();
+    }
+    
+    @Test
+    void callBatchWithLongerArrays() throws Exception {
+        Instance instance = new Instance(getBytes());
+        int[] results = {0, 0, -1};
+        
+        instance.callBatch("sum", new int[] {1, 2, 3, 4, 5, 6}, 2, results);
+        
+        assertArrayEquals(new int[] {3, 7, -1}, results);
+        
+        instance.close();
+    }
+    
+    @Test
+    void callBatchWithMismatchedArguments() throws Exception {
+        Instance instance = new Instance(getBytes());
+        
+        assertThrows(RuntimeException.class, () -> instance.callBatch("sum", new int[] {1, 2, 3}, 2, new int[2]));
+        assertThrows(IllegalArgumentException.class, () -> instance.callBatch("sum", new int[] {1, 2, 3, 4}, 2, new int[1]));
+        
+        instance.close();
+    }
+    
+    @Test
+    void callUnknownFunction() throws Exception {
+        Instance instance = new Instance(getBytes());
+        
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> instance.callI32("unknown"));
+        assertEquals("Exported function `unknown` does not exist", exception.getMessage());
+        
+        instance.close();
+    }
+    
     @Test
     void boolCastedToI32() throws Exception {
         Instance instance = new Instance(getBytes());
@@ -143,4 +255,48 @@ class InstanceTest {
         
         instance.close();
     }
+    
+    @Test
+    void descriptors() throws Exception {
+        Instance instance = new Instance(getBytes());
+        ExportDescriptor sum = instance.getExports().getDescriptor("sum");
+        final ExportDescriptor memory = instance.getExports().getDescriptor("memory");
+        
+        assertEquals(ExportDescriptor.Kind.FUNCTION, sum.getKind());
+        assertEquals(Arrays.asList(ValueType.I32, ValueType.I32), sum.getParams());
+        assertEquals(Collections.singletonList(ValueType.I32), sum.getResults());
+        assertEquals(Arrays.asList(ValueType.I32, ValueType.I64, ValueType.F32, ValueType.F64),
+                instance.getExports().getDescriptor("i32_i64_f32_f64_f64").getParams());
+        assertEquals(ExportDescriptor.Kind.MEMORY, memory.getKind());
+        assertTrue(memory.getMinimum() > 0);
+        assertTrue(instance.getExports().getDescriptors().contains(sum));
+        assertNull(instance.getExports().getDescriptor("unknown"));
+        
+        instance.close();
+    }
+    
+    @Test
+    void typedFunctions() throws Exception {
+        Instance instance = new Instance(getBytes());
+        
+        assertEquals(3, instance.getExports().getI32Function("sum").apply(1, 2));
+        assertEquals(42L, instance.getExports().getI64Function("i64_i64").apply(42L));
+        assertEquals(42.0f, instance.getExports().getF32Function("f32_f32").apply(42.0f));
+        assertEquals(42.0d, instance.getExports().getF64Function("f64_f64").apply(42.0d));
+        assertThrows(RuntimeException.class, () -> instance.getExports().getI64Function("sum"));
+        assertThrows(RuntimeException.class, () -> instance.getExports().getI32Function("void"));
+        
+        instance.close();
+    }
+    
+    @Test
+    void mismatchedArgumentsOfATypedSignature() throws Exception {
+        Instance instance = new Instance(getBytes());
+        NativeFunction sum = instance.getFunction("sum");
+        
+        assertThrows(RuntimeException.class, () -> sum.apply(1, 2L));
+        assertThrows(RuntimeException.class, () -> sum.apply(1));
+        
+        instance.close();
+    }
 }
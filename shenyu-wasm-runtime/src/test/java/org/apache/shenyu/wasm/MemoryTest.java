@@ -26,12 +26,17 @@ package org.apache.shenyu.wasm;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Objects;
 import org.junit.jupiter.api.Test;
 
@@ -167,4 +172,103 @@ class MemoryTest {
         
         instance.close();
     }
+    
+    @Test
+    void cachedView() throws Exception {
+        Instance instance = new Instance(getBytes("tests.wasm"));
+        Memory memory = instance.getMemory("memory");
+        
+        ByteBuffer view = memory.view();
+        assertSame(view, memory.view());
+        assertNotSame(memory.buffer(), memory.buffer());
+        
+        memory.grow(1);
+        
+        assertNotSame(view, memory.view());
+        assertEquals(1179648, memory.view().limit());
+        
+        instance.close();
+    }
+    
+    @Test
+    void memoryOfClosedInstance() throws Exception {
+        Instance instance = new Instance(getBytes("tests.wasm"));
+        Memory memory = instance.getMemory("memory");
+        
+        instance.close();
+        
+        assertThrows(IllegalStateException.class, memory::buffer);
+        assertThrows(IllegalStateException.class, () -> memory.grow(1));
+    }
+    
+    @Test
+    void closedMemory() throws Exception {
+        try (Instance instance = new Instance(getBytes("tests.wasm"))) {
+            Memory memory = instance.getMemory("memory");
+            memory.close();
+            
+            assertThrows(IllegalStateException.class, memory::buffer);
+            assertNotSame(memory, instance.getMemory("memory"));
+            assertEquals(1114112, instance.getMemory("memory").buffer().limit());
+        }
+    }
+    
+    @Test
+    void bulkReadWrite() throws Exception {
+        try (Instance instance = new Instance(getBytes("tests.wasm"))) {
+            Memory memory = instance.getMemory("memory");
+            
+            memory.write(100, new byte[] {1, 2, 3, 4, 5}, 1, 3);
+            memory.write(110, ByteBuffer.wrap(new byte[] {6, 7}));
+            
+            byte[] bytes = new byte[3];
+            memory.read(100, bytes);
+            ByteBuffer destination = ByteBuffer.allocateDirect(2);
+            memory.read(110, 2, destination);
+            
+            assertArrayEquals(new byte[] {2, 3, 4}, bytes);
+            assertEquals(7, destination.get(1));
+            assertThrows(IndexOutOfBoundsException.class, () -> memory.write(1114110, new byte[4]));
+        }
+    }
+    
+    @Test
+    void strings() throws Exception {
+        try (Instance instance = new Instance(getBytes("tests.wasm"))) {
+            Memory memory = instance.getMemory("memory");
+            int pointer = instance.callI32("string");
+            
+            assertEquals("Hello, World!", memory.readCString(pointer));
+            
+            int length = memory.writeUtf8(200, "héllo");
+            memory.putByte(200 + length, (byte) 0);
+            
+            assertEquals(6, length);
+            assertEquals("héllo", memory.readCString(200));
+            assertEquals("hé", memory.readUtf8(200, 3));
+            
+            byte[] longString = new byte[1000];
+            Arrays.fill(longString, (byte) 'a');
+            memory.write(400, longString);
+            memory.putByte(1400, (byte) 0);
+            
+            assertEquals(new String(longString, StandardCharsets.UTF_8), memory.readCString(400));
+        }
+    }
+    
+    @Test
+    void typedAccessors() throws Exception {
+        try (Instance instance = new Instance(getBytes("tests.wasm"))) {
+            Memory memory = instance.getMemory("memory");
+            
+            memory.putInt(300, 0x01020304);
+            memory.putLong(308, -2L);
+            memory.putDouble(316, 1.5d);
+            
+            assertEquals(0x04, memory.getByte(300));
+            assertEquals(0x01020304, memory.getInt(300));
+            assertEquals(-2L, memory.getLong(308));
+            assertEquals(1.5d, memory.getDouble(316));
+        }
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ModuleCacheTest {
+    
+    private byte[] getBytes() throws Exception {
+        Path modulePath = Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource("tests.wasm")).toURI());
+        return Files.readAllBytes(modulePath);
+    }
+    
+    private Path getEntry(final Path directory) throws Exception {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.findFirst().orElseThrow(IllegalStateException::new);
+        }
+    }
+    
+    @Test
+    void compileOnMissOnly(@TempDir final Path directory) throws Exception {
+        ModuleCache cache = new ModuleCache(directory);
+        
+        cache.load(getBytes()).close();
+        Module loaded = cache.load(getBytes());
+        
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, loaded.instantiate().callI32("sum", 1, 2));
+        
+        loaded.close();
+    }
+    
+    @Test
+    void rejectCorruptedEntry(@TempDir final Path directory) throws Exception {
+        ModuleCache cache = new ModuleCache(directory);
+        cache.load(getBytes()).close();
+        
+        Path entry = getEntry(directory);
+        byte[] corrupted = Files.readAllBytes(entry);
+        corrupted[corrupted.length - 1] ^= 0x7F;
+        Files.write(entry, corrupted);
+        
+        Module module = cache.load(getBytes());
+        
+        assertEquals(2, cache.getMissCount());
+        assertEquals(3, module.instantiate().callI32("sum", 1, 2));
+        
+        module.close();
+    }
+    
+    @Test
+    void rejectTruncatedEntry(@TempDir final Path directory) throws Exception {
+        ModuleCache cache = new ModuleCache(directory);
+        cache.load(getBytes()).close();
+        
+        Files.write(getEntry(directory), new byte[]{1, 2, 3});
+        
+        Module module = cache.load(getBytes());
+        
+        assertEquals(2, cache.getMissCount());
+        
+        module.close();
+    }
+}
@@ -26,12 +26,23 @@ package org.apache.shenyu.wasm;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -57,6 +68,55 @@ class ModuleTest {
         assertTrue(new Module(getBytes("tests.wasm")) instanceof Module);
     }
     
+    @Test
+    void compileDirectBuffer() throws Exception {
+        byte[] bytes = getBytes("tests.wasm");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 3);
+        buffer.position(3);
+        buffer.put(bytes);
+        buffer.position(3);
+        
+        assertTrue(Module.validate(buffer));
+        Module module = new Module(buffer);
+        assertEquals(3, module.instantiate().callI32("sum", 1, 2));
+        module.close();
+    }
+    
+    @Test
+    void compilePath() throws Exception {
+        Path modulePath = Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource("tests.wasm")).toURI());
+        Module module = Module.compile(modulePath);
+        assertEquals(3, module.instantiate().callI32("sum", 1, 2));
+        module.close();
+    }
+    
+    @Test
+    void compileStream() throws Exception {
+        Module module = Module.compile(new ByteArrayInputStream(getBytes("tests.wasm")));
+        assertEquals(3, module.instantiate().callI32("sum", 1, 2));
+        module.close();
+    }
+    
+    @Test
+    void compileStreamRejectsAnythingElse() {
+        byte[] text = "not a WebAssembly binary".getBytes(StandardCharsets.UTF_8);
+        Exception exception = Assertions.assertThrows(RuntimeException.class,
+            () -> Module.compile(new ByteArrayInputStream(text)));
+        
+        assertTrue(exception.getMessage().startsWith("The stream is not a WebAssembly binary"));
+    }
+    
+    @Test
+    void compileChannelMustBlock() throws Exception {
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Module.compile(pipe.source()));
+        
+        pipe.source().close();
+        pipe.sink().close();
+    }
+    
     @Test
     void failedToCompile() {
         Exception exception = Assertions.assertThrows(RuntimeException.class, () -> {
@@ -78,6 +138,22 @@ class ModuleTest {
         module.close();
     }
     
+    @Test
+    void instancesShareTheExports() throws Exception {
+        Module module = new Module(getBytes("tests.wasm"));
+        Instance first = module.instantiate();
+        Instance second = module.instantiate();
+        
+        assertSame(first.getExports().getTable(), second.getExports().getTable());
+        assertSame(first.getMemory("memory"), first.getMemory("memory"));
+        assertNotSame(first.getMemory("memory"), second.getMemory("memory"));
+        assertEquals(3, second.getExports().getI32Function("sum").apply(1, 2));
+        
+        first.close();
+        second.close();
+        module.close();
+    }
+    
     @Test
     void serialize() throws Exception {
         Module module = new Module(getBytes("tests.wasm"));
@@ -95,4 +171,78 @@ class ModuleTest {
         Module deserializedModule = Module.deserialize(serialized);
         assertEquals(3, (Integer) deserializedModule.instantiate().getFunction("sum").apply(1, 2)[0]);
     }
+    
+    @Test
+    void deserializeDirectBuffer() throws Exception {
+        Module module = new Module(getBytes("tests.wasm"));
+        byte[] serialized = module.serialize();
+        module.close();
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(serialized.length);
+        buffer.put(serialized);
+        buffer.flip();
+        
+        Module deserializedModule = Module.deserialize(buffer);
+        assertEquals(3, deserializedModule.instantiate().callI32("sum", 1, 2));
+        deserializedModule.close();
+    }
+    
+    @Test
+    void compileWithOptimizationLevels() throws Exception {
+        for (EngineConfig.OptimizationLevel level : EngineConfig.OptimizationLevel.values()) {
+            EngineConfig config = new EngineConfig();
+            config.setOptimizationLevel(level);
+            Module module = new Module(getBytes("tests.wasm"), config);
+            assertEquals(3, module.instantiate().callI32("sum", 1, 2));
+            module.close();
+        }
+    }
+    
+    @Test
+    void notMeteredByDefault() throws Exception {
+        assertFalse(new EngineConfig().isMetering());
+        Module module = new Module(getBytes("tests.wasm"));
+        Instance instance = module.instantiate();
+        
+        assertEquals(3, instance.callI32("sum", 1, 2));
+        ExecutionLimits limits = new ExecutionLimits();
+        limits.setFuel(1000L);
+        Assertions.assertThrows(IllegalStateException.class, () -> instance.setExecutionLimits(limits));
+        
+        instance.close();
+        module.close();
+    }
+    
+    @Test
+    void compileAsync() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Module module = Module.compileAsync(getBytes("tests.wasm"), executor).get();
+        
+        assertEquals(3, module.instantiate().callI32("sum", 1, 2));
+        
+        module.close();
+        executor.shutdown();
+    }
+    
+    @Test
+    void compileAll() throws Exception {
+        List<byte[]> moduleBytes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            moduleBytes.add(getBytes(i % 2 == 0 ? "tests.wasm" : "loop.wasm"));
+        }
+        
+        List<Module> modules = Module.compileAll(moduleBytes);
+        
+        assertEquals(8, modules.size());
+        assertEquals(3, modules.get(0).instantiate().callI32("sum", 1, 2));
+        assertEquals(5, modules.get(1).instantiate().callI32("count", 5));
+        modules.forEach(Module::close);
+    }
+    
+    @Test
+    void compileAllFailsWithTheFirstFailure() throws Exception {
+        List<byte[]> moduleBytes = Arrays.asList(getBytes("tests.wasm"), getBytes("invalid.wasm"));
+        
+        Assertions.assertThrows(RuntimeException.class, () -> Module.compileAll(moduleBytes));
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledIfSystemProperty;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+class NativeCallsTest {
+    
+    private byte[] getBytes() throws Exception {
+        Path modulePath = Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource("tests.wasm")).toURI());
+        return Files.readAllBytes(modulePath);
+    }
+    
+    @Test
+    @DisabledIfSystemProperty(named = "shenyu.wasm.foreign", matches = "true")
+    void jni() throws Exception {
+        try (Instance instance = new Instance(getBytes())) {
+            assertEquals(3, instance.callI32("sum", 1, 2));
+        }
+        
+        assertFalse(NativeCalls.isForeign());
+    }
+    
+    @Test
+    @EnabledIfSystemProperty(named = "shenyu.wasm.foreign", matches = "true")
+    void foreign() throws Exception {
+        try (Instance instance = new Instance(getBytes())) {
+            assertEquals(3, instance.callI32("sum", 1, 2));
+            assertEquals(3L, instance.callI64("i64_i64", 3L));
+        }
+        
+        assertTrue(NativeCalls.isForeign());
+    }
+}
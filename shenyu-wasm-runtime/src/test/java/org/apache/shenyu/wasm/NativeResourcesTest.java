@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class NativeResourcesTest {
+    
+    private byte[] getBytes() throws Exception {
+        Path modulePath = Paths.get(Objects.requireNonNull(getClass().getClassLoader().getResource("tests.wasm")).toURI());
+        return Files.readAllBytes(modulePath);
+    }
+    
+    @Test
+    void liveInstances() throws Exception {
+        long before = NativeResources.liveInstances();
+        Instance instance = new Instance(getBytes());
+        
+        assertEquals(before + 1, NativeResources.liveInstances());
+        
+        instance.close();
+        instance.close();
+        
+        assertEquals(before, NativeResources.liveInstances());
+    }
+    
+    @Test
+    void liveModules() throws Exception {
+        long before = NativeResources.liveModules();
+        
+        try (Module module = new Module(getBytes()); Instance instance = module.instantiate()) {
+            assertEquals(before + 1, NativeResources.liveModules());
+            assertEquals(42, instance.callI32("arity_0"));
+        }
+        
+        assertEquals(before, NativeResources.liveModules());
+    }
+    
+    @Test
+    void setInstancePointer() throws Exception {
+        Instance first = new Instance(getBytes());
+        Instance second = new Instance(getBytes());
+        long firstPointer = first.getInstancePointer();
+        long secondPointer = second.getInstancePointer();
+        
+        // Neither instance drops the pointer it gives away.
+        first.setInstancePointer(secondPointer);
+        second.setInstancePointer(firstPointer);
+        
+        assertEquals(3, first.callI32("sum", 1, 2));
+        assertEquals(3, second.callI32("sum", 1, 2));
+        
+        long before = NativeResources.liveInstances();
+        first.close();
+        second.close();
+        
+        assertEquals(before - 2, NativeResources.liveInstances());
+    }
+    
+    @Test
+    void useAfterClose() throws Exception {
+        Module module = new Module(getBytes());
+        Instance instance = module.instantiate();
+        module.close();
+        
+        assertEquals(3, instance.callI32("sum", 1, 2));
+        assertThrows(IllegalStateException.class, module::serialize);
+        
+        instance.close();
+        
+        assertThrows(IllegalStateException.class, () -> instance.callI32("sum", 1, 2));
+        assertThrows(IllegalStateException.class, () -> instance.getFunction("sum").apply(1, 2));
+    }
+}
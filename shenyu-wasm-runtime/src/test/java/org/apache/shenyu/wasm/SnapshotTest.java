@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+class SnapshotTest {
+    
+    private byte[] getBytes() throws Exception {
+        URL url = getClass().getClassLoader().getResource("counter.wasm");
+        Path modulePath = Paths.get(Objects.requireNonNull(url).toURI());
+        return Files.readAllBytes(modulePath);
+    }
+    
+    private Module snapshotted() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.setSnapshots(true);
+        return new Module(getBytes(), config);
+    }
+    
+    private Snapshot initialized(final Module module) {
+        Instance template = module.instantiate();
+        template.getFunction("init").apply();
+        Snapshot snapshot = template.snapshot();
+        template.close();
+        return snapshot;
+    }
+    
+    @Test
+    void instantiateFromSnapshot() throws Exception {
+        Module module = snapshotted();
+        Snapshot snapshot = initialized(module);
+        
+        Instance instance = snapshot.instantiate();
+        assertEquals(1234, instance.callI32("load"));
+        assertEquals(101, instance.callI32("increment"));
+        
+        instance.close();
+        snapshot.close();
+        module.close();
+    }
+    
+    @Test
+    void instancesAreIsolated() throws Exception {
+        Module module = snapshotted();
+        Snapshot snapshot = initialized(module);
+        
+        Instance first = snapshot.instantiate();
+        first.getFunction("store").apply(42);
+        first.callI32("increment");
+        Instance second = snapshot.instantiate();
+        
+        assertEquals(42, first.callI32("load"));
+        assertEquals(1234, second.callI32("load"));
+        assertEquals(101, second.callI32("increment"));
+        
+        first.close();
+        second.close();
+        snapshot.close();
+        module.close();
+    }
+    
+    @Test
+    void instancesOutliveTheirSnapshot() throws Exception {
+        Module module = snapshotted();
+        Snapshot snapshot = initialized(module);
+        Instance instance = snapshot.instantiate();
+        snapshot.close();
+        
+        assertEquals(1234, instance.callI32("load"));
+        assertThrows(IllegalStateException.class, snapshot::instantiate);
+        
+        instance.close();
+        module.close();
+    }
+    
+    @Test
+    void reservedExportsAreHidden() throws Exception {
+        Module module = snapshotted();
+        Instance instance = module.instantiate();
+        
+        assertNull(instance.getMemory("__shenyu_snapshot_memory_0"));
+        
+        instance.close();
+        module.close();
+    }
+    
+    @Test
+    void notSnapshottedByDefault() throws Exception {
+        Module module = new Module(getBytes());
+        Instance instance = module.instantiate();
+        
+        assertThrows(IllegalStateException.class, instance::snapshot);
+        assertThrows(IllegalStateException.class, instance::reset);
+        
+        instance.close();
+        module.close();
+    }
+    
+    @Test
+    void resetToInstantiation() throws Exception {
+        Module module = snapshotted();
+        Instance instance = module.instantiate();
+        
+        for (int i = 0; i < 3; i++) {
+            instance.getFunction("init").apply();
+            assertEquals(101, instance.callI32("increment"));
+            assertEquals(1234, instance.callI32("load"));
+            instance.reset();
+            assertEquals(0, instance.callI32("load"));
+            assertEquals(1, instance.callI32("increment"));
+            instance.reset();
+        }
+        
+        instance.close();
+        module.close();
+    }
+    
+    @Test
+    void resetToSnapshot() throws Exception {
+        Module module = snapshotted();
+        Snapshot snapshot = initialized(module);
+        Instance instance = snapshot.instantiate();
+        
+        for (int i = 0; i < 3; i++) {
+            instance.getFunction("store").apply(i);
+            assertEquals(101, instance.callI32("increment"));
+            instance.reset();
+            assertEquals(1234, instance.callI32("load"));
+            assertEquals(101, instance.callI32("increment"));
+            instance.reset();
+        }
+        
+        instance.close();
+        snapshot.close();
+        module.close();
+    }
+    
+    @Test
+    void resetOnRelease() throws Exception {
+        InstancePoolConfig config = new InstancePoolConfig();
+        config.setMaxSize(1);
+        config.setResetOnRelease(true);
+        Module module = snapshotted();
+        InstancePool pool = new InstancePool(module, config);
+        
+        Instance instance = pool.borrow();
+        instance.getFunction("store").apply(42);
+        pool.release(instance);
+        Instance reused = pool.borrow();
+        
+        assertSame(instance, reused);
+        assertEquals(0, reused.callI32("load"));
+        
+        pool.release(reused);
+        pool.close();
+        module.close();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.shenyu.wasm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class WasmExecutorTest {
+    
+    private byte[] getBytes() throws Exception {
+        URL url = getClass().getClassLoader().getResource("loop.wasm");
+        Path modulePath = Paths.get(Objects.requireNonNull(url).toURI());
+        return Files.readAllBytes(modulePath);
+    }
+    
+    private Module metered() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.setMetering(true);
+        return new Module(getBytes(), config);
+    }
+    
+    @Test
+    void callAsync() throws Exception {
+        Instance instance = new Instance(getBytes());
+        
+        assertArrayEquals(new Object[]{1000}, instance.callAsync("count", 1000).get(10, TimeUnit.SECONDS));
+        
+        instance.close();
+    }
+    
+    @Test
+    void cancelStopsTheGuest() throws Exception {
+        try (WasmExecutor executor = new WasmExecutor(1, 1)) {
+            Instance instance = metered().instantiate();
+            CompletableFuture<Object[]> spin = instance.callAsync(executor, "spin");
+            while (executor.getActiveCount() == 0) {
+                Thread.sleep(1L);
+            }
+            Thread.sleep(20L);
+            
+            assertTrue(spin.cancel(true));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+            while (executor.getActiveCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1L);
+            }
+            assertTrue(instance.isPoisoned());
+            
+            instance.close();
+        }
+    }
+    
+    @Test
+    void cancelQueuedCallLeavesTheRunningOne() throws Exception {
+        try (WasmExecutor executor = new WasmExecutor(2, 2)) {
+            Instance instance = metered().instantiate();
+            Instance other = metered().instantiate();
+            final CompletableFuture<Object[]> running = instance.callAsync(executor, "count", 100_000_000);
+            final CompletableFuture<Object[]> spin = other.callAsync(executor, "spin");
+            while (executor.getActiveCount() < 2) {
+                Thread.sleep(1L);
+            }
+            CompletableFuture<Object[]> queued = instance.callAsync(executor, "count", 10);
+            
+            assertEquals(1, executor.getQueueDepth());
+            assertTrue(queued.cancel(true));
+            assertArrayEquals(new Object[]{100_000_000}, running.get(60, TimeUnit.SECONDS));
+            assertFalse(instance.isPoisoned());
+            
+            spin.cancel(true);
+            instance.close();
+            other.close();
+        }
+    }
+    
+    @Test
+    void closeWhileRunning() throws Exception {
+        try (WasmExecutor executor = new WasmExecutor(1, 1)) {
+            Instance instance = new Instance(getBytes());
+            CompletableFuture<Object[]> running = instance.callAsync(executor, "count", 100_000_000);
+            while (executor.getActiveCount() == 0) {
+                Thread.sleep(1L);
+            }
+            
+            running.cancel(true);
+            instance.close();
+            
+            assertThrows(IllegalStateException.class, () -> instance.callI32("count", 10));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60L);
+            while (instance.getInstancePointer() != 0L && System.nanoTime() < deadline) {
+                Thread.sleep(1L);
+            }
+            assertEquals(0L, instance.getInstancePointer());
+        }
+    }
+    
+    @Test
+    void oneCallAtATimePerInstance() throws Exception {
+        try (WasmExecutor executor = new WasmExecutor(2, 2)) {
+            Instance instance = metered().instantiate();
+            final CompletableFuture<Object[]> spin = instance.callAsync(executor, "spin");
+            while (executor.getActiveCount() == 0) {
+                Thread.sleep(1L);
+            }
+            CompletableFuture<Object[]> count = instance.callAsync(executor, "count", 10);
+            
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> count.get(10, TimeUnit.SECONDS));
+            assertTrue(failure.getCause() instanceof IllegalStateException);
+            
+            spin.cancel(true);
+            instance.close();
+        }
+    }
+    
+    @Test
+    void fullQueueRejects() throws Exception {
+        try (WasmExecutor executor = new WasmExecutor(1, 1)) {
+            Instance spinning = metered().instantiate();
+            Instance queued = metered().instantiate();
+            Instance rejected = metered().instantiate();
+            final CompletableFuture<Object[]> spin = spinning.callAsync(executor, "spin");
+            while (executor.getActiveCount() == 0) {
+                Thread.sleep(1L);
+            }
+            final CompletableFuture<Object[]> count = queued.callAsync(executor, "count", 10);
+            CompletableFuture<Object[]> refused = rejected.callAsync(executor, "count", 10);
+            
+            assertEquals(1, executor.getQueueDepth());
+            ExecutionException failure = assertThrows(ExecutionException.class, refused::get);
+            assertTrue(failure.getCause() instanceof RejectedExecutionException);
+            assertEquals(1L, executor.getRejectedCount());
+            
+            spin.cancel(true);
+            assertArrayEquals(new Object[]{10}, count.get(10, TimeUnit.SECONDS));
+            
+            spinning.close();
+            queued.close();
+            rejected.close();
+        }
+    }
+}
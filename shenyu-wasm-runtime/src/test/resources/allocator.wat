@@ -0,0 +1,98 @@
+;; Licensed to the Apache Software Foundation (ASF) under one or more
+;; contributor license agreements.  See the NOTICE file distributed with
+;; this work for additional information regarding copyright ownership.
+;; The ASF licenses this file to You under the Apache License, Version 2.0
+;; (the "License"); you may not use this file except in compliance with
+;; the License.  You may obtain a copy of the License at
+;;
+;;     http://www.apache.org/licenses/LICENSE-2.0
+;;
+;; Unless required by applicable law or agreed to in writing, software
+;; distributed under the License is distributed on an "AS IS" BASIS,
+;; WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+;; See the License for the specific language governing permissions and
+;; limitations under the License.
+
+;; Source of `allocator.wasm`: a bump allocator following the
+;; `allocate`/`deallocate` convention, a function consuming a payload, and
+;; one writing the reversed payload into an output region.
+(module
+  (memory (export "memory") 1)
+  (global $top (mut i32) (i32.const 1024))
+  (global $allocations (mut i32) (i32.const 0))
+  (func (export "allocate") (param $size i32) (result i32)
+    global.get $top
+    global.get $top
+    local.get $size
+    i32.add
+    global.set $top
+    global.get $allocations
+    i32.const 1
+    i32.add
+    global.set $allocations)
+  (func (export "deallocate") (param $pointer i32) (param $size i32)
+    global.get $allocations
+    i32.const 1
+    i32.sub
+    global.set $allocations)
+  (func (export "sum") (param $pointer i32) (param $length i32) (result i32)
+    (local $sum i32)
+    block
+      loop
+        local.get $length
+        i32.eqz
+        br_if 1
+        local.get $sum
+        local.get $pointer
+        i32.load8_u
+        i32.add
+        local.set $sum
+        local.get $pointer
+        i32.const 1
+        i32.add
+        local.set $pointer
+        local.get $length
+        i32.const 1
+        i32.sub
+        local.set $length
+        br 0
+      end
+    end
+    local.get $sum)
+  (func (export "allocations") (result i32)
+    global.get $allocations)
+  (func (export "reverse") (param $in i32) (param $length i32) (param $out i32) (param $capacity i32) (result i32)
+    (local $i i32)
+    local.get $length
+    local.get $capacity
+    i32.gt_u
+    if
+      i32.const -1
+      return
+    end
+    block
+      loop
+        local.get $i
+        local.get $length
+        i32.eq
+        br_if 1
+        local.get $out
+        local.get $i
+        i32.add
+        local.get $in
+        local.get $length
+        i32.add
+        local.get $i
+        i32.sub
+        i32.const 1
+        i32.sub
+        i32.load8_u
+        i32.store8
+        local.get $i
+        i32.const 1
+        i32.add
+        local.set $i
+        br 0
+      end
+    end
+    local.get $length))
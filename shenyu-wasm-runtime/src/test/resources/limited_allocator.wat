@@ -0,0 +1,32 @@
+;; Licensed to the Apache Software Foundation (ASF) under one or more
+;; contributor license agreements.  See the NOTICE file distributed with
+;; this work for additional information regarding copyright ownership.
+;; The ASF licenses this file to You under the Apache License, Version 2.0
+;; (the "License"); you may not use this file except in compliance with
+;; the License.  You may obtain a copy of the License at
+;;
+;;     http://www.apache.org/licenses/LICENSE-2.0
+;;
+;; Unless required by applicable law or agreed to in writing, software
+;; distributed under the License is distributed on an "AS IS" BASIS,
+;; WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+;; See the License for the specific language governing permissions and
+;; limitations under the License.
+
+;; Source of `limited_allocator.wasm`: an allocator following the
+;; `allocate`/`deallocate` convention that fails, returning 0, for payloads of
+;; 1000 bytes or more, and a function consuming a payload that never returns.
+(module
+  (memory (export "memory") 1)
+  (func (export "allocate") (param $size i32) (result i32)
+    local.get $size
+    i32.const 1000
+    i32.lt_u
+    i32.const 1024
+    i32.mul)
+  (func (export "deallocate") (param $pointer i32) (param $size i32))
+  (func (export "spin") (param $pointer i32) (param $length i32) (result i32)
+    loop $continue
+      br $continue
+    end
+    i32.const 0))